@@ -3,7 +3,6 @@ package com.carbit.inappkeyboard;
 import android.text.InputType;
 import android.view.View;
 import android.widget.EditText;
-import android.widget.LinearLayout;
 
 import androidx.test.core.app.ActivityScenario;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
@@ -239,11 +238,10 @@ public class KeyboardEngineInstrumentedTest {
                 keyboard.injectKey("n");
                 keyboard.injectKey("i");
 
-                LinearLayout container = candidateBar.findViewById(com.carbit.inappkeyboard.keyboard.R.id.candidates_container);
                 assertTrue("candidate bar should be visible", candidateBar.getVisibility() == View.VISIBLE);
-                assertTrue("expected >= 1 candidate", container.getChildCount() >= 1);
+                assertTrue("expected >= 1 candidate", candidateBar.getCandidateCount() >= 1);
 
-                container.getChildAt(0).performClick();
+                assertTrue(candidateBar.performCandidateClick(0));
                 String s = et.getText().toString();
                 assertTrue("expected committed text after candidate click", s != null && !s.isEmpty());
             });
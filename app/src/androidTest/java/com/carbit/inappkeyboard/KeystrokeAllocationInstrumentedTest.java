@@ -0,0 +1,145 @@
+package com.carbit.inappkeyboard;
+
+import android.os.Debug;
+import android.util.Log;
+import android.widget.EditText;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.carbit.inappkeyboard.keyboard.InAppKeyboardPanelView;
+import com.carbit.inappkeyboard.keyboard.InAppKeyboardView;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Allocation budgets for keys injected into the real keyboard, in bytes per keystroke on the UI
+ * thread. Budgets cover the view, the commit target and, for Pinyin, the native decoder's JNI
+ * strings; {@code KeystrokeAllocationTest} in {@code :keyboard-core} holds the tighter engine budgets.
+ * Each test logs its bytes per keystroke under {@link #TAG}, to tighten a budget from.
+ *
+ * A failing budget means a change added garbage to every key; find it before raising the number.
+ */
+@RunWith(AndroidJUnit4.class)
+@SuppressWarnings("deprecation") // Debug alloc counting: the only per-thread byte count on ART.
+public class KeystrokeAllocationInstrumentedTest {
+
+    private static final String TAG = "KeystrokeAllocation";
+
+    private static final long LATIN_LETTER_BUDGET = 1024;
+    private static final long PINYIN_LETTER_BUDGET = 4096;
+    private static final long BACKSPACE_BUDGET = 4096;
+    private static final long CANDIDATE_COMMIT_BUDGET = 4096;
+    /** Switching rebuilds the key views, so this one is per switch rather than near zero. */
+    private static final long LAYOUT_SWITCH_BUDGET = 128 * 1024;
+
+    private static final String[] LETTERS = {"z", "h", "o", "n", "g", "g", "u", "o"};
+    private static final String[] BACKSPACES = {"⌫", "⌫", "⌫", "⌫", "⌫", "⌫", "⌫", "⌫"};
+    private static final int WARMUP_RUNS = 20;
+    private static final int MEASURED_RUNS = 50;
+
+    /** One pass of a key sequence; returns the number of keys it measured into {@link #allocated}. */
+    private abstract static class Script {
+        long allocated;
+
+        abstract int run(InAppKeyboardView keyboard, boolean measured);
+
+        /** Run {@code keys} and add what they allocate to {@link #allocated} if measured. */
+        int measure(InAppKeyboardView keyboard, boolean measured, String... keys) {
+            Debug.resetThreadAllocSize();
+            for (String key : keys) keyboard.injectKey(key);
+            if (measured) allocated += Debug.getThreadAllocSize();
+            return keys.length;
+        }
+    }
+
+    @Test
+    public void latin_letter_stays_within_budget() {
+        runWithinBudget("latin letter", InAppKeyboardView.Layout.EN, LATIN_LETTER_BUDGET, new Script() {
+            @Override
+            int run(InAppKeyboardView keyboard, boolean measured) {
+                return measure(keyboard, measured, LETTERS);
+            }
+        });
+    }
+
+    @Test
+    public void pinyin_letter_stays_within_budget() {
+        runWithinBudget("pinyin letter", InAppKeyboardView.Layout.ZH_PINYIN, PINYIN_LETTER_BUDGET, new Script() {
+            @Override
+            int run(InAppKeyboardView keyboard, boolean measured) {
+                int keys = measure(keyboard, measured, LETTERS);
+                keyboard.injectKey("space");
+                return keys;
+            }
+        });
+    }
+
+    @Test
+    public void backspace_stays_within_budget() {
+        runWithinBudget("backspace", InAppKeyboardView.Layout.ZH_PINYIN, BACKSPACE_BUDGET, new Script() {
+            @Override
+            int run(InAppKeyboardView keyboard, boolean measured) {
+                for (String letter : LETTERS) keyboard.injectKey(letter);
+                return measure(keyboard, measured, BACKSPACES);
+            }
+        });
+    }
+
+    @Test
+    public void candidate_commit_stays_within_budget() {
+        runWithinBudget("candidate commit", InAppKeyboardView.Layout.ZH_PINYIN, CANDIDATE_COMMIT_BUDGET, new Script() {
+            @Override
+            int run(InAppKeyboardView keyboard, boolean measured) {
+                keyboard.injectKey("n");
+                keyboard.injectKey("i");
+                return measure(keyboard, measured, "space");
+            }
+        });
+    }
+
+    @Test
+    public void layout_switch_stays_within_budget() {
+        runWithinBudget("layout switch", InAppKeyboardView.Layout.EN, LAYOUT_SWITCH_BUDGET, new Script() {
+            @Override
+            int run(InAppKeyboardView keyboard, boolean measured) {
+                // EN -> ZH -> FR -> AR -> EN, every layout model already parsed after warm-up.
+                return measure(keyboard, measured, "lang", "lang", "lang", "lang");
+            }
+        });
+    }
+
+    private static void runWithinBudget(final String path, final InAppKeyboardView.Layout layout,
+                                        final long budget, final Script script) {
+        try (ActivityScenario<MainActivity> scenario = ActivityScenario.launch(MainActivity.class)) {
+            scenario.onActivity(activity -> {
+                InAppKeyboardPanelView panel = activity.findViewById(R.id.keyboard_panel);
+                InAppKeyboardView keyboard = panel.getKeyboardView();
+                EditText et = activity.findViewById(R.id.et_text);
+                panel.attachTo(et);
+                keyboard.setInputMode(InAppKeyboardView.InputMode.TEXT);
+                keyboard.setLayout(layout);
+
+                Debug.startAllocCounting();
+                try {
+                    long keys = 0;
+                    for (int i = 0; i < WARMUP_RUNS + MEASURED_RUNS; i++) {
+                        et.setText("");
+                        boolean measured = i >= WARMUP_RUNS;
+                        int n = script.run(keyboard, measured);
+                        if (measured) keys += n;
+                    }
+                    long perKey = script.allocated / keys;
+                    Log.i(TAG, path + ": " + perKey + " bytes per keystroke, budget " + budget);
+                    assertTrue(path + " allocates " + perKey + " bytes per keystroke, budget " + budget,
+                            perKey <= budget);
+                } finally {
+                    Debug.stopAllocCounting();
+                }
+            });
+        }
+    }
+}
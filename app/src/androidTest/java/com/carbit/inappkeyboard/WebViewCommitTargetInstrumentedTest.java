@@ -0,0 +1,62 @@
+package com.carbit.inappkeyboard;
+
+import android.view.View;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class WebViewCommitTargetInstrumentedTest {
+
+    private static final String PASSWORD_PAGE = "<!DOCTYPE html><html><body>"
+            + "<input type='password' id='pw' value='hunter2' />"
+            + "</body></html>";
+
+    @Test
+    public void password_field_reports_no_text() throws Exception {
+        try (ActivityScenario<MainActivity> scenario = ActivityScenario.launch(MainActivity.class)) {
+            final WebViewCommitTarget[] target = new WebViewCommitTarget[1];
+            final CountDownLatch focused = new CountDownLatch(1);
+            scenario.onActivity(activity -> {
+                WebView webView = activity.findViewById(R.id.webview_input);
+                webView.setVisibility(View.VISIBLE);
+                target[0] = new WebViewCommitTarget(webView);
+                target[0].setOnEditorStateChangedListener(state -> {
+                    if (state.isEditable() && state.isPassword()) focused.countDown();
+                });
+                webView.setWebViewClient(new WebViewClient() {
+                    @Override
+                    public void onPageFinished(WebView view, String url) {
+                        target[0].onPageFinished();
+                        view.evaluateJavascript("document.getElementById('pw').focus()", null);
+                    }
+                });
+                webView.loadDataWithBaseURL(null, PASSWORD_PAGE, "text/html", "UTF-8", null);
+            });
+            assertTrue("password field never reported focus", focused.await(10, TimeUnit.SECONDS));
+
+            scenario.onActivity(activity -> {
+                WebEditorState state = target[0].getEditorState();
+                assertEquals("", state.getTextBeforeCursor());
+                assertNull(target[0].getTextBeforeCursor(WebEditorState.TEXT_BEFORE_WINDOW));
+
+                target[0].insert("abc");
+                target[0].flush();
+                assertEquals("", state.getTextBeforeCursor());
+                assertNull(target[0].getTextBeforeCursor(WebEditorState.TEXT_BEFORE_WINDOW));
+            });
+        }
+    }
+}
@@ -7,6 +7,7 @@ import android.view.View;
 import android.view.inputmethod.InputMethodManager;
 import android.webkit.WebSettings;
 import android.webkit.WebView;
+import android.webkit.WebViewClient;
 import android.widget.AutoCompleteTextView;
 import android.widget.Button;
 import android.widget.EditText;
@@ -21,6 +22,7 @@ public class MainActivity extends AppCompatActivity {
     public static String TAG = "MainActivity";
     private View activeInputView;
     private InAppKeyboardPanelView keyboardPanel;
+    private WebViewCommitTarget webTarget;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -137,6 +139,22 @@ public class MainActivity extends AppCompatActivity {
                 if (hasFocus) hideSystemKeyboard();
             }
         });
+        // Created before the page loads so the page can push focus/selection state back.
+        webTarget = new WebViewCommitTarget(webView);
+        webTarget.setOnEditorStateChangedListener(new WebEditorState.OnChangedListener() {
+            @Override
+            public void onEditorStateChanged(WebEditorState state) {
+                if (activeInputView instanceof WebView && state.isEditable()) {
+                    keyboardPanel.getKeyboardView().setTargetInputType(state.getInputType());
+                }
+            }
+        });
+        webView.setWebViewClient(new WebViewClient() {
+            @Override
+            public void onPageFinished(WebView view, String url) {
+                webTarget.onPageFinished();
+            }
+        });
         webView.requestFocus(View.FOCUS_DOWN);
         // readonly 防止点击时触发系统输入法，内容由 in-app 键盘通过 JS 注入
         String html = "<!DOCTYPE html><html><head><meta charset='UTF-8'></head><body style='margin:8px;background:#1a1a1a;color:#eee'>" +
@@ -179,7 +197,7 @@ public class MainActivity extends AppCompatActivity {
             keyboardPanel.show();
         } else if (inputView instanceof WebView) {
             hideSystemKeyboard();
-            keyboardPanel.attachTo(new WebViewCommitTarget((WebView) inputView));
+            keyboardPanel.attachTo(webTarget);
             keyboardPanel.show();
             inputView.postDelayed(new Runnable() {
                 @Override
@@ -196,6 +214,10 @@ public class MainActivity extends AppCompatActivity {
         } else if ("Password".equals(type)) {
             keyboard.setInputMode(InAppKeyboardView.InputMode.PASSWORD);
             keyboard.setLayout(InAppKeyboardView.Layout.EN);
+        } else if (inputView instanceof WebView) {
+            // Follow the focused web field's type as reported by the page.
+            keyboard.setInputMode(InAppKeyboardView.InputMode.AUTO);
+            keyboard.setTargetInputType(webTarget.getEditorState().getInputType());
         } else {
             keyboard.setInputMode(InAppKeyboardView.InputMode.TEXT);
             keyboard.setLayout(InAppKeyboardView.Layout.EN);
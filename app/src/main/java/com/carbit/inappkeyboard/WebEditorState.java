@@ -0,0 +1,98 @@
+package com.carbit.inappkeyboard;
+
+import android.text.InputType;
+
+import com.carbit.inappkeyboard.keyboard.KeyRepeatPolicy;
+
+/**
+ * Java-side mirror of the focused editor inside a WebView: whether it is editable, its HTML type,
+ * the selection and a short window of text before the caret.
+ *
+ * The page pushes changes (see {@link WebViewCommitTarget}); the keyboard reads this copy instead
+ * of asking JavaScript on every key. Main thread only.
+ */
+public final class WebEditorState {
+
+    /**
+     * Characters of text before the caret the page keeps in sync: what the default key repeat
+     * policy reads to size a line delete. A policy asking for more still sees at most this many.
+     */
+    public static final int TEXT_BEFORE_WINDOW = KeyRepeatPolicy.DEFAULT.contextLength;
+
+    public interface OnChangedListener {
+        void onEditorStateChanged(WebEditorState state);
+    }
+
+    private boolean editable = false;
+    private String htmlType = "";
+    private int selectionStart = -1;
+    private int selectionEnd = -1;
+    private String textBeforeCursor = "";
+
+    public boolean isEditable() {
+        return editable;
+    }
+
+    /** {@code input} type ("text", "number", "password", ...), "textarea", "contenteditable" or "". */
+    public String getHtmlType() {
+        return htmlType;
+    }
+
+    /** Offset in the value of an input or textarea; -1 for contenteditable and when unknown. */
+    public int getSelectionStart() {
+        return selectionStart;
+    }
+
+    public int getSelectionEnd() {
+        return selectionEnd;
+    }
+
+    /** Up to {@link #TEXT_BEFORE_WINDOW} characters before the caret; always empty in a password field. */
+    public String getTextBeforeCursor() {
+        return textBeforeCursor;
+    }
+
+    public boolean isPassword() {
+        return "password".equals(htmlType);
+    }
+
+    /** {@link InputType} equivalent of {@link #getHtmlType()}. */
+    public int getInputType() {
+        switch (htmlType) {
+            case "number":
+                return InputType.TYPE_CLASS_NUMBER;
+            case "tel":
+                return InputType.TYPE_CLASS_PHONE;
+            case "password":
+                return InputType.TYPE_CLASS_TEXT | InputType.TYPE_TEXT_VARIATION_WEB_PASSWORD;
+            default:
+                return InputType.TYPE_CLASS_TEXT;
+        }
+    }
+
+    /** Replace the mirror with a snapshot from the page; returns whether anything changed. */
+    boolean update(boolean editable, String htmlType, int selectionStart, int selectionEnd, String textBeforeCursor) {
+        if (htmlType == null) htmlType = "";
+        if (textBeforeCursor == null || "password".equals(htmlType)) textBeforeCursor = "";
+        boolean changed = this.editable != editable
+                || !this.htmlType.equals(htmlType)
+                || this.selectionStart != selectionStart
+                || this.selectionEnd != selectionEnd
+                || !this.textBeforeCursor.equals(textBeforeCursor);
+        this.editable = editable;
+        this.htmlType = htmlType;
+        this.selectionStart = selectionStart;
+        this.selectionEnd = selectionEnd;
+        this.textBeforeCursor = textBeforeCursor;
+        return changed;
+    }
+
+    /** Apply an edit we just sent to the page, so reads stay correct until the page reports back. */
+    void applyLocalEdit(CharSequence textBeforeAfterEdit, int deleteCount, int insertLength) {
+        if (!isPassword()) textBeforeCursor = textBeforeAfterEdit.toString();
+        if (selectionStart < 0) return;
+        int caret = Math.max(0, Math.min(selectionStart, selectionEnd) - deleteCount) + insertLength;
+        selectionStart = caret;
+        selectionEnd = caret;
+    }
+}
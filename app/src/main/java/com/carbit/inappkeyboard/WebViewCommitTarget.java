@@ -1,75 +1,211 @@
 package com.carbit.inappkeyboard;
 
 import android.os.Build;
-import android.util.Base64;
-import android.util.Log;
+import android.view.Choreographer;
+import android.webkit.JavascriptInterface;
+import android.webkit.ValueCallback;
 import android.webkit.WebView;
 
 import com.carbit.inappkeyboard.keyboard.ITextCommitTarget;
+import com.carbit.inappkeyboard.keyboard.PendingEdit;
 
-import java.io.UnsupportedEncodingException;
-import java.nio.charset.StandardCharsets;
+import org.json.JSONObject;
 
 /**
  * {@link ITextCommitTarget} that injects text into the focused element of a WebView
  * (input, textarea, or contenteditable) via JavaScript.
+ *
+ * A small editing bridge ({@code window.__iak}) is installed in the page once. Keystrokes are
+ * coalesced into a {@link PendingEdit} and sent to the bridge at most once per frame as a single
+ * range edit ({@code setRangeText} plus an {@code input} event, or one {@code execCommand} pair
+ * for contenteditable), so the cost per key no longer grows with the document length.
+ *
+ * The bridge also reports focus, selection and the text before the caret back into a
+ * {@link WebEditorState} (at most once per animation frame, only when something changed), so the
+ * keyboard can read them without a JavaScript round trip; the text of password fields is never
+ * reported. Create the target before the page loads (the host interface is only exposed to pages
+ * loaded afterwards) and call {@link #onPageFinished()} from the WebViewClient.
  */
 public final class WebViewCommitTarget implements ITextCommitTarget {
 
-    private static final String TAG = "WebViewCommitTarget";
+    private static final String HOST_INTERFACE = "__iakHost";
+
+    /**
+     * Installs {@code window.__iak.apply(deleteCount, text, seq)} and the state reporter; idempotent.
+     * Each report carries the {@code seq} of the last edit applied before it was taken.
+     */
+    private static final String BRIDGE_JS = "(function(){ if (window.__iak) return; " +
+            "var W = " + WebEditorState.TEXT_BEFORE_WINDOW + ", last = null, queued = false, applied = 0; " +
+            "function snapshot() { var el = document.activeElement, ed = false, type = '', s = -1, e = -1, before = ''; " +
+            "if (el && (el.tagName === 'INPUT' || el.tagName === 'TEXTAREA')) { " +
+            "ed = true; type = el.tagName === 'TEXTAREA' ? 'textarea' : (el.type || 'text'); " +
+            "var a = null, b = null; try { a = el.selectionStart; b = el.selectionEnd; } catch (err) {} " +
+            "if (a !== null && a !== undefined) { s = a; e = b; } " +
+            // A password never leaves the page; the keyboard only needs to know the field is one.
+            "if (type !== 'password') before = s < 0 ? el.value.slice(-W) : el.value.substring(Math.max(0, s - W), s); " +
+            "} else if (el && el.isContentEditable) { ed = true; type = 'contenteditable'; " +
+            "var sel = window.getSelection(); if (sel && sel.rangeCount) before = textBefore(el, sel.getRangeAt(0)); } " +
+            "return [ed, type, s, e, before, applied]; } " +
+            // Up to W characters before the caret, read back text node by text node so the cost does
+            // not grow with the document; contenteditable reports no offsets, which would.
+            "function textBefore(root, r) { var n = r.startContainer, txt = '', t, " +
+            "tw = document.createTreeWalker(root, NodeFilter.SHOW_TEXT, null, false); " +
+            "if (n.nodeType === 3) { txt = n.data.substring(Math.max(0, r.startOffset - W), r.startOffset); tw.currentNode = n; } " +
+            "else if (n.childNodes[r.startOffset]) { tw.currentNode = n.childNodes[r.startOffset]; } " +
+            "else { while (n.lastChild) n = n.lastChild; tw.currentNode = n; " +
+            "if (n.nodeType === 3) txt = n.data.slice(-W); } " +
+            "while (txt.length < W && (t = tw.previousNode())) txt = t.data.slice(-W) + txt; " +
+            "return txt.slice(-W); } " +
+            "function report() { queued = false; var host = window." + HOST_INTERFACE + "; if (!host) return; " +
+            "var st = snapshot(), key = JSON.stringify(st); if (key === last) return; last = key; " +
+            "host.onState(st[0], st[1], st[2], st[3], st[4], st[5]); } " +
+            "function queue() { if (queued) return; queued = true; " +
+            "if (window.requestAnimationFrame) requestAnimationFrame(report); else setTimeout(report, 16); } " +
+            "['focusin', 'focusout', 'selectionchange', 'input'].forEach(function(t) { document.addEventListener(t, queue, true); }); " +
+            "function fire(el, type, data) { var ev; " +
+            "try { ev = new InputEvent('input', {bubbles: true, inputType: type, data: data}); } " +
+            "catch (err) { ev = document.createEvent('Event'); ev.initEvent('input', true, false); } " +
+            "el.dispatchEvent(ev); } " +
+            "window.__iak = { apply: function(d, t, n) { applied = n; try { " +
+            "var el = document.activeElement; if (!el) return true; " +
+            "if (el.tagName === 'INPUT' || el.tagName === 'TEXTAREA') { " +
+            "var s = el.selectionStart, e = el.selectionEnd; " +
+            "if (s === null || s === undefined) { var v = el.value; el.value = v.substring(0, Math.max(0, v.length - d)) + t; } " +
+            "else { el.setRangeText(t, Math.max(0, s - d), e, 'end'); } " +
+            "fire(el, t ? 'insertText' : 'deleteContentBackward', t || null); " +
+            "} else if (el.isContentEditable) { " +
+            "var sel = window.getSelection(); " +
+            "if (d > 0 && sel && sel.rangeCount) { " +
+            "if (sel.isCollapsed && sel.modify) { for (var i = 0; i < d; i++) sel.modify('extend', 'backward', 'character'); } " +
+            "document.execCommand('delete', false, null); } " +
+            "if (t) document.execCommand('insertText', false, t); } " +
+            "} catch (err) { console.log(err); } queue(); return true; } }; queue(); })();";
 
     private final WebView webView;
+    private final PendingEdit pending = new PendingEdit();
+    private final WebEditorState state = new WebEditorState();
+    private WebEditorState.OnChangedListener stateListener;
+    private boolean bridgeInstalled = false;
+    private boolean flushScheduled = false;
+    /** Edits sent to the current page; reports taken before the latest one are stale. */
+    private int sentEdits = 0;
+
+    private final Choreographer.FrameCallback flushCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            flushScheduled = false;
+            flush();
+        }
+    };
 
     public WebViewCommitTarget(WebView webView) {
         this.webView = webView;
+        if (webView != null) webView.addJavascriptInterface(new HostInterface(), HOST_INTERFACE);
+    }
+
+    /** Mirror of the focused editor, kept up to date by the page. */
+    public WebEditorState getEditorState() {
+        return state;
+    }
+
+    public void setOnEditorStateChangedListener(WebEditorState.OnChangedListener listener) {
+        this.stateListener = listener;
+    }
+
+    /** A page finished loading: install the bridge so state is reported before the first key. */
+    public void onPageFinished() {
+        if (webView == null) return;
+        evaluate(BRIDGE_JS, null);
+        bridgeInstalled = true;
+        // A new page's bridge counts edits from zero.
+        sentEdits = 0;
+    }
+
+    /** {@code null} in password fields, whose text is not mirrored; deletes there are per character. */
+    @Override
+    public CharSequence getTextBeforeCursor(int n) {
+        if (n <= 0 || !state.isEditable() || state.isPassword()) return null;
+        String before = state.getTextBeforeCursor();
+        if (pending.isEmpty()) return before.substring(Math.max(0, before.length() - n));
+        return pending.applyTo(before, n);
     }
 
     @Override
     public void insert(String text) {
         if (text == null || webView == null) return;
-        String encoded = base64Encode(text);
-        String js = "(function(){ try { var b = '" + encoded + "'; var t = decodeURIComponent(escape(atob(b))); " +
-                "var el = document.activeElement; if (!el) return; " +
-                "if (el.tagName === 'INPUT' || el.tagName === 'TEXTAREA') { " +
-                "var s = el.selectionStart, e = el.selectionEnd, v = el.value; " +
-                "el.value = v.substring(0, s) + t + v.substring(e); " +
-                "el.selectionStart = el.selectionEnd = s + t.length; " +
-                "} else if (el.contentEditable === 'true') { document.execCommand('insertText', false, t); } " +
-                "} catch (err) { console.log(err); } })();";
-        evaluate(js);
+        pending.insert(text);
+        scheduleFlush();
     }
 
     @Override
     public void deleteLastChar(int count) {
         if (count <= 0 || webView == null) return;
-        String js = "(function(){ try { " +
-                "var el = document.activeElement; if (!el) return; var n = " + count + "; " +
-                "if (el.tagName === 'INPUT' || el.tagName === 'TEXTAREA') { " +
-                "var s = el.selectionStart, e = el.selectionEnd, v = el.value; " +
-                "if (s > 0) { var from = Math.max(0, s - n); " +
-                "el.value = v.substring(0, from) + v.substring(e); " +
-                "el.selectionStart = el.selectionEnd = from; } " +
-                "} else if (el.contentEditable === 'true') { " +
-                "for (var i = 0; i < n; i++) document.execCommand('backspace', false, null); } " +
-                "} catch (err) { console.log(err); } })();";
-        evaluate(js);
+        pending.deleteBefore(count);
+        scheduleFlush();
     }
 
-    private void evaluate(String js) {
+    /** Send queued edits now instead of on the next frame. */
+    public void flush() {
+        if (flushScheduled) {
+            Choreographer.getInstance().removeFrameCallback(flushCallback);
+            flushScheduled = false;
+        }
+        if (pending.isEmpty() || webView == null) return;
+        final String call = "window.__iak.apply(" + pending.deleteCount() + "," + quote(pending.text())
+                + "," + (++sentEdits) + ")";
+        if (state.isEditable()) {
+            state.applyLocalEdit(pending.applyTo(state.getTextBeforeCursor(), WebEditorState.TEXT_BEFORE_WINDOW),
+                    pending.deleteCount(), pending.text().length());
+        }
+        pending.clear();
+
+        if (!bridgeInstalled) {
+            evaluate(BRIDGE_JS, null);
+            bridgeInstalled = true;
+        }
+        // A navigation drops the bridge; the call then reports false and is replayed after reinstalling.
+        evaluate("window.__iak ? " + call + " : false", new ValueCallback<String>() {
+            @Override
+            public void onReceiveValue(String value) {
+                if (!"false".equals(value)) return;
+                evaluate(BRIDGE_JS + call, null);
+            }
+        });
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled) return;
+        flushScheduled = true;
+        Choreographer.getInstance().postFrameCallback(flushCallback);
+    }
+
+    private void evaluate(String js, ValueCallback<String> callback) {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-            webView.evaluateJavascript(js, null);
+            webView.evaluateJavascript(js, callback);
         } else {
             webView.loadUrl("javascript:" + js);
         }
     }
 
-    private static String base64Encode(String text) {
-        try {
-            byte[] bytes = text.getBytes(StandardCharsets.UTF_8.name());
-            return Base64.encodeToString(bytes, Base64.NO_WRAP);
-        } catch (UnsupportedEncodingException e) {
-            Log.w(TAG, "UTF-8 not supported", e);
-            return Base64.encodeToString(text.getBytes(), Base64.NO_WRAP);
+    /** Receives state snapshots from the page on the WebView's JavaBridge thread. */
+    private final class HostInterface {
+        @JavascriptInterface
+        public void onState(final boolean editable, final String htmlType, final int selectionStart,
+                            final int selectionEnd, final String textBeforeCursor, final int appliedEdits) {
+            webView.post(new Runnable() {
+                @Override
+                public void run() {
+                    // Taken before our last edit reached the page: it would bring back the old text.
+                    if (appliedEdits < sentEdits) return;
+                    boolean changed = state.update(editable, htmlType, selectionStart, selectionEnd, textBeforeCursor);
+                    if (changed && stateListener != null) stateListener.onEditorStateChanged(state);
+                }
+            });
         }
     }
+
+    /** JSON string literal; U+2028/U+2029 are escaped too since older engines reject them in JS source. */
+    private static String quote(CharSequence text) {
+        return JSONObject.quote(text.toString()).replace("\u2028", "\\u2028").replace("\u2029", "\\u2029");
+    }
 }
@@ -0,0 +1,57 @@
+package com.carbit.inappkeyboard.bench;
+
+import com.carbit.inappkeyboard.keyboard.AskXmlKeyboardParser;
+
+import org.kxml2.io.KXmlParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing the bundled ASK layouts with kXML, the parser behind {@code android.util.Xml}. The
+ * file is read once; the score covers parsing only.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AskXmlKeyboardParserBenchmark {
+
+    @Param({"en_qwerty", "fr_azerty", "ar_qwerty"})
+    public String layout;
+
+    private byte[] xml;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File dir = new File(System.getProperty("inappkeyboard.layouts", "ask_layouts"));
+        xml = Files.readAllBytes(new File(dir, layout + ".xml").toPath());
+    }
+
+    @Benchmark
+    public AskXmlKeyboardParser.Layout parse() throws IOException, XmlPullParserException {
+        XmlPullParser parser = new KXmlParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        parser.setInput(new ByteArrayInputStream(xml), "utf-8");
+        return AskXmlKeyboardParser.parse(parser);
+    }
+}
@@ -0,0 +1,107 @@
+package com.carbit.inappkeyboard.bench;
+
+import com.carbit.inappkeyboard.keyboard.PinyinBatchConverter;
+import com.carbit.inappkeyboard.keyboard.PinyinDecoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Converts the pinyin of a corpus with {@link PinyinBatchConverter} at each thread count and
+ * reports throughput and the speedup over one thread. Lines like {@code 学习 (xue xi)} give the
+ * pinyin in brackets; in other lines every run of two or more a-z letters is one string.
+ *
+ * <p>Usage: {@code BatchRunner <corpus> [--threads 1,2,4,8] [--repeat n] [--top n] [--unordered]}
+ */
+public final class BatchRunner {
+
+    private BatchRunner() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.err.println("usage: BatchRunner <corpus> [--threads 1,2,4,8] [--repeat n] [--top n] [--unordered]");
+            System.exit(2);
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        String threadList = null;
+        int repeat = 20;
+        int topN = 8;
+        boolean ordered = true;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads": threadList = args[++i]; break;
+                case "--repeat": repeat = Math.max(1, Integer.parseInt(args[++i])); break;
+                case "--top": topN = Math.max(1, Integer.parseInt(args[++i])); break;
+                case "--unordered": ordered = false; break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (!PinyinDecoder.isLibraryLoaded()) {
+            throw new IllegalStateException("libjni_pinyinime is not loaded; build it with cmake into"
+                    + " build/host-pinyinime (see README) or set -D" + PinyinDecoder.LIBRARY_PATH_PROPERTY);
+        }
+        File dict = new File(System.getProperty("inappkeyboard.pinyin.dict", "dict_pinyin.dat"));
+
+        List<String> pinyins = readPinyins(args[0]);
+        List<String> input = new ArrayList<>(pinyins.size() * repeat);
+        for (int i = 0; i < repeat; i++) input.addAll(pinyins);
+
+        System.out.printf(Locale.ROOT, "corpus    %s: %,d strings x %d, top %d, %s, %d cores%n", args[0],
+                pinyins.size(), repeat, topN, ordered ? "ordered" : "unordered", cores);
+        double base = 0;
+        for (String t : (threadList != null ? threadList : defaultThreads(cores)).split(",")) {
+            int threads = Integer.parseInt(t.trim());
+            PinyinBatchConverter converter = new PinyinBatchConverter.Builder(dict)
+                    .setThreads(threads).setTopN(topN).setOrdered(ordered).build();
+            try {
+                // Warm-up pass: JIT, and each instance's caches.
+                converter.convertAll(input);
+                long start = System.nanoTime();
+                converter.convertAll(input);
+                double perSecond = input.size() / ((System.nanoTime() - start) / 1e9);
+                if (base == 0) base = perSecond / threads;
+                System.out.printf(Locale.ROOT, "threads %2d  %,12.0f strings/s  speedup %.2f%n",
+                        threads, perSecond, perSecond / base);
+            } finally {
+                converter.close();
+            }
+        }
+    }
+
+    private static String defaultThreads(int cores) {
+        StringBuilder sb = new StringBuilder("1");
+        for (int n = 2; n < cores; n *= 2) sb.append(',').append(n);
+        if (cores > 1) sb.append(',').append(cores);
+        return sb.toString();
+    }
+
+    private static List<String> readPinyins(String path) throws IOException {
+        List<String> out = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8)) {
+            int open = line.indexOf('(');
+            int close = line.lastIndexOf(')');
+            if (open >= 0 && close > open) {
+                String pinyin = line.substring(open + 1, close).replace(" ", "");
+                if (!pinyin.isEmpty()) out.add(pinyin);
+                continue;
+            }
+            int start = -1;
+            for (int i = 0; i <= line.length(); i++) {
+                boolean letter = i < line.length() && line.charAt(i) >= 'a' && line.charAt(i) <= 'z';
+                if (letter && start < 0) start = i;
+                if (!letter && start >= 0) {
+                    if (i - start >= 2) out.add(line.substring(start, i));
+                    start = -1;
+                }
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,152 @@
+package com.carbit.inappkeyboard.bench;
+
+import com.carbit.inappkeyboard.keyboard.ITextCommitTarget;
+import com.carbit.inappkeyboard.keyboard.PendingEdit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code EditTextCommitTarget} edit paths over large documents. {@code Editable} needs the
+ * Android runtime, so the target below applies the same replace calls to a StringBuilder.
+ * Each invocation types {@link #BURST} characters and deletes them again, so the document size
+ * stays fixed; scores are per key.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommitTargetEditBenchmark {
+
+    private static final int BURST = 16;
+    private static final String[] KEYS = {"a", "b", "c", "d", "e", "f", "g", "h"};
+
+    @Param({"1000", "100000", "1000000"})
+    public int documentLength;
+
+    @Param({"end", "middle"})
+    public String caret;
+
+    private BufferCommitTarget target;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StringBuilder doc = new StringBuilder(documentLength + BURST);
+        for (int i = 0; i < documentLength; i++) doc.append(i % 64 == 63 ? ' ' : (char) ('a' + i % 26));
+        target = new BufferCommitTarget(doc, "end".equals(caret) ? documentLength : documentLength / 2);
+    }
+
+    /** Every key applied on its own, as before batch edits. */
+    @Benchmark
+    @OperationsPerInvocation(2 * BURST)
+    public int perKey() {
+        for (int i = 0; i < BURST; i++) target.insert(KEYS[i & 7]);
+        for (int i = 0; i < BURST; i++) target.deleteLastChar(1);
+        return target.length();
+    }
+
+    /** Typing and deleting as two batches (two frames of keys): one replace each. */
+    @Benchmark
+    @OperationsPerInvocation(2 * BURST)
+    public int batched() {
+        target.beginBatchEdit();
+        for (int i = 0; i < BURST; i++) target.insert(KEYS[i & 7]);
+        target.endBatchEdit();
+        target.beginBatchEdit();
+        for (int i = 0; i < BURST; i++) target.deleteLastChar(1);
+        target.endBatchEdit();
+        return target.length();
+    }
+
+    /** Word-granularity delete repeat: read the context before the caret with edits pending. */
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public int textBeforeCursorWhileBatched() {
+        int n = 0;
+        target.beginBatchEdit();
+        for (int i = 0; i < BURST; i++) {
+            target.insert(KEYS[i & 7]);
+            n += target.getTextBeforeCursor(256).length();
+        }
+        target.deleteLastChar(BURST);
+        target.endBatchEdit();
+        return n;
+    }
+
+    /** {@code EditTextCommitTarget} with the EditText replaced by a StringBuilder and a caret. */
+    static final class BufferCommitTarget implements ITextCommitTarget {
+        private final StringBuilder text;
+        private final PendingEdit pending = new PendingEdit();
+        private int caret;
+        private int batchDepth = 0;
+
+        BufferCommitTarget(StringBuilder text, int caret) {
+            this.text = text;
+            this.caret = caret;
+        }
+
+        int length() {
+            return text.length();
+        }
+
+        @Override
+        public void insert(String s) {
+            if (batchDepth > 0) {
+                pending.insert(s);
+                return;
+            }
+            replace(caret, caret, s);
+        }
+
+        @Override
+        public void deleteLastChar(int count) {
+            if (batchDepth > 0) {
+                pending.deleteBefore(count);
+                return;
+            }
+            if (caret > 0) replace(Math.max(0, caret - count), caret, "");
+        }
+
+        @Override
+        public CharSequence getTextBeforeCursor(int n) {
+            if (pending.isEmpty()) return text.subSequence(Math.max(0, caret - n), caret);
+            int reach = n + pending.deleteCount();
+            return pending.applyTo(text.subSequence(Math.max(0, caret - reach), caret), n);
+        }
+
+        @Override
+        public void beginBatchEdit() {
+            batchDepth++;
+        }
+
+        @Override
+        public void endBatchEdit() {
+            if (batchDepth == 0 || --batchDepth > 0) return;
+            if (pending.isEmpty()) return;
+            int from = Math.max(0, caret - pending.deleteCount());
+            CharSequence insert = pending.text();
+            if (from != caret || insert.length() > 0) replace(from, caret, insert);
+            pending.clear();
+        }
+
+        private void replace(int from, int to, CharSequence s) {
+            text.replace(from, to, s.toString());
+            caret = from + s.length();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.carbit.inappkeyboard.bench;
+
+import com.carbit.inappkeyboard.keyboard.IPinyinDecoder;
+import com.carbit.inappkeyboard.keyboard.ITextCommitTarget;
+import com.carbit.inappkeyboard.keyboard.LatencyHistogram;
+import com.carbit.inappkeyboard.keyboard.PinyinDecoder;
+import com.carbit.inappkeyboard.keyboard.PinyinImeSession;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Streams a corpus through {@link PinyinImeSession} one line at a time, so corpora of any size
+ * run in constant memory. Two line formats are understood:
+ * <ul>
+ *   <li>{@code 学习 (xue xi)} as in {@code ime_common_words_1000_plain.txt}: the pinyin is typed
+ *   and the expected word's rank among the candidates is recorded, then it is picked (or the raw
+ *   letters committed on a miss).</li>
+ *   <li>Anything else, e.g. wiki titles: runs of a-z are typed as pinyin and committed raw every
+ *   {@value #MAX_FREE_COMPOSING} letters; other characters are inserted directly.</li>
+ * </ul>
+ * Every letter is timed as the keyboard handles it: append, then bind the candidate bar, which
+ * searches and reads the visible page.
+ *
+ * <p>Usage: {@code CorpusRunner <corpus> [--decoder native|fake] [--limit lines] [--depth n]}
+ */
+public final class CorpusRunner {
+
+    private static final int MAX_FREE_COMPOSING = 6;
+    private static final int PROGRESS_LINES = 100_000;
+
+    private final PinyinImeSession session;
+    private final int depth;
+    private final PageReadingBar bar = new PageReadingBar();
+    private final ITextCommitTarget target = new ITextCommitTarget() {
+        @Override
+        public void insert(String text) {
+            committedChars += text.length();
+        }
+
+        @Override
+        public void deleteLastChar(int count) {
+        }
+    };
+
+    private final LatencyHistogram keyLatency = new LatencyHistogram();
+    /** rankCounts[r] counts words found at candidate rank r (0 is the decoder's best). */
+    private final long[] rankCounts;
+    private long lines;
+    private long keys;
+    private long words;
+    private long misses;
+    private long committedChars;
+
+    CorpusRunner(IPinyinDecoder decoder, int depth) {
+        this.session = new PinyinImeSession(decoder);
+        this.depth = depth;
+        this.rankCounts = new long[depth];
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: CorpusRunner <corpus> [--decoder native|fake] [--limit lines] [--depth n]");
+            System.exit(2);
+        }
+        String decoderKind = Decoders.NATIVE;
+        long limit = Long.MAX_VALUE;
+        int depth = 100;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--decoder": decoderKind = args[i + 1]; break;
+                case "--limit": limit = Long.parseLong(args[i + 1]); break;
+                case "--depth": depth = Integer.parseInt(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        IPinyinDecoder decoder = Decoders.open(decoderKind);
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            CorpusRunner runner = new CorpusRunner(decoder, depth);
+            resetPeakHeap();
+            PinyinDecoder.resetStats();
+            long start = System.nanoTime();
+            runner.run(reader, limit);
+            runner.report(System.out, System.nanoTime() - start, args[0], decoderKind);
+        } finally {
+            Decoders.close(decoder);
+        }
+    }
+
+    void run(BufferedReader reader, long limit) throws IOException {
+        String line;
+        while (lines < limit && (line = reader.readLine()) != null) {
+            lines++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty()) continue;
+            int open = trimmed.lastIndexOf('(');
+            if (open > 0 && trimmed.endsWith(")")) {
+                typeWord(trimmed.substring(0, open).trim(), trimmed.substring(open + 1, trimmed.length() - 1));
+            } else {
+                typeFreeText(trimmed);
+            }
+            if (lines % PROGRESS_LINES == 0) {
+                System.err.printf(Locale.ROOT, "%,d lines, %,d keys%n", lines, keys);
+            }
+        }
+    }
+
+    private void typeWord(String word, String pinyin) {
+        session.clear();
+        for (int i = 0; i < pinyin.length(); i++) {
+            char ch = Character.toLowerCase(pinyin.charAt(i));
+            if (ch >= 'a' && ch <= 'z') typeLetter(ch);
+        }
+        if (!session.hasComposing()) return;
+        words++;
+        // Index 0 of the bound list is the raw letters; decoder candidates follow.
+        List<String> candidates = bar.candidates;
+        int limit = Math.min(depth, candidates.size() - 1);
+        int rank = -1;
+        for (int r = 0; r < limit; r++) {
+            if (word.equals(candidates.get(r + 1))) {
+                rank = r;
+                break;
+            }
+        }
+        if (rank >= 0) rankCounts[rank]++;
+        else misses++;
+        click(rank + 1);
+    }
+
+    private void typeFreeText(String line) {
+        session.clear();
+        for (int i = 0; i < line.length(); i++) {
+            char ch = line.charAt(i);
+            if (ch >= 'a' && ch <= 'z') {
+                typeLetter(ch);
+                if (session.composingText().length() >= MAX_FREE_COMPOSING) click(0);
+            } else {
+                if (session.hasComposing()) click(0);
+                target.insert(String.valueOf(ch));
+                keys++;
+            }
+        }
+        if (session.hasComposing()) click(0);
+    }
+
+    private void typeLetter(char ch) {
+        long t0 = System.nanoTime();
+        session.onCommitChar(String.valueOf(ch));
+        session.bindCandidateClicks(target, bar);
+        keyLatency.record(System.nanoTime() - t0);
+        keys++;
+    }
+
+    private void click(int index) {
+        if (bar.onClick == null) return;
+        bar.onClick.onClick(index, bar.candidates.get(index));
+        keys++;
+    }
+
+    void report(PrintStream out, long elapsedNanos, String corpus, String decoderKind) {
+        double seconds = elapsedNanos / 1e9;
+        out.printf(Locale.ROOT, "corpus          %s (%s decoder)%n", corpus, decoderKind);
+        out.printf(Locale.ROOT, "lines           %,d in %.2f s%n", lines, seconds);
+        out.printf(Locale.ROOT, "keys            %,d (%,.0f keys/s)%n", keys, keys / seconds);
+        out.printf(Locale.ROOT, "per-key latency p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us%n",
+                keyLatency.valueAtPercentile(50) / 1e3, keyLatency.valueAtPercentile(99) / 1e3,
+                keyLatency.valueAtPercentile(99.9) / 1e3, keyLatency.max() / 1e3);
+        if (words > 0) {
+            long top1 = rankCounts.length > 0 ? rankCounts[0] : 0;
+            long topPage = 0;
+            double rankSum = 0;
+            for (int r = 0; r < rankCounts.length; r++) {
+                if (r < PageReadingBar.VISIBLE) topPage += rankCounts[r];
+                rankSum += (double) r * rankCounts[r];
+            }
+            long hits = words - misses;
+            out.printf(Locale.ROOT, "expected word   %,d words: top-1 %.1f%%, first page (%d) %.1f%%,"
+                            + " top-%d %.1f%%, mean rank %.2f%n",
+                    words, 100.0 * top1 / words, PageReadingBar.VISIBLE, 100.0 * topPage / words,
+                    depth, 100.0 * hits / words, hits > 0 ? rankSum / hits : 0);
+        }
+        out.printf(Locale.ROOT, "committed       %,d chars%n", committedChars);
+        out.printf(Locale.ROOT, "peak heap       %.1f MB%n", peakHeapBytes() / (1024.0 * 1024.0));
+        if (Decoders.NATIVE.equals(decoderKind)) reportEngineStats(out, PinyinDecoder.getStats());
+    }
+
+    private static void reportEngineStats(PrintStream out, long[] s) {
+        out.printf(Locale.ROOT, "engine          %,d searches, %,d letters decoded%n",
+                s[PinyinDecoder.STAT_SEARCHES], s[PinyinDecoder.STAT_SEARCH_STEPS]);
+        out.printf(Locale.ROOT, "matrix nodes    peak %d of %d, %,d extensions rejected%n",
+                s[PinyinDecoder.STAT_MATRIX_NODES_PEAK], s[PinyinDecoder.STAT_MATRIX_NODES_POOL_SIZE],
+                s[PinyinDecoder.STAT_MATRIX_NODES_REJECTED]);
+        out.printf(Locale.ROOT, "dmi             peak %d of %d, %,d letters rejected%n",
+                s[PinyinDecoder.STAT_DMI_PEAK], s[PinyinDecoder.STAT_DMI_POOL_SIZE],
+                s[PinyinDecoder.STAT_DMI_REJECTED]);
+        out.printf(Locale.ROOT, "lpi cache       %.1f%% of %,d lookups%n",
+                percent(s[PinyinDecoder.STAT_LPI_CACHE_HITS], s[PinyinDecoder.STAT_LPI_CACHE_MISSES]),
+                s[PinyinDecoder.STAT_LPI_CACHE_HITS] + s[PinyinDecoder.STAT_LPI_CACHE_MISSES]);
+        out.printf(Locale.ROOT, "user dict cache %.1f%% of %,d lookups (%,d known misses)%n",
+                percent(s[PinyinDecoder.STAT_USER_DICT_CACHE_HITS], s[PinyinDecoder.STAT_USER_DICT_CACHE_MISSES]),
+                s[PinyinDecoder.STAT_USER_DICT_CACHE_HITS] + s[PinyinDecoder.STAT_USER_DICT_CACHE_MISSES],
+                s[PinyinDecoder.STAT_USER_DICT_MISS_CACHE_HITS]);
+    }
+
+    private static double percent(long hits, long misses) {
+        return hits + misses == 0 ? 0 : 100.0 * hits / (hits + misses);
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+    }
+
+    private static long peakHeapBytes() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+}
@@ -0,0 +1,72 @@
+package com.carbit.inappkeyboard.bench;
+
+import com.carbit.inappkeyboard.keyboard.IPinyinDecoder;
+import com.carbit.inappkeyboard.keyboard.PinyinDecoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+/** Decoders for the benchmarks: a constant-cost fake and the real native engine. */
+final class Decoders {
+
+    static final String FAKE = "fake";
+    static final String NATIVE = "native";
+
+    /** 30 letters of ordinary pinyin: zhong hua ren min gong he guo cheng li. */
+    static final String SENTENCE = "zhonghuarenmingongheguochengli";
+
+    private Decoders() {
+    }
+
+    static IPinyinDecoder open(String kind) throws IOException {
+        if (FAKE.equals(kind)) return new FakeDecoder();
+        if (!NATIVE.equals(kind)) throw new IllegalArgumentException("Unknown decoder " + kind);
+        if (!PinyinDecoder.isLibraryLoaded()) {
+            throw new IllegalStateException("libjni_pinyinime is not loaded; build it with cmake into"
+                    + " build/host-pinyinime (see README) or set -D" + PinyinDecoder.LIBRARY_PATH_PROPERTY);
+        }
+        File dict = new File(System.getProperty("inappkeyboard.pinyin.dict", "dict_pinyin.dat"));
+        File usr = Files.createTempFile("usr_dict", ".dat").toFile();
+        usr.deleteOnExit();
+        PinyinDecoder decoder = new PinyinDecoder(dict, usr);
+        decoder.initIfNeeded();
+        return decoder;
+    }
+
+    static void close(IPinyinDecoder decoder) {
+        if (decoder instanceof PinyinDecoder) ((PinyinDecoder) decoder).close();
+    }
+
+    /** Fixed candidates, so session benchmarks measure the session rather than the engine. */
+    static final class FakeDecoder implements IPinyinDecoder {
+        private static final List<String> BASE = Arrays.asList(
+                "中", "种", "重", "众", "钟", "终", "忠", "肿", "仲", "衷", "踵", "盅", "冢", "锺", "螽", "舯");
+
+        @Override
+        public void reset() {
+        }
+
+        @Override
+        public List<String> candidates(String pinyin, int max) {
+            return BASE.subList(0, Math.min(max, BASE.size()));
+        }
+
+        @Override
+        public int search(String pinyin) {
+            return BASE.size();
+        }
+
+        @Override
+        public String candidateAt(int index) {
+            return index >= 0 && index < BASE.size() ? BASE.get(index) : "";
+        }
+
+        @Override
+        public String choose(int index) {
+            return candidateAt(index);
+        }
+    }
+}
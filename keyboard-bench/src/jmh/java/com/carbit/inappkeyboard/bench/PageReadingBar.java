@@ -0,0 +1,29 @@
+package com.carbit.inappkeyboard.bench;
+
+import com.carbit.inappkeyboard.keyboard.ICandidateBar;
+
+import java.util.Collections;
+import java.util.List;
+
+/** Keeps the last bound list and reads its visible page, as the candidate bar does when it draws. */
+final class PageReadingBar implements ICandidateBar {
+
+    static final int VISIBLE = 8;
+
+    List<String> candidates = Collections.emptyList();
+    OnCandidateClickListener onClick;
+
+    @Override
+    public void setCandidates(List<String> list, OnCandidateClickListener listener) {
+        candidates = list;
+        onClick = listener;
+        int n = Math.min(VISIBLE, list.size());
+        for (int i = 0; i < n; i++) list.get(i);
+    }
+
+    @Override
+    public void clear() {
+        candidates = Collections.emptyList();
+        onClick = null;
+    }
+}
@@ -0,0 +1,65 @@
+package com.carbit.inappkeyboard.bench;
+
+import com.carbit.inappkeyboard.keyboard.IPinyinDecoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** {@code PinyinDecoder.candidates} on the real engine for growing pinyin buffers. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PinyinDecoderBenchmark {
+
+    @Param({"1", "2", "3", "5", "8", "12", "16", "20", "25", "30"})
+    public int length;
+
+    @Param({"10"})
+    public int max;
+
+    private IPinyinDecoder engine;
+    private String pinyin;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        engine = Decoders.open(Decoders.NATIVE);
+        pinyin = Decoders.SENTENCE.substring(0, length);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Decoders.close(engine);
+    }
+
+    @Benchmark
+    public List<String> candidates() {
+        return engine.candidates(pinyin, max);
+    }
+
+    /** The paged path the candidate bar uses: one search, then only the first visible page. */
+    @Benchmark
+    public String searchFirstPage() {
+        int total = engine.search(pinyin);
+        String last = "";
+        for (int i = 0; i < Math.min(max, total); i++) last = engine.candidateAt(i);
+        return last;
+    }
+}
@@ -0,0 +1,114 @@
+package com.carbit.inappkeyboard.bench;
+
+import com.carbit.inappkeyboard.keyboard.ICandidateBar;
+import com.carbit.inappkeyboard.keyboard.IPinyinDecoder;
+import com.carbit.inappkeyboard.keyboard.ITextCommitTarget;
+import com.carbit.inappkeyboard.keyboard.PinyinImeSession;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One keystroke as {@code InAppKeyboardView} handles it: append a letter, bind the candidate
+ * bar (which searches) and read the first visible page. Scores are per keystroke.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PinyinImeSessionBenchmark {
+
+    private static final String WORD = "zhongguoren";
+    private static final int VISIBLE = 8;
+
+    @Param({Decoders.FAKE, Decoders.NATIVE})
+    public String decoder;
+
+    private IPinyinDecoder engine;
+    private PinyinImeSession session;
+    private final String[] letters = new String[WORD.length()];
+    private ICandidateBar bar;
+    private final ITextCommitTarget target = new ITextCommitTarget() {
+        @Override
+        public void insert(String text) {
+        }
+
+        @Override
+        public void deleteLastChar(int count) {
+        }
+    };
+
+    @Setup(Level.Trial)
+    public void setUp(Blackhole bh) throws IOException {
+        engine = Decoders.open(decoder);
+        session = new PinyinImeSession(engine);
+        bar = new VisibleCandidates(bh);
+        for (int i = 0; i < letters.length; i++) letters[i] = String.valueOf(WORD.charAt(i));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Decoders.close(engine);
+    }
+
+    // Operations per invocation are WORD.length() keystrokes.
+    @Benchmark
+    @OperationsPerInvocation(11)
+    public void typeWord() {
+        for (String letter : letters) {
+            session.onCommitChar(letter);
+            session.bindCandidateClicks(target, bar);
+        }
+        session.clear();
+    }
+
+    /** Scored per backspace; the appends before them skip the candidate bar and are cheap. */
+    @Benchmark
+    @OperationsPerInvocation(11)
+    public void backspaceWord() {
+        for (String letter : letters) {
+            session.onCommitChar(letter);
+        }
+        for (int i = 0; i < letters.length; i++) {
+            session.onBackspace(bar);
+        }
+    }
+
+    /** Reads what a candidate bar would draw; that is what pulls candidates out of the engine. */
+    private static final class VisibleCandidates implements ICandidateBar {
+        private final Blackhole bh;
+
+        VisibleCandidates(Blackhole bh) {
+            this.bh = bh;
+        }
+
+        @Override
+        public void setCandidates(List<String> candidates, OnCandidateClickListener onClick) {
+            int n = Math.min(VISIBLE, candidates.size());
+            for (int i = 0; i < n; i++) bh.consume(candidates.get(i));
+        }
+
+        @Override
+        public void clear() {
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.carbit.inappkeyboard.bench;
+
+import com.carbit.inappkeyboard.keyboard.IPinyinDecoder;
+import com.carbit.inappkeyboard.keyboard.ITextCommitTarget;
+import com.carbit.inappkeyboard.keyboard.KeyboardEngine;
+import com.carbit.inappkeyboard.keyboard.KeystrokeReplayer;
+import com.carbit.inappkeyboard.keyboard.LatencyHistogram;
+import com.carbit.inappkeyboard.keyboard.PinyinImeSession;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * Replays a keystroke trace recorded with {@code InAppKeyboardView.setTraceRecorder} through a
+ * headless {@link KeyboardEngine} composing with {@link PinyinImeSession}, and compares each event's
+ * time with the recording. The first runs warm up; the last one is reported.
+ *
+ * <p>Usage: {@code ReplayRunner <trace> [--decoder native|fake] [--speed max|original] [--runs n]}
+ */
+public final class ReplayRunner {
+
+    private ReplayRunner() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: ReplayRunner <trace> [--decoder native|fake] [--speed max|original] [--runs n]");
+            System.exit(2);
+        }
+        String decoderKind = Decoders.NATIVE;
+        boolean originalSpeed = false;
+        int runs = 5;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--decoder": decoderKind = args[i + 1]; break;
+                case "--speed": originalSpeed = "original".equals(args[i + 1]); break;
+                case "--runs": runs = Math.max(1, Integer.parseInt(args[i + 1])); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        byte[] trace = Files.readAllBytes(Paths.get(args[0]));
+        IPinyinDecoder decoder = Decoders.open(decoderKind);
+        try {
+            KeystrokeReplayer.Result result = null;
+            for (int run = 0; run < runs; run++) {
+                KeyboardEngine engine = new KeyboardEngine();
+                engine.setTarget(new NullTarget());
+                engine.setCandidateBar(new PageReadingBar());
+                engine.setPinyinSession(new PinyinImeSession(decoder));
+                result = KeystrokeReplayer.replay(trace, KeystrokeReplayer.engineTarget(engine), originalSpeed);
+            }
+            report(System.out, result, args[0], decoderKind, originalSpeed);
+        } finally {
+            Decoders.close(decoder);
+        }
+    }
+
+    private static void report(PrintStream out, KeystrokeReplayer.Result r, String trace, String decoderKind,
+                               boolean originalSpeed) {
+        out.printf(Locale.ROOT, "trace     %s (%s decoder, %s speed)%n", trace, decoderKind,
+                originalSpeed ? "original" : "max");
+        out.printf(Locale.ROOT, "events    %,d in %.2f s%n", r.events, r.elapsedNanos / 1e9);
+        printLatency(out, "recorded ", r.recorded);
+        printLatency(out, "replayed ", r.replayed);
+        out.printf(Locale.ROOT, "delta     %+.1f ms total, %+.1f us per event%n",
+                r.deltaNanos / 1e6, r.events > 0 ? r.deltaNanos / 1e3 / r.events : 0);
+        if (originalSpeed) printLatency(out, "lateness ", r.lateness);
+    }
+
+    private static void printLatency(PrintStream out, String name, LatencyHistogram h) {
+        out.printf(Locale.ROOT, "%s p50 %.1f us, p99 %.1f us, max %.1f us%n", name,
+                h.valueAtPercentile(50) / 1e3, h.valueAtPercentile(99) / 1e3, h.max() / 1e3);
+    }
+
+    private static final class NullTarget implements ITextCommitTarget {
+        @Override
+        public void insert(String text) {
+        }
+
+        @Override
+        public void deleteLastChar(int count) {
+        }
+    }
+}
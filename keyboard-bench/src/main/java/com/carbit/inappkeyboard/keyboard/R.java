@@ -0,0 +1,11 @@
+package com.carbit.inappkeyboard.keyboard;
+
+/**
+ * Stands in for the Android-generated R class so {@link PinyinDecoder} compiles on the host.
+ * Benchmarks open the dictionary from a file and never reach resources.
+ */
+public final class R {
+    public static final class raw {
+        public static int dict_pinyin = 0;
+    }
+}
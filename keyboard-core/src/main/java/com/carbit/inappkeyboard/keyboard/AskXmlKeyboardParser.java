@@ -1,11 +1,8 @@
 package com.carbit.inappkeyboard.keyboard;
 
-import android.content.res.AssetManager;
-import android.util.Log;
-import android.util.Xml;
-
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -25,9 +22,6 @@ import java.util.List;
  */
 public final class AskXmlKeyboardParser {
     private static final String ANDROID_NS = "http://schemas.android.com/apk/res/android";
-    private static final String TAG = "AskXmlKeyboardParser";
-    private static final boolean DEBUG = true;
-    private static int debugLoggedKeys = 0;
 
     public static final class Key {
         public final Integer code;
@@ -35,13 +29,24 @@ public final class AskXmlKeyboardParser {
         public final boolean isModifier;
         public final boolean isSticky;
         public final boolean isRepeatable;
+        /** Long-press characters ({@code android:popupCharacters}), escapes already resolved. */
+        public final String popupCharacters;
+        /** Unresolved {@code android:popupKeyboard} reference, e.g. "@xml/popup_qwerty_e". */
+        public final String popupKeyboard;
 
         public Key(Integer code, String label, boolean isModifier, boolean isSticky, boolean isRepeatable) {
+            this(code, label, isModifier, isSticky, isRepeatable, null, null);
+        }
+
+        public Key(Integer code, String label, boolean isModifier, boolean isSticky, boolean isRepeatable,
+                   String popupCharacters, String popupKeyboard) {
             this.code = code;
             this.label = label;
             this.isModifier = isModifier;
             this.isSticky = isSticky;
             this.isRepeatable = isRepeatable;
+            this.popupCharacters = popupCharacters;
+            this.popupKeyboard = popupKeyboard;
         }
     }
 
@@ -56,22 +61,22 @@ public final class AskXmlKeyboardParser {
     private AskXmlKeyboardParser() {
     }
 
-    public static Layout parseAsset(AssetManager assetManager, String assetPath) throws IOException, XmlPullParserException {
-        InputStream input = null;
-        try {
-            input = assetManager.open(assetPath);
-            XmlPullParser parser = Xml.newPullParser();
-            parser.setInput(input, "utf-8");
-            parser.nextTag();
-            return parseKeyboard(parser);
-        } finally {
-            if (input != null) {
-                try {
-                    input.close();
-                } catch (IOException ignored) {
-                }
-            }
-        }
+    /**
+     * Parse a UTF-8 layout from {@code input}, which the caller closes. Uses the platform's
+     * XmlPullParser on Android; on a plain JVM one must be on the classpath (e.g. kXML 2).
+     */
+    public static Layout parse(InputStream input) throws IOException, XmlPullParserException {
+        XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        XmlPullParser parser = factory.newPullParser();
+        parser.setInput(input, "utf-8");
+        return parse(parser);
+    }
+
+    /** Parse a layout from a parser whose input is already set, e.g. kXML on a plain JVM. */
+    public static Layout parse(XmlPullParser parser) throws IOException, XmlPullParserException {
+        parser.nextTag();
+        return parseKeyboard(parser);
     }
 
     private static void requireStartTag(XmlPullParser parser, String name) throws XmlPullParserException {
@@ -153,21 +158,8 @@ public final class AskXmlKeyboardParser {
         boolean isModifier = parseBoolean(attr(parser, "isModifier"), false);
         boolean isSticky = parseBoolean(attr(parser, "isSticky"), false);
         boolean isRepeatable = parseBoolean(attr(parser, "isRepeatable"), false);
-
-        if (DEBUG && (codesStr == null && label == null) && debugLoggedKeys < 5) {
-            debugLoggedKeys++;
-            StringBuilder sb = new StringBuilder();
-            sb.append("Key attrs:");
-            for (int i = 0; i < parser.getAttributeCount(); i++) {
-                sb.append(" ").append(parser.getAttributeName(i))
-                  .append("=").append(parser.getAttributeValue(i));
-            }
-            Log.d(TAG, sb.toString());
-        }
-//        Log.d(TAG, "Parsed Key: code=" + code + " label=" + label +
-//                " isModifier=" + isModifier +
-//                " isSticky=" + isSticky +
-//                " debugLoggedKeys=" + debugLoggedKeys);
+        String popupCharacters = unescape(attr(parser, "popupCharacters"));
+        String popupKeyboard = attr(parser, "popupKeyboard");
 
         int next = parser.next();
         if (next != XmlPullParser.END_TAG || !"Key".equals(parser.getName())) {
@@ -177,7 +169,36 @@ public final class AskXmlKeyboardParser {
             }
         }
 
-        return new Key(code, label, isModifier, isSticky, isRepeatable);
+        return new Key(code, label, isModifier, isSticky, isRepeatable, popupCharacters, popupKeyboard);
+    }
+
+    /**
+     * Resolve Android resource string escapes that survive in raw asset XML: unicode escapes
+     * such as {@code \\u0163}, plus escaped backslashes and quotes.
+     */
+    static String unescape(String value) {
+        if (value == null || value.indexOf('\\') < 0) return value;
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '\\' || i + 1 >= value.length()) {
+                sb.append(c);
+                continue;
+            }
+            char next = value.charAt(++i);
+            if (next == 'u' && i + 4 < value.length()) {
+                try {
+                    sb.append((char) Integer.parseInt(value.substring(i + 1, i + 5), 16));
+                    i += 4;
+                    continue;
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            if (next == 'n') sb.append('\n');
+            else if (next == 't') sb.append('\t');
+            else sb.append(next);
+        }
+        return sb.toString();
     }
 
     private static boolean parseBoolean(String value, boolean defaultValue) {
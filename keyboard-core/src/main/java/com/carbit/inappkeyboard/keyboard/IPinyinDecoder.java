@@ -11,5 +11,11 @@ public interface IPinyinDecoder {
 
     List<String> candidates(String pinyin, int max);
 
+    /** Run a search for {@code pinyin} and return how many candidates it produced. */
+    int search(String pinyin);
+
+    /** Candidate {@code index} of the last {@link #search}; cheap enough to call lazily per page. */
+    String candidateAt(int index);
+
     String choose(int index);
 }
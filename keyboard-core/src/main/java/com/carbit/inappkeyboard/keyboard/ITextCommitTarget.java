@@ -0,0 +1,34 @@
+package com.carbit.inappkeyboard.keyboard;
+
+/**
+ * Keeps pinyin composing state + candidate list and commits to a target.
+ * This is not a system IME. It is designed for in-app use.
+ * Implementations can wrap EditText, AutoCompleteTextView, WebView, etc.
+ */
+public interface ITextCommitTarget {
+    /** Insert text at current cursor (implementation decides exact placement). */
+    void insert(String text);
+
+    /** Delete the last {@code count} character(s) before cursor. */
+    void deleteLastChar(int count);
+
+    /**
+     * Start a group of edits. Until the matching {@link #endBatchEdit()}, implementations may queue
+     * {@link #insert}/{@link #deleteLastChar} calls and apply them as one edit. Pairs may nest; the
+     * outermost end applies. The default does nothing, so every call applies immediately.
+     */
+    default void beginBatchEdit() {
+    }
+
+    /** End a group started by {@link #beginBatchEdit()}. */
+    default void endBatchEdit() {
+    }
+
+    /**
+     * Up to {@code n} characters before the cursor as they will be once queued edits apply, or
+     * {@code null} when the target cannot tell cheaply (the default).
+     */
+    default CharSequence getTextBeforeCursor(int n) {
+        return null;
+    }
+}
@@ -0,0 +1,83 @@
+package com.carbit.inappkeyboard.keyboard;
+
+/**
+ * What a key does, resolved once when a layout is built.
+ *
+ * Function keys use negative codes (ASK uses -1 for shift and -5 for delete); enter and space use
+ * their character codes. Character keys carry their committed text and its shifted form, so
+ * dispatch is a switch on {@link #code} with no string comparisons or allocations per key press.
+ */
+public final class KeyAction {
+
+    public static final int CODE_SHIFT = -1;
+    public static final int CODE_SYMBOLS = -2;
+    public static final int CODE_DELETE = -5;
+    public static final int CODE_ALPHABET = -10;
+    public static final int CODE_LANGUAGE = -11;
+    public static final int CODE_ENTER = 10;
+    public static final int CODE_SPACE = 32;
+
+    /** Key code; negative for function keys, otherwise the first code point of the key. */
+    public final int code;
+    /** Stable internal name, e.g. "a", "space", "⌫"; what {@code injectKey} accepts. */
+    public final String label;
+    /** Text committed for character keys, {@code null} for function keys. */
+    public final String text;
+    /** {@link #text} with shift applied, precomputed. */
+    public final String shiftedText;
+    /** Whether holding the key repeats it (ASK {@code isRepeatable}); such keys get no popup. */
+    public final boolean repeatable;
+    /** Characters offered on long-press, or {@code null}. */
+    public final String popupCharacters;
+
+    private KeyAction(int code, String label, String text) {
+        this(code, label, text, code == CODE_DELETE, null);
+    }
+
+    private KeyAction(int code, String label, String text, boolean repeatable, String popupCharacters) {
+        this.code = code;
+        this.label = label;
+        this.text = text;
+        this.shiftedText = text != null ? text.toUpperCase() : null;
+        this.repeatable = repeatable;
+        this.popupCharacters = popupCharacters != null && !popupCharacters.isEmpty() ? popupCharacters : null;
+    }
+
+    public boolean hasPopup() {
+        return popupCharacters != null && !repeatable;
+    }
+
+    public boolean isCharacter() {
+        return text != null;
+    }
+
+    /** Action for one of the built-in labels ("space", "enter", "⌫", "⇧", "123", "abc", "lang") or a character. */
+    public static KeyAction forLabel(String label) {
+        switch (label) {
+            case "⌫": return new KeyAction(CODE_DELETE, label, null);
+            case "enter": return new KeyAction(CODE_ENTER, label, null);
+            case "space": return new KeyAction(CODE_SPACE, label, null);
+            case "⇧": return new KeyAction(CODE_SHIFT, label, null);
+            case "123": return new KeyAction(CODE_SYMBOLS, label, null);
+            case "abc": return new KeyAction(CODE_ALPHABET, label, null);
+            case "lang": return new KeyAction(CODE_LANGUAGE, label, null);
+            default: return new KeyAction(label.codePointAt(0), label, label);
+        }
+    }
+
+    /** Action for a parsed ASK key, or {@code null} when the key has neither a code nor a label. */
+    public static KeyAction fromAskKey(AskXmlKeyboardParser.Key key) {
+        if (key.code != null) {
+            if (key.code == CODE_SHIFT) return forLabel("⇧");
+            if (key.code == CODE_DELETE) return forLabel("⌫");
+            if (key.code == CODE_ENTER) return forLabel("enter");
+            if (key.code == CODE_SPACE) return forLabel("space");
+            String label = key.label != null ? key.label : String.valueOf((char) (int) key.code);
+            return new KeyAction(key.code, label, label, key.isRepeatable, key.popupCharacters);
+        }
+        if (key.label != null && !key.label.isEmpty()) {
+            return forLabel(key.label);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,123 @@
+package com.carbit.inappkeyboard.keyboard;
+
+/**
+ * How a held key repeats: the delay before the first repeat, an interval that shrinks with every
+ * repeat, and (for delete) when repeats escalate from characters to words and then lines.
+ *
+ * Each escalated repeat is issued as one {@link ITextCommitTarget#deleteLastChar(int)} sized from
+ * {@link ITextCommitTarget#getTextBeforeCursor(int)}; targets that cannot report the text stay at
+ * character granularity.
+ */
+public final class KeyRepeatPolicy {
+
+    public enum Granularity { CHARACTER, WORD, LINE }
+
+    /** 250 ms initial delay, 50 ms shrinking to 20 ms, words after 15 repeats, lines after 30. */
+    public static final KeyRepeatPolicy DEFAULT = new Builder().build();
+
+    /** Plain fixed-rate character repeat, as before escalation existed. */
+    public static final KeyRepeatPolicy CHARACTER_ONLY = new Builder()
+            .setAcceleration(1f)
+            .setWordAfterRepeats(Integer.MAX_VALUE)
+            .setLineAfterRepeats(Integer.MAX_VALUE)
+            .build();
+
+    public final long initialDelayMs;
+    public final long repeatIntervalMs;
+    public final long minRepeatIntervalMs;
+    /** Factor applied to the interval after every repeat (1 = constant rate). */
+    public final float acceleration;
+    public final int wordAfterRepeats;
+    public final int lineAfterRepeats;
+    /** Characters before the cursor requested when sizing word/line deletes. */
+    public final int contextLength;
+
+    private KeyRepeatPolicy(Builder b) {
+        this.initialDelayMs = b.initialDelayMs;
+        this.repeatIntervalMs = b.repeatIntervalMs;
+        this.minRepeatIntervalMs = Math.min(b.minRepeatIntervalMs, b.repeatIntervalMs);
+        this.acceleration = b.acceleration;
+        this.wordAfterRepeats = b.wordAfterRepeats;
+        this.lineAfterRepeats = Math.max(b.lineAfterRepeats, b.wordAfterRepeats);
+        this.contextLength = b.contextLength;
+    }
+
+    /** Delay after repeat number {@code repeat} (0-based) before the next one. */
+    public long intervalMs(int repeat) {
+        double interval = repeatIntervalMs * Math.pow(acceleration, repeat);
+        return Math.max(minRepeatIntervalMs, (long) interval);
+    }
+
+    public Granularity granularity(int repeat) {
+        if (repeat >= lineAfterRepeats) return Granularity.LINE;
+        if (repeat >= wordAfterRepeats) return Granularity.WORD;
+        return Granularity.CHARACTER;
+    }
+
+    /**
+     * Characters one delete of {@code granularity} removes, given the text before the cursor
+     * ({@code null} when unknown, which always yields 1).
+     */
+    public static int deleteLength(Granularity granularity, CharSequence before) {
+        if (before == null || before.length() == 0 || granularity == Granularity.CHARACTER) return 1;
+        int end = before.length();
+        int i = end;
+        if (granularity == Granularity.WORD) {
+            while (i > 0 && Character.isWhitespace(before.charAt(i - 1))) i--;
+            while (i > 0 && !Character.isWhitespace(before.charAt(i - 1))) i--;
+        } else {
+            if (before.charAt(i - 1) == '\n') i--;
+            while (i > 0 && before.charAt(i - 1) != '\n') i--;
+        }
+        return Math.max(1, end - i);
+    }
+
+    public static final class Builder {
+        private long initialDelayMs = 250L;
+        private long repeatIntervalMs = 50L;
+        private long minRepeatIntervalMs = 20L;
+        private float acceleration = 0.9f;
+        private int wordAfterRepeats = 15;
+        private int lineAfterRepeats = 30;
+        private int contextLength = 256;
+
+        public Builder setInitialDelayMs(long value) {
+            initialDelayMs = value;
+            return this;
+        }
+
+        public Builder setRepeatIntervalMs(long value) {
+            repeatIntervalMs = value;
+            return this;
+        }
+
+        public Builder setMinRepeatIntervalMs(long value) {
+            minRepeatIntervalMs = value;
+            return this;
+        }
+
+        public Builder setAcceleration(float value) {
+            acceleration = value;
+            return this;
+        }
+
+        public Builder setWordAfterRepeats(int value) {
+            wordAfterRepeats = value;
+            return this;
+        }
+
+        public Builder setLineAfterRepeats(int value) {
+            lineAfterRepeats = value;
+            return this;
+        }
+
+        public Builder setContextLength(int value) {
+            contextLength = value;
+            return this;
+        }
+
+        public KeyRepeatPolicy build() {
+            return new KeyRepeatPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.carbit.inappkeyboard.keyboard;
+
+/**
+ * What the keyboard does with a key, without any view: the current layout, input mode and shift
+ * state, and the pinyin composing session for {@link Layout#ZH_PINYIN}. Keys come in as
+ * {@link KeyAction}s and leave as edits on an {@link ITextCommitTarget}.
+ *
+ * {@code InAppKeyboardView} drives one of these from touches; a plain JVM can drive it directly.
+ * Not thread-safe; use it on one thread.
+ */
+public final class KeyboardEngine {
+
+    public enum Layout { EN, ZH_PINYIN, FR, AR, SYMBOLS, NUMERIC }
+
+    public enum InputMode { AUTO, TEXT, NUMBER, PASSWORD }
+
+    /** Told about changes the engine cannot apply itself. Every method has a default. */
+    public interface Host {
+        /** The layout changed, by a key or a call; show its keys. */
+        default void onLayoutChanged(Layout layout) {
+        }
+
+        /**
+         * The composing text changed. Call {@link #refreshCandidates()} now or, to coalesce
+         * several keys, before the next frame. The default refreshes at once.
+         */
+        default void onCandidatesChanged(KeyboardEngine engine) {
+            engine.refreshCandidates();
+        }
+
+        /** A character outside pinyin composing; return true to consume it. */
+        default boolean onCommitText(Layout layout, String text) {
+            return false;
+        }
+
+        /** Delete with nothing composing; return true to consume it. */
+        default boolean onBackspace(Layout layout) {
+            return false;
+        }
+
+        /** Space with nothing composing; return true to consume it. */
+        default boolean onSpace(Layout layout) {
+            return false;
+        }
+    }
+
+    private static final Host HEADLESS = new Host() {
+    };
+
+    private final Host host;
+    private Layout layout = Layout.EN;
+    private InputMode inputMode = InputMode.AUTO;
+    private boolean shift = false;
+    private ITextCommitTarget target;
+    private ICandidateBar candidateBar;
+    private PinyinImeSession pinyinSession;
+    private KeyRepeatPolicy keyRepeatPolicy = KeyRepeatPolicy.DEFAULT;
+
+    /** An engine nobody watches: candidates are bound as soon as they change. */
+    public KeyboardEngine() {
+        this(null);
+    }
+
+    public KeyboardEngine(Host host) {
+        this.host = host != null ? host : HEADLESS;
+    }
+
+    public Layout getLayout() {
+        return layout;
+    }
+
+    /** Switch layouts; leaving {@link Layout#ZH_PINYIN} drops the composing text. */
+    public void setLayout(Layout value) {
+        if (layout == value) return;
+        layout = value;
+        shift = false;
+        if (value != Layout.ZH_PINYIN) clearComposing();
+        host.onLayoutChanged(value);
+    }
+
+    public InputMode getInputMode() {
+        return inputMode;
+    }
+
+    /** Set the mode and switch to a layout that suits it; {@link InputMode#AUTO} changes nothing. */
+    public void setInputMode(InputMode value) {
+        inputMode = value;
+        switch (value) {
+            case AUTO:
+                break;
+            case NUMBER:
+                setLayout(Layout.NUMERIC);
+                break;
+            case PASSWORD:
+                setLayout(Layout.EN);
+                if (candidateBar != null) candidateBar.clear();
+                break;
+            case TEXT:
+                if (layout == Layout.NUMERIC || layout == Layout.SYMBOLS) setLayout(Layout.EN);
+                break;
+        }
+    }
+
+    public boolean isShifted() {
+        return shift;
+    }
+
+    public ITextCommitTarget getTarget() {
+        return target;
+    }
+
+    /** Where edits go; keys are ignored while there is none. */
+    public void setTarget(ITextCommitTarget target) {
+        this.target = target;
+    }
+
+    public ICandidateBar getCandidateBar() {
+        return candidateBar;
+    }
+
+    public void setCandidateBar(ICandidateBar candidateBar) {
+        this.candidateBar = candidateBar;
+    }
+
+    public PinyinImeSession getPinyinSession() {
+        return pinyinSession;
+    }
+
+    /**
+     * Compose pinyin in {@link Layout#ZH_PINYIN} with {@code session}, showing candidates on the
+     * candidate bar; {@code null}, or no bar, types the letters as they are.
+     */
+    public void setPinyinSession(PinyinImeSession session) {
+        this.pinyinSession = session;
+    }
+
+    public KeyRepeatPolicy getKeyRepeatPolicy() {
+        return keyRepeatPolicy;
+    }
+
+    /** Sizes word and line deletes of a held delete key, see {@link #dispatchRepeat}. */
+    public void setKeyRepeatPolicy(KeyRepeatPolicy policy) {
+        this.keyRepeatPolicy = policy != null ? policy : KeyRepeatPolicy.DEFAULT;
+    }
+
+    /** Handle one key press. */
+    public void dispatch(KeyAction action) {
+        if (target == null) return;
+        switch (action.code) {
+            case KeyAction.CODE_DELETE:
+                if (!backspace()) target.deleteLastChar(1);
+                break;
+            case KeyAction.CODE_ENTER:
+                target.insert("\n");
+                break;
+            case KeyAction.CODE_SPACE: {
+                boolean consumed;
+                if (composing()) {
+                    consumed = pinyinSession.onSpaceCommitBest(target, candidateBar);
+                    if (consumed) host.onCandidatesChanged(this);
+                } else {
+                    consumed = host.onSpace(layout);
+                }
+                if (!consumed) target.insert(" ");
+                break;
+            }
+            case KeyAction.CODE_SHIFT:
+                shift = !shift;
+                break;
+            case KeyAction.CODE_SYMBOLS:
+                setLayout(Layout.SYMBOLS);
+                break;
+            case KeyAction.CODE_ALPHABET:
+                setLayout(inputMode == InputMode.NUMBER ? Layout.NUMERIC : Layout.EN);
+                break;
+            case KeyAction.CODE_LANGUAGE:
+                setLayout(nextLanguageLayout());
+                break;
+            default: {
+                if (!action.isCharacter()) return;
+                String ch = shift ? action.shiftedText : action.text;
+                if (pinyinInput()) {
+                    pinyinSession.onCommitChar(ch);
+                    host.onCandidatesChanged(this);
+                } else if (!host.onCommitText(layout, ch)) {
+                    target.insert(ch);
+                }
+                if (shift) shift = false;
+                break;
+            }
+        }
+    }
+
+    /** A held key repeated; deletes past the policy's thresholds remove a word or line at once. */
+    public void dispatchRepeat(KeyAction action, KeyRepeatPolicy.Granularity granularity) {
+        if (action.code != KeyAction.CODE_DELETE || granularity == KeyRepeatPolicy.Granularity.CHARACTER) {
+            dispatch(action);
+            return;
+        }
+        if (target == null) return;
+        // Composing pinyin is still erased letter by letter.
+        if (backspace()) return;
+        CharSequence before = target.getTextBeforeCursor(keyRepeatPolicy.contextLength);
+        target.deleteLastChar(KeyRepeatPolicy.deleteLength(granularity, before));
+    }
+
+    /** Commit entry {@code index} of the candidate bar (0 is the raw pinyin), as a click on it does. */
+    public void commitCandidate(int index) {
+        if (pinyinSession == null || target == null || candidateBar == null) return;
+        pinyinSession.commitCandidate(index, target, candidateBar);
+    }
+
+    /** Bind the candidates of the composing text to the bar, or clear it when nothing is composing. */
+    public void refreshCandidates() {
+        if (pinyinSession == null || target == null || candidateBar == null) return;
+        if (!pinyinSession.hasComposing()) {
+            candidateBar.clear();
+            return;
+        }
+        pinyinSession.bindCandidateClicks(target, candidateBar);
+    }
+
+    /** Drop the composing text, if any, and its candidates. */
+    public void clearComposing() {
+        if (pinyinSession == null) return;
+        pinyinSession.clear();
+        if (candidateBar != null) candidateBar.clear();
+    }
+
+    /** Letters go to the pinyin session. */
+    private boolean pinyinInput() {
+        return layout == Layout.ZH_PINYIN && pinyinSession != null && candidateBar != null;
+    }
+
+    /** Space and delete act on the composing text; otherwise the host sees them. */
+    private boolean composing() {
+        return pinyinInput() && pinyinSession.hasComposing();
+    }
+
+    private boolean backspace() {
+        if (!composing()) return host.onBackspace(layout);
+        boolean consumed = pinyinSession.onBackspace();
+        if (consumed) host.onCandidatesChanged(this);
+        return consumed;
+    }
+
+    private Layout nextLanguageLayout() {
+        if (inputMode == InputMode.NUMBER) return Layout.NUMERIC;
+        if (inputMode == InputMode.PASSWORD) return Layout.EN;
+        switch (layout) {
+            case EN: return Layout.ZH_PINYIN;
+            case ZH_PINYIN: return Layout.FR;
+            case FR: return Layout.AR;
+            case AR:
+            case SYMBOLS:
+            case NUMERIC:
+            default: return Layout.EN;
+        }
+    }
+}
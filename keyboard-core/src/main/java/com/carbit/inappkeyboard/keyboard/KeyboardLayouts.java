@@ -0,0 +1,91 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Key rows of each {@link KeyboardEngine.Layout}: the alphabetic layouts come from ASK XML files
+ * (see {@link AskXmlKeyboardParser}) plus a function row, symbols and numbers are built in.
+ */
+public final class KeyboardLayouts {
+
+    /** Opens a layout file by relative path, e.g. {@code ask_layouts/en_qwerty.xml} from Android assets. */
+    public interface Source {
+        InputStream open(String path) throws IOException;
+    }
+
+    private KeyboardLayouts() {
+    }
+
+    /** ASK XML file of {@code layout}, or {@code null} for the built-in ones. */
+    public static String askPath(KeyboardEngine.Layout layout) {
+        switch (layout) {
+            case EN:
+            case ZH_PINYIN: return "ask_layouts/en_qwerty.xml";
+            case FR: return "ask_layouts/fr_azerty.xml";
+            case AR: return "ask_layouts/ar_qwerty.xml";
+            default: return null;
+        }
+    }
+
+    /** Build the rows of {@code layout}, reading its XML from {@code source} when it has one. */
+    public static List<List<KeyAction>> load(KeyboardEngine.Layout layout, Source source) {
+        List<List<KeyAction>> rows = new ArrayList<>();
+        switch (layout) {
+            case SYMBOLS:
+                rows.add(actions("1", "2", "3", "4", "5", "6", "7", "8", "9", "0"));
+                rows.add(actions("@", "#", "$", "%", "&", "*", "-", "+", "(", ")"));
+                rows.add(actions("abc", "_", "\"", "'", ":", ";", "!", "?", "⌫"));
+                rows.add(actions("lang", "space", "enter"));
+                break;
+            case NUMERIC:
+                rows.add(actions("1", "2", "3"));
+                rows.add(actions("4", "5", "6"));
+                rows.add(actions("7", "8", "9"));
+                rows.add(actions("123", "0", "⌫"));
+                rows.add(actions("lang", "enter"));
+                break;
+            default:
+                loadAsk(askPath(layout), source, rows);
+                break;
+        }
+        return rows;
+    }
+
+    private static void loadAsk(String path, Source source, List<List<KeyAction>> rows) {
+        AskXmlKeyboardParser.Layout layout;
+        try (InputStream input = source.open(path)) {
+            layout = AskXmlKeyboardParser.parse(input);
+        } catch (IOException | XmlPullParserException e) {
+            throw new RuntimeException("Failed to parse keyboard layout: " + path, e);
+        }
+
+        for (List<AskXmlKeyboardParser.Key> row : layout.rows) {
+            List<KeyAction> keys = new ArrayList<>(row.size());
+            for (AskXmlKeyboardParser.Key key : row) {
+                KeyAction action = KeyAction.fromAskKey(key);
+                if (action != null) keys.add(action);
+            }
+            if (!keys.isEmpty()) rows.add(keys);
+        }
+
+        if (rows.isEmpty()) {
+            // Fallback: minimal qwerty when ASK parsing yields no keys.
+            rows.add(actions("q","w","e","r","t","y","u","i","o","p"));
+            rows.add(actions("a","s","d","f","g","h","j","k","l"));
+            rows.add(actions("⇧","z","x","c","v","b","n","m","⌫"));
+        }
+
+        rows.add(actions("lang", "123", "space", "enter"));
+    }
+
+    private static List<KeyAction> actions(String... labels) {
+        List<KeyAction> l = new ArrayList<>(labels.length);
+        for (String s : labels) l.add(KeyAction.forLabel(s));
+        return l;
+    }
+}
@@ -0,0 +1,77 @@
+package com.carbit.inappkeyboard.keyboard;
+
+/**
+ * Opt-in per-key latency metrics, installed with {@code InAppKeyboardView.setMetrics}. Each
+ * {@link Stage} has a {@link LatencyHistogram} allocated up front, so recording never allocates.
+ *
+ * Everything is recorded on the UI thread; read there too, e.g. from the
+ * {@link OnReportListener}, and {@link #copyTo copy} before handing the numbers to another thread.
+ */
+public final class KeyboardMetrics {
+
+    public enum Stage {
+        /** One key handled by the keyboard, from its event to the end of its dispatch. */
+        DISPATCH,
+        /** A decoder search or lookup for the composing pinyin. */
+        DECODE,
+        /** One candidate read from the decoder (a JNI call). */
+        CANDIDATE_FETCH,
+        /** One draw of the candidate bar, including any fetches it triggers. */
+        CANDIDATE_RENDER,
+        /** Applying a batch of edits to the commit target (targets that batch edits only). */
+        COMMIT
+    }
+
+    /** Called on the UI thread once every {@code everyKeys} dispatched keys. */
+    public interface OnReportListener {
+        void onReport(KeyboardMetrics metrics);
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STAGES.length];
+    private OnReportListener reportListener;
+    private int reportEveryKeys;
+    private long nextReportAt;
+
+    public KeyboardMetrics() {
+        for (int i = 0; i < histograms.length; i++) histograms[i] = new LatencyHistogram();
+    }
+
+    public LatencyHistogram histogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    /** Keys dispatched since the last {@link #reset}. */
+    public long keyCount() {
+        return histogram(Stage.DISPATCH).count();
+    }
+
+    /** Report every {@code everyKeys} keys to {@code listener}, e.g. to snapshot and reset. */
+    public void setOnReportListener(int everyKeys, OnReportListener listener) {
+        this.reportListener = everyKeys > 0 ? listener : null;
+        this.reportEveryKeys = everyKeys;
+        this.nextReportAt = keyCount() + everyKeys;
+    }
+
+    public void reset() {
+        for (LatencyHistogram h : histograms) h.reset();
+        nextReportAt = reportEveryKeys;
+    }
+
+    /** Overwrite {@code into} with these metrics; neither allocates. */
+    public void copyTo(KeyboardMetrics into) {
+        for (int i = 0; i < histograms.length; i++) histograms[i].copyTo(into.histograms[i]);
+    }
+
+    void record(Stage stage, long nanos) {
+        histograms[stage.ordinal()].record(nanos);
+    }
+
+    /** Called once the keys of an event have been dispatched and committed. */
+    void reportIfDue() {
+        if (reportListener == null || keyCount() < nextReportAt) return;
+        nextReportAt = keyCount() + reportEveryKeys;
+        reportListener.onReport(this);
+    }
+}
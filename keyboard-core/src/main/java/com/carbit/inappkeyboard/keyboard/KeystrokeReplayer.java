@@ -0,0 +1,133 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays a {@link KeystrokeTrace} back into a keyboard, so a trace captured in the field becomes a
+ * repeatable benchmark. Events run synchronously on the calling thread, either as fast as possible
+ * or spaced as recorded, and the {@link Result} compares how long each took with the recording.
+ *
+ * Replay into an attached {@code InAppKeyboardView} on its thread with its {@code replayTarget()},
+ * or without Android into a {@link KeyboardEngine} with {@link #engineTarget}.
+ */
+public final class KeystrokeReplayer {
+
+    private static final KeyRepeatPolicy.Granularity[] GRANULARITIES = KeyRepeatPolicy.Granularity.values();
+
+    /** Where replayed events go. Labels are those of {@link KeyAction#label}; enums are ordinals. */
+    public interface Target {
+        /** Called first with the recorded input mode and layout. */
+        void start(int inputMode, int layout);
+
+        void key(String label);
+
+        void keyRepeat(String label, int granularity);
+
+        void layout(int layout);
+
+        void candidate(int index);
+    }
+
+    /** Timings of one replay, in nanoseconds. */
+    public static final class Result {
+        /** Time each event took when recorded (at microsecond precision). */
+        public final LatencyHistogram recorded = new LatencyHistogram();
+        /** Time each event took in this replay. */
+        public final LatencyHistogram replayed = new LatencyHistogram();
+        /** At original speed, how late each event started compared with the recording. */
+        public final LatencyHistogram lateness = new LatencyHistogram();
+        public long events;
+        /** Sum of replayed minus recorded event times; positive means this run was slower. */
+        public long deltaNanos;
+        public long elapsedNanos;
+    }
+
+    private KeystrokeReplayer() {
+    }
+
+    /**
+     * Replay {@code trace} into {@code target}. With {@code originalSpeed} events start at their
+     * recorded offsets (later if the previous one overran); otherwise back to back.
+     */
+    public static Result replay(byte[] trace, Target target, boolean originalSpeed) {
+        KeystrokeTrace.Reader reader = new KeystrokeTrace.Reader(trace);
+        Result result = new Result();
+        target.start(reader.inputMode, reader.layout);
+        long begin = System.nanoTime();
+        long due = begin;
+        while (reader.next()) {
+            long start;
+            if (originalSpeed) {
+                due += reader.gapMicros() * 1000;
+                long wait = due - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+                start = System.nanoTime();
+                result.lateness.record(start - due);
+            } else {
+                start = System.nanoTime();
+            }
+            dispatch(reader, target);
+            long took = System.nanoTime() - start;
+            long recorded = reader.costMicros() * 1000;
+            result.replayed.record(took);
+            result.recorded.record(recorded);
+            result.deltaNanos += took - recorded;
+            result.events++;
+        }
+        result.elapsedNanos = System.nanoTime() - begin;
+        return result;
+    }
+
+    private static void dispatch(KeystrokeTrace.Reader reader, Target target) {
+        switch (reader.type()) {
+            case KeystrokeTrace.KEY:
+            case KeystrokeTrace.KEY_REDACTED:
+                target.key(reader.label().toString());
+                break;
+            case KeystrokeTrace.KEY_REPEAT:
+                target.keyRepeat(reader.label().toString(), reader.value());
+                break;
+            case KeystrokeTrace.LAYOUT:
+                target.layout(reader.value());
+                break;
+            case KeystrokeTrace.CANDIDATE:
+                target.candidate(reader.value());
+                break;
+        }
+    }
+
+    /**
+     * Replays into {@code engine}, with no view or Android framework. Keys are resolved by label
+     * alone, so they behave as on the keyboard except for custom codes of ASK layout keys.
+     */
+    public static Target engineTarget(final KeyboardEngine engine) {
+        return new Target() {
+            @Override
+            public void start(int inputMode, int layout) {
+                engine.clearComposing();
+                engine.setInputMode(KeyboardEngine.InputMode.values()[inputMode]);
+                engine.setLayout(KeyboardEngine.Layout.values()[layout]);
+            }
+
+            @Override
+            public void key(String label) {
+                engine.dispatch(KeyAction.forLabel(label));
+            }
+
+            @Override
+            public void keyRepeat(String label, int granularity) {
+                engine.dispatchRepeat(KeyAction.forLabel(label), GRANULARITIES[granularity]);
+            }
+
+            @Override
+            public void layout(int layout) {
+                engine.setLayout(KeyboardEngine.Layout.values()[layout]);
+            }
+
+            @Override
+            public void candidate(int index) {
+                engine.commitCandidate(index);
+            }
+        };
+    }
+}
@@ -0,0 +1,272 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Compact binary trace of what a user did on the keyboard: keys, held-key repeats, layout switches
+ * and candidate picks, each with the time since the previous event and how long the keyboard took
+ * to handle it. Record with a {@link Recorder} installed by {@code InAppKeyboardView.setTraceRecorder},
+ * play back with {@link KeystrokeReplayer}.
+ *
+ * Layout: the magic {@code "IAKT"}, a version byte, then the input mode and layout ordinals at the
+ * start of the recording. Each event is a type byte, the gap and cost in microseconds as varints,
+ * then its payload: a label (varint length, then varint UTF-16 units), a repeat granularity byte
+ * plus label, a layout ordinal byte, or a varint candidate index. In password mode every key but the
+ * layout keys ({@code 123}, {@code abc}, {@code lang}) is written as {@link #KEY_REDACTED} with no
+ * label, so a trace holds neither the typed text nor where spaces, line breaks or deletes fell.
+ */
+public final class KeystrokeTrace {
+
+    public static final int KEY = 1;
+    /** A key in password mode other than a layout key; replayed as {@link #REDACTED_LABEL}. */
+    public static final int KEY_REDACTED = 2;
+    /** A held key repeating at word or line granularity; character repeats are plain keys. */
+    public static final int KEY_REPEAT = 3;
+    /** A layout switch not caused by a key, e.g. {@code setLayout} from the app. */
+    public static final int LAYOUT = 4;
+    public static final int CANDIDATE = 5;
+
+    public static final String REDACTED_LABEL = "a";
+
+    private static final byte[] MAGIC = {'I', 'A', 'K', 'T'};
+    private static final int VERSION = 1;
+
+    private KeystrokeTrace() {
+    }
+
+    /**
+     * Appends events to a growable buffer. Recording a key only copies its label into the buffer,
+     * so it does not allocate once the buffer is large enough. Use on the keyboard's thread.
+     */
+    public static final class Recorder {
+        private byte[] buf;
+        private int size;
+        private long lastNanos;
+        private boolean started;
+
+        public Recorder() {
+            this(4096);
+        }
+
+        public Recorder(int initialCapacity) {
+            buf = new byte[Math.max(16, initialCapacity)];
+        }
+
+        /** Bytes recorded so far, header included. */
+        public int size() {
+            return size;
+        }
+
+        public boolean isStarted() {
+            return started;
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buf, size);
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(buf, 0, size);
+        }
+
+        /** Drop everything; the keyboard starts a new trace with its next key or layout switch. */
+        public void clear() {
+            size = 0;
+            started = false;
+        }
+
+        /** Write the header unless a trace is already under way. */
+        void start(int inputMode, int layout, long nowNanos) {
+            if (started) return;
+            ensure(MAGIC.length + 3);
+            System.arraycopy(MAGIC, 0, buf, 0, MAGIC.length);
+            size = MAGIC.length;
+            buf[size++] = (byte) VERSION;
+            buf[size++] = (byte) inputMode;
+            buf[size++] = (byte) layout;
+            lastNanos = nowNanos;
+            started = true;
+        }
+
+        /**
+         * Record {@code action}, or only that a key was pressed when {@code redact} (password mode)
+         * and it is not a layout key. A held key repeating is recorded the same way.
+         */
+        void key(KeyAction action, KeyRepeatPolicy.Granularity repeat, boolean redact,
+                 long startNanos, long costNanos) {
+            if (redact && !isLayoutKey(action)) {
+                keyRedacted(startNanos, costNanos);
+            } else if (repeat != null) {
+                keyRepeat(action.label, repeat.ordinal(), startNanos, costNanos);
+            } else {
+                key(action.label, startNanos, costNanos);
+            }
+        }
+
+        private static boolean isLayoutKey(KeyAction action) {
+            return action.code == KeyAction.CODE_SYMBOLS || action.code == KeyAction.CODE_ALPHABET
+                    || action.code == KeyAction.CODE_LANGUAGE;
+        }
+
+        void key(String label, long startNanos, long costNanos) {
+            if (!event(KEY, startNanos, costNanos)) return;
+            writeLabel(label);
+        }
+
+        void keyRedacted(long startNanos, long costNanos) {
+            event(KEY_REDACTED, startNanos, costNanos);
+        }
+
+        void keyRepeat(String label, int granularity, long startNanos, long costNanos) {
+            if (!event(KEY_REPEAT, startNanos, costNanos)) return;
+            ensure(1);
+            buf[size++] = (byte) granularity;
+            writeLabel(label);
+        }
+
+        void layout(int layout, long startNanos, long costNanos) {
+            if (!event(LAYOUT, startNanos, costNanos)) return;
+            ensure(1);
+            buf[size++] = (byte) layout;
+        }
+
+        void candidate(int index, long startNanos, long costNanos) {
+            if (!event(CANDIDATE, startNanos, costNanos)) return;
+            writeVarint(index);
+        }
+
+        private boolean event(int type, long startNanos, long costNanos) {
+            if (!started) return false;
+            ensure(1);
+            buf[size++] = (byte) type;
+            writeVarint(Math.max(0, (startNanos - lastNanos) / 1000));
+            writeVarint(Math.max(0, costNanos / 1000));
+            lastNanos = startNanos;
+            return true;
+        }
+
+        private void writeLabel(String label) {
+            int n = label.length();
+            writeVarint(n);
+            for (int i = 0; i < n; i++) writeVarint(label.charAt(i));
+        }
+
+        private void writeVarint(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[size++] = (byte) v;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+        }
+    }
+
+    /** Reads a trace event by event; the accessors describe the event of the last {@link #next()}. */
+    public static final class Reader {
+        private final byte[] buf;
+        private int pos;
+        private final StringBuilder label = new StringBuilder();
+
+        public final int inputMode;
+        public final int layout;
+
+        private int type;
+        private long gapMicros;
+        private long costMicros;
+        private int value;
+
+        public Reader(byte[] trace) {
+            if (trace.length < MAGIC.length + 3) throw new IllegalArgumentException("Not a keystroke trace");
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (trace[i] != MAGIC[i]) throw new IllegalArgumentException("Not a keystroke trace");
+            }
+            if (trace[MAGIC.length] != VERSION) {
+                throw new IllegalArgumentException("Unsupported trace version " + trace[MAGIC.length]);
+            }
+            this.buf = trace;
+            this.inputMode = trace[MAGIC.length + 1];
+            this.layout = trace[MAGIC.length + 2];
+            this.pos = MAGIC.length + 3;
+        }
+
+        public boolean next() {
+            if (pos >= buf.length) return false;
+            type = buf[pos++];
+            gapMicros = readVarint();
+            costMicros = readVarint();
+            label.setLength(0);
+            value = 0;
+            switch (type) {
+                case KEY:
+                    readLabel();
+                    break;
+                case KEY_REDACTED:
+                    label.append(REDACTED_LABEL);
+                    break;
+                case KEY_REPEAT:
+                    value = readByte();
+                    readLabel();
+                    break;
+                case LAYOUT:
+                    value = readByte();
+                    break;
+                case CANDIDATE:
+                    value = (int) readVarint();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown event type " + type + " at " + (pos - 1));
+            }
+            return true;
+        }
+
+        public int type() {
+            return type;
+        }
+
+        /** Time since the previous event started. */
+        public long gapMicros() {
+            return gapMicros;
+        }
+
+        /** How long the recording keyboard took to handle the event. */
+        public long costMicros() {
+            return costMicros;
+        }
+
+        /** Granularity ordinal of a {@link #KEY_REPEAT}, layout ordinal of a {@link #LAYOUT}, index of a {@link #CANDIDATE}. */
+        public int value() {
+            return value;
+        }
+
+        /** Label of a key event, or empty; valid until the next {@link #next()}. */
+        public CharSequence label() {
+            return label;
+        }
+
+        private void readLabel() {
+            int n = (int) readVarint();
+            for (int i = 0; i < n; i++) label.append((char) readVarint());
+        }
+
+        private int readByte() {
+            if (pos >= buf.length) throw new IllegalArgumentException("Truncated trace");
+            return buf[pos++];
+        }
+
+        private long readVarint() {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return v;
+            }
+            throw new IllegalArgumentException("Malformed varint at " + pos);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-memory latency histogram over nanoseconds with log-linear buckets: 32 sub-buckets per
+ * power of two, so any reported value is within ~3% of what was recorded. Values from 0 to about
+ * 18 minutes fit; larger ones are clamped.
+ *
+ * {@link #record} does not allocate. Not thread-safe; record and read on one thread, or read a
+ * {@link #copyTo copy}.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_MSB = 39;
+    private static final long MAX_VALUE = (1L << (MAX_MSB + 1)) - 1;
+    private static final int BUCKETS = (MAX_MSB - SUB_BITS + 2) * SUB_COUNT;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    public void record(long nanos) {
+        long v = nanos < 0 ? 0 : Math.min(nanos, MAX_VALUE);
+        counts[bucketOf(v)]++;
+        count++;
+        sum += v;
+        if (v < min) min = v;
+        if (v > max) max = v;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long min() {
+        return count == 0 ? 0 : min;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public double mean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Smallest recorded value, at bucket precision, that at least {@code percentile}% of all
+     * values are less than or equal to; 0 when empty.
+     */
+    public long valueAtPercentile(double percentile) {
+        if (count == 0) return 0;
+        long rank = (long) Math.ceil(Math.max(0, Math.min(100, percentile)) / 100.0 * count);
+        if (rank < 1) rank = 1;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.max(min, Math.min(max, highestIn(i)));
+        }
+        return max;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    /** Overwrite {@code into} with this histogram's contents; neither allocates. */
+    public void copyTo(LatencyHistogram into) {
+        System.arraycopy(counts, 0, into.counts, 0, BUCKETS);
+        into.count = count;
+        into.sum = sum;
+        into.min = min;
+        into.max = max;
+    }
+
+    /** Add another histogram's values to this one. */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) counts[i] += other.counts[i];
+        count += other.count;
+        sum += other.sum;
+        if (other.min < min) min = other.min;
+        if (other.max > max) max = other.max;
+    }
+
+    static int bucketOf(long v) {
+        if (v < SUB_COUNT) return (int) v;
+        int msb = 63 - Long.numberOfLeadingZeros(v);
+        int shift = msb - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) ((v >>> shift) - SUB_COUNT);
+    }
+
+    static long highestIn(int bucket) {
+        int group = bucket / SUB_COUNT;
+        long sub = bucket % SUB_COUNT;
+        if (group == 0) return sub;
+        int shift = group - 1;
+        return ((SUB_COUNT + sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,75 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import java.util.AbstractList;
+
+/**
+ * Read-only candidate list that loads entries page by page on first access.
+ *
+ * The decoder can report hundreds of candidates for a short buffer, but a candidate bar only ever
+ * shows a handful of them. Pages are fetched from the {@link Loader} when an index is first read and
+ * kept for the lifetime of the list.
+ */
+public final class PagedCandidateList extends AbstractList<String> {
+
+    public static final int DEFAULT_PAGE_SIZE = 16;
+
+    public interface Loader {
+        String load(int index);
+    }
+
+    private final int size;
+    private final int pageSize;
+    private final Loader loader;
+    private final String[][] pages;
+
+    public PagedCandidateList(int size, Loader loader) {
+        this(size, DEFAULT_PAGE_SIZE, loader);
+    }
+
+    public PagedCandidateList(int size, int pageSize, Loader loader) {
+        if (pageSize <= 0) throw new IllegalArgumentException("pageSize must be > 0");
+        this.size = Math.max(0, size);
+        this.pageSize = pageSize;
+        this.loader = loader;
+        this.pages = new String[(this.size + pageSize - 1) / pageSize][];
+    }
+
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index=" + index + " size=" + size);
+        }
+        int pageIndex = index / pageSize;
+        String[] page = pages[pageIndex];
+        if (page == null) {
+            page = loadPage(pageIndex);
+            pages[pageIndex] = page;
+        }
+        return page[index - pageIndex * pageSize];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public int pageSize() {
+        return pageSize;
+    }
+
+    /** Whether {@code index} can be read without calling into the loader. */
+    public boolean isLoaded(int index) {
+        return index >= 0 && index < size && pages[index / pageSize] != null;
+    }
+
+    private String[] loadPage(int pageIndex) {
+        int start = pageIndex * pageSize;
+        int count = Math.min(pageSize, size - start);
+        String[] page = new String[count];
+        for (int i = 0; i < count; i++) {
+            String s = loader.load(start + i);
+            page[i] = s != null ? s : "";
+        }
+        return page;
+    }
+}
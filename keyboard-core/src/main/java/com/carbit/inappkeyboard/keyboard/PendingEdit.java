@@ -0,0 +1,60 @@
+package com.carbit.inappkeyboard.keyboard;
+
+/**
+ * Net effect of a queue of caret edits: delete {@link #deleteCount()} characters before the
+ * caret (and any selection), then insert {@link #text()}.
+ *
+ * Inserts append to the pending text and deletes eat pending text first, so typing and erasing in
+ * one batch never touches the document until {@link ITextCommitTarget#endBatchEdit()}.
+ */
+public final class PendingEdit {
+
+    private final StringBuilder text = new StringBuilder();
+    private int deleteCount = 0;
+    private boolean touched = false;
+
+    public void insert(CharSequence s) {
+        if (s == null || s.length() == 0) return;
+        text.append(s);
+        touched = true;
+    }
+
+    public void deleteBefore(int count) {
+        if (count <= 0) return;
+        int fromPending = Math.min(count, text.length());
+        text.setLength(text.length() - fromPending);
+        deleteCount += count - fromPending;
+        touched = true;
+    }
+
+    /** True when no edit was queued (an insert fully erased again still counts as an edit). */
+    public boolean isEmpty() {
+        return !touched;
+    }
+
+    public int deleteCount() {
+        return deleteCount;
+    }
+
+    public CharSequence text() {
+        return text;
+    }
+
+    /**
+     * Up to {@code n} characters before the caret after this edit, given {@code before}: the text
+     * that currently precedes the caret (or selection).
+     */
+    public CharSequence applyTo(CharSequence before, int n) {
+        int keep = Math.max(0, before.length() - deleteCount);
+        if (text.length() >= n) return text.substring(text.length() - n);
+        StringBuilder sb = new StringBuilder(Math.min(n, keep + text.length()));
+        sb.append(before, Math.max(0, keep - (n - text.length())), keep).append(text);
+        return sb;
+    }
+
+    public void clear() {
+        text.setLength(0);
+        deleteCount = 0;
+        touched = false;
+    }
+}
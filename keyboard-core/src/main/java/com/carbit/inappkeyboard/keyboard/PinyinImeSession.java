@@ -0,0 +1,153 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import java.util.List;
+
+/**
+ * Keeps pinyin composing state + candidate list and commits to a target.
+ * This is not a system IME. It is designed for in-app use.
+ */
+public class PinyinImeSession {
+
+    private final IPinyinDecoder decoder;
+    private final StringBuilder composing = new StringBuilder();
+    private int searchGeneration = 0;
+    private KeyboardMetrics metrics;
+    private KeystrokeTrace.Recorder traceRecorder;
+
+    public PinyinImeSession(IPinyinDecoder decoder) {
+        this.decoder = decoder;
+    }
+
+    /** Record decoder time into {@code metrics}; {@code null} turns recording off. */
+    public void setMetrics(KeyboardMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /** Record candidate picks into {@code recorder}; {@code null} turns recording off. */
+    public void setTraceRecorder(KeystrokeTrace.Recorder recorder) {
+        this.traceRecorder = recorder;
+    }
+
+    public void clear() {
+        composing.setLength(0);
+        searchGeneration++;
+        decoder.reset();
+    }
+
+    public boolean hasComposing() {
+        return composing.length() > 0;
+    }
+
+    public String composingText() {
+        return composing.toString();
+    }
+
+    public void onCommitChar(String ch, ICandidateBar candidateBar) {
+        composing.append(ch);
+        refresh(candidateBar);
+    }
+
+    public boolean onBackspace(ICandidateBar candidateBar) {
+        if (!onBackspace()) return false;
+        refresh(candidateBar);
+        return true;
+    }
+
+    /**
+     * Append to the composing buffer without touching any candidate UI. Callers that coalesce UI
+     * updates (one per frame) call {@link #bindCandidateClicks} later.
+     */
+    public void onCommitChar(String ch) {
+        composing.append(ch);
+    }
+
+    /** Like {@link #onBackspace(ICandidateBar)} but leaves the candidate UI to the caller. */
+    public boolean onBackspace() {
+        if (composing.length() == 0) return false;
+        composing.setLength(composing.length() - 1);
+        return true;
+    }
+
+    public boolean onSpaceCommitBest(ITextCommitTarget target, ICandidateBar candidateBar) {
+        if (composing.length() == 0) return false;
+        long t0 = metrics != null ? System.nanoTime() : 0;
+        List<String> list = decoder.candidates(composing.toString(), 1);
+        if (metrics != null) metrics.record(KeyboardMetrics.Stage.DECODE, System.nanoTime() - t0);
+        String commit = list.isEmpty() ? composing.toString() : list.get(0);
+        target.insert(commit);
+        clear();
+        candidateBar.clear();
+        return true;
+    }
+
+    public void bindCandidateClicks(final ITextCommitTarget target, ICandidateBar candidateBar) {
+        final String raw = composing.toString();
+        final List<String> list = candidateList(raw);
+        candidateBar.setCandidates(list, new ICandidateBar.OnCandidateClickListener() {
+            @Override
+            public void onClick(int index, String text) {
+                // The composing text moved on since this list was bound (update still pending).
+                if (!raw.contentEquals(composing)) return;
+                commitCandidate(index, target, candidateBar);
+            }
+        });
+    }
+
+    /**
+     * Commit entry {@code index} of the bound candidate list, as a click on it does: 0 is the raw
+     * pinyin letters, others map to decoder candidates.
+     */
+    public void commitCandidate(int index, ITextCommitTarget target, ICandidateBar candidateBar) {
+        if (composing.length() == 0) return;
+        long start = traceRecorder != null ? System.nanoTime() : 0;
+        String commit;
+        if (index == 0) {
+            commit = composing.toString();
+        } else {
+            long t0 = metrics != null ? System.nanoTime() : 0;
+            commit = decoder.choose(index - 1);
+            if (metrics != null) metrics.record(KeyboardMetrics.Stage.DECODE, System.nanoTime() - t0);
+        }
+        target.insert(commit);
+        clear();
+        candidateBar.clear();
+        if (traceRecorder != null) traceRecorder.candidate(index, start, System.nanoTime() - start);
+    }
+
+    private void refresh(ICandidateBar candidateBar) {
+        if (composing.length() == 0) {
+            candidateBar.clear();
+            return;
+        }
+        final String raw = composing.toString();
+        candidateBar.setCandidates(candidateList(raw), new ICandidateBar.OnCandidateClickListener() {
+            @Override
+            public void onClick(int index, String text) {
+                // no-op for refresh (host wires commits via bindCandidateClicks)
+            }
+        });
+    }
+
+    /**
+     * Raw pinyin at index 0 followed by every decoder candidate, fetched page by page as the bar
+     * scrolls. Pages that were not read before the next search resolve to empty strings.
+     */
+    private List<String> candidateList(final String raw) {
+        final int generation = ++searchGeneration;
+        long t0 = metrics != null ? System.nanoTime() : 0;
+        int total = decoder.search(raw);
+        if (metrics != null) metrics.record(KeyboardMetrics.Stage.DECODE, System.nanoTime() - t0);
+        return new PagedCandidateList(1 + total, new PagedCandidateList.Loader() {
+            @Override
+            public String load(int index) {
+                if (index == 0) return raw;
+                if (generation != searchGeneration) return "";
+                if (metrics == null) return decoder.candidateAt(index - 1);
+                long start = System.nanoTime();
+                String candidate = decoder.candidateAt(index - 1);
+                metrics.record(KeyboardMetrics.Stage.CANDIDATE_FETCH, System.nanoTime() - start);
+                return candidate;
+            }
+        });
+    }
+}
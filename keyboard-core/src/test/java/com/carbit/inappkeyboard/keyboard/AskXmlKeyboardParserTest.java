@@ -0,0 +1,18 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class AskXmlKeyboardParserTest {
+
+    @Test
+    public void unescape_resolves_resource_escapes_in_popup_characters() {
+        assertEquals("5țťţτ", AskXmlKeyboardParser.unescape("5țť\\u0163τ"));
+        assertEquals("\\|ĵ", AskXmlKeyboardParser.unescape("\\\\|ĵ"));
+        assertEquals("^&", AskXmlKeyboardParser.unescape("^\\u0026"));
+        assertEquals("àáâ", AskXmlKeyboardParser.unescape("àáâ"));
+        assertNull(AskXmlKeyboardParser.unescape(null));
+    }
+}
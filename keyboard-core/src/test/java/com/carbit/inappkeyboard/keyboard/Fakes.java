@@ -0,0 +1,105 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/** Stand-ins for the decoder, candidate bar and text target, shared by the engine tests. */
+final class Fakes {
+
+    /** Candidates shown by the candidate bar at once; the bar reads this many when bound. */
+    static final int VISIBLE = 8;
+
+    private Fakes() {
+    }
+
+    /** The same candidates for every pinyin; allocates nothing once built. */
+    static final class Decoder implements IPinyinDecoder {
+        final List<String> candidates;
+        int resetCalls = 0;
+        String lastPinyin = null;
+
+        Decoder(String... candidates) {
+            this.candidates = Collections.unmodifiableList(Arrays.asList(candidates));
+        }
+
+        @Override
+        public void reset() {
+            resetCalls++;
+        }
+
+        @Override
+        public List<String> candidates(String pinyin, int max) {
+            lastPinyin = pinyin;
+            return max >= candidates.size() ? candidates : candidates.subList(0, max);
+        }
+
+        @Override
+        public int search(String pinyin) {
+            lastPinyin = pinyin;
+            return candidates.size();
+        }
+
+        @Override
+        public String candidateAt(int index) {
+            return index >= 0 && index < candidates.size() ? candidates.get(index) : "";
+        }
+
+        @Override
+        public String choose(int index) {
+            return candidateAt(index);
+        }
+    }
+
+    /** Keeps the last bound list and reads its visible page, as the candidate bar does when it draws. */
+    static final class Bar implements ICandidateBar {
+        List<String> candidates = Collections.emptyList();
+        OnCandidateClickListener onClick;
+        boolean cleared = false;
+
+        @Override
+        public void setCandidates(List<String> list, OnCandidateClickListener listener) {
+            cleared = false;
+            candidates = list != null ? list : Collections.<String>emptyList();
+            onClick = listener;
+            int n = Math.min(VISIBLE, candidates.size());
+            for (int i = 0; i < n; i++) candidates.get(i);
+        }
+
+        @Override
+        public void clear() {
+            cleared = true;
+            candidates = Collections.emptyList();
+            onClick = null;
+        }
+    }
+
+    /** A text field holding everything committed to it. */
+    static final class Target implements ITextCommitTarget {
+        final StringBuilder sb = new StringBuilder();
+
+        @Override
+        public void insert(String text) {
+            sb.append(text);
+        }
+
+        @Override
+        public void deleteLastChar(int count) {
+            sb.setLength(Math.max(0, sb.length() - Math.max(0, count)));
+        }
+
+        @Override
+        public CharSequence getTextBeforeCursor(int n) {
+            return sb.subSequence(Math.max(0, sb.length() - n), sb.length());
+        }
+    }
+
+    /** An engine composing pinyin with {@code decoder}, committing to {@code target}. */
+    static KeyboardEngine engine(ITextCommitTarget target, ICandidateBar bar, IPinyinDecoder decoder) {
+        KeyboardEngine engine = new KeyboardEngine();
+        engine.setTarget(target);
+        engine.setCandidateBar(bar);
+        engine.setPinyinSession(new PinyinImeSession(decoder));
+        return engine;
+    }
+}
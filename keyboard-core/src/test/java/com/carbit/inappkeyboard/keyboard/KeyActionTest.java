@@ -0,0 +1,41 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class KeyActionTest {
+
+    @Test
+    public void built_in_labels_map_to_function_codes() {
+        assertEquals(KeyAction.CODE_DELETE, KeyAction.forLabel("⌫").code);
+        assertEquals(KeyAction.CODE_ENTER, KeyAction.forLabel("enter").code);
+        assertEquals(KeyAction.CODE_SPACE, KeyAction.forLabel("space").code);
+        assertEquals(KeyAction.CODE_SHIFT, KeyAction.forLabel("⇧").code);
+        assertEquals(KeyAction.CODE_SYMBOLS, KeyAction.forLabel("123").code);
+        assertEquals(KeyAction.CODE_ALPHABET, KeyAction.forLabel("abc").code);
+        assertEquals(KeyAction.CODE_LANGUAGE, KeyAction.forLabel("lang").code);
+        assertFalse(KeyAction.forLabel("space").isCharacter());
+    }
+
+    @Test
+    public void character_keys_precompute_shifted_text() {
+        KeyAction q = KeyAction.forLabel("q");
+        assertTrue(q.isCharacter());
+        assertEquals('q', q.code);
+        assertEquals("q", q.text);
+        assertEquals("Q", q.shiftedText);
+    }
+
+    @Test
+    public void ask_keys_use_code_when_label_is_missing() {
+        KeyAction w = KeyAction.fromAskKey(new AskXmlKeyboardParser.Key(119, null, false, false, false));
+        assertEquals("w", w.text);
+        assertEquals(KeyAction.CODE_DELETE,
+                KeyAction.fromAskKey(new AskXmlKeyboardParser.Key(-5, null, false, false, true)).code);
+        assertNull(KeyAction.fromAskKey(new AskXmlKeyboardParser.Key(null, null, false, false, false)));
+    }
+}
@@ -0,0 +1,30 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class KeyRepeatPolicyTest {
+
+    @Test
+    public void repeats_accelerate_and_escalate_from_characters_to_words_to_lines() {
+        KeyRepeatPolicy policy = KeyRepeatPolicy.DEFAULT;
+        assertEquals(50L, policy.intervalMs(0));
+        assertEquals(policy.minRepeatIntervalMs, policy.intervalMs(100));
+        assertEquals(KeyRepeatPolicy.Granularity.CHARACTER, policy.granularity(0));
+        assertEquals(KeyRepeatPolicy.Granularity.WORD, policy.granularity(policy.wordAfterRepeats));
+        assertEquals(KeyRepeatPolicy.Granularity.LINE, policy.granularity(policy.lineAfterRepeats));
+        assertEquals(KeyRepeatPolicy.Granularity.CHARACTER, KeyRepeatPolicy.CHARACTER_ONLY.granularity(1000));
+    }
+
+    @Test
+    public void delete_length_covers_a_word_or_the_rest_of_the_line() {
+        assertEquals(1, KeyRepeatPolicy.deleteLength(KeyRepeatPolicy.Granularity.CHARACTER, "hello world"));
+        assertEquals(1, KeyRepeatPolicy.deleteLength(KeyRepeatPolicy.Granularity.WORD, null));
+        assertEquals(5, KeyRepeatPolicy.deleteLength(KeyRepeatPolicy.Granularity.WORD, "hello world"));
+        assertEquals(7, KeyRepeatPolicy.deleteLength(KeyRepeatPolicy.Granularity.WORD, "hello world  "));
+        assertEquals(9, KeyRepeatPolicy.deleteLength(KeyRepeatPolicy.Granularity.LINE, "one\ntwo three"));
+        assertEquals(10, KeyRepeatPolicy.deleteLength(KeyRepeatPolicy.Granularity.LINE, "one\ntwo three\n"));
+        assertEquals(3, KeyRepeatPolicy.deleteLength(KeyRepeatPolicy.Granularity.LINE, "abc"));
+    }
+}
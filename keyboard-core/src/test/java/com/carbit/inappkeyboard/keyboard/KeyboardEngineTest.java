@@ -0,0 +1,161 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KeyboardEngineTest {
+
+    private static void type(KeyboardEngine engine, String... labels) {
+        for (String label : labels) engine.dispatch(KeyAction.forLabel(label));
+    }
+
+    @Test
+    public void language_key_cycles_layouts_and_shift_applies_once() {
+        final List<KeyboardEngine.Layout> changes = new ArrayList<>();
+        KeyboardEngine engine = new KeyboardEngine(new KeyboardEngine.Host() {
+            @Override
+            public void onLayoutChanged(KeyboardEngine.Layout layout) {
+                changes.add(layout);
+            }
+        });
+        Fakes.Target target = new Fakes.Target();
+        engine.setTarget(target);
+
+        type(engine, "⇧", "a", "b", "lang", "lang", "123", "abc");
+        assertEquals("Ab", target.sb.toString());
+        assertEquals(Arrays.asList(KeyboardEngine.Layout.ZH_PINYIN, KeyboardEngine.Layout.FR,
+                KeyboardEngine.Layout.SYMBOLS, KeyboardEngine.Layout.EN), changes);
+
+        engine.setInputMode(KeyboardEngine.InputMode.NUMBER);
+        assertEquals(KeyboardEngine.Layout.NUMERIC, engine.getLayout());
+        type(engine, "lang");
+        assertEquals(KeyboardEngine.Layout.NUMERIC, engine.getLayout());
+    }
+
+    @Test
+    public void pinyin_layout_composes_and_commits_through_the_session() {
+        KeyboardEngine engine = new KeyboardEngine();
+        Fakes.Target target = new Fakes.Target();
+        Fakes.Bar bar = new Fakes.Bar();
+        engine.setTarget(target);
+        engine.setCandidateBar(bar);
+        engine.setPinyinSession(new PinyinImeSession(new Fakes.Decoder("你", "尼")));
+        engine.setLayout(KeyboardEngine.Layout.ZH_PINYIN);
+
+        type(engine, "n", "i");
+        assertEquals("", target.sb.toString());
+        assertEquals(Arrays.asList("ni", "你", "尼"), bar.candidates);
+
+        type(engine, "⌫");
+        assertEquals("n", engine.getPinyinSession().composingText());
+
+        engine.commitCandidate(2);
+        assertEquals("尼", target.sb.toString());
+        assertTrue(bar.candidates.isEmpty());
+
+        type(engine, "n", "space", "space");
+        assertEquals("尼你 ", target.sb.toString());
+
+        // Leaving the layout drops the composing text.
+        type(engine, "x", "lang");
+        assertFalse(engine.getPinyinSession().hasComposing());
+        assertEquals("尼你 ", target.sb.toString());
+    }
+
+    @Test
+    public void host_overrides_keys_outside_composing() {
+        KeyboardEngine engine = new KeyboardEngine(new KeyboardEngine.Host() {
+            @Override
+            public boolean onCommitText(KeyboardEngine.Layout layout, String text) {
+                return text.equals("q");
+            }
+
+            @Override
+            public boolean onSpace(KeyboardEngine.Layout layout) {
+                return true;
+            }
+        });
+        Fakes.Target target = new Fakes.Target();
+        engine.setTarget(target);
+
+        type(engine, "q", "w", "space", "enter");
+        assertEquals("w\n", target.sb.toString());
+    }
+
+    @Test
+    public void pinyin_layout_passes_space_and_delete_to_the_host_when_nothing_is_composing() {
+        final List<String> seen = new ArrayList<>();
+        KeyboardEngine engine = new KeyboardEngine(new KeyboardEngine.Host() {
+            @Override
+            public boolean onBackspace(KeyboardEngine.Layout layout) {
+                seen.add("⌫");
+                return false;
+            }
+
+            @Override
+            public boolean onSpace(KeyboardEngine.Layout layout) {
+                seen.add("space");
+                return false;
+            }
+        });
+        Fakes.Target target = new Fakes.Target();
+        target.insert("x");
+        engine.setTarget(target);
+        engine.setCandidateBar(new Fakes.Bar());
+        engine.setPinyinSession(new PinyinImeSession(new Fakes.Decoder("你", "尼")));
+        engine.setLayout(KeyboardEngine.Layout.ZH_PINYIN);
+
+        type(engine, "space", "⌫");
+        assertEquals(Arrays.asList("space", "⌫"), seen);
+        assertEquals("x", target.sb.toString());
+
+        // While composing, the session takes them.
+        type(engine, "n", "i", "⌫", "space");
+        assertEquals(Arrays.asList("space", "⌫"), seen);
+        assertEquals("x你", target.sb.toString());
+    }
+
+    @Test
+    public void held_delete_removes_words() {
+        KeyboardEngine engine = new KeyboardEngine();
+        Fakes.Target target = new Fakes.Target();
+        target.insert("hello big world");
+        engine.setTarget(target);
+
+        engine.dispatchRepeat(KeyAction.forLabel("⌫"), KeyRepeatPolicy.Granularity.WORD);
+        assertEquals("hello big ", target.sb.toString());
+        engine.dispatchRepeat(KeyAction.forLabel("⌫"), KeyRepeatPolicy.Granularity.CHARACTER);
+        assertEquals("hello big", target.sb.toString());
+    }
+
+    @Test
+    public void loads_ask_layouts_from_a_plain_stream() {
+        final String xml = "<Keyboard xmlns:android=\"http://schemas.android.com/apk/res/android\">"
+                + "<Row><Key android:codes=\"113\" android:keyLabel=\"q\" android:popupCharacters=\"\\u0071\"/>"
+                + "<Key android:codes=\"@integer/key_code_delete\"/></Row></Keyboard>";
+        KeyboardLayouts.Source source = new KeyboardLayouts.Source() {
+            @Override
+            public InputStream open(String path) {
+                assertEquals("ask_layouts/fr_azerty.xml", path);
+                return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+            }
+        };
+        List<List<KeyAction>> rows = KeyboardLayouts.load(KeyboardEngine.Layout.FR, source);
+        assertEquals(2, rows.size());
+        assertEquals("q", rows.get(0).get(0).label);
+        assertEquals("q", rows.get(0).get(0).popupCharacters);
+        assertEquals(KeyAction.CODE_DELETE, rows.get(0).get(1).code);
+        assertEquals(KeyAction.CODE_LANGUAGE, rows.get(1).get(0).code);
+        assertEquals(5, KeyboardLayouts.load(KeyboardEngine.Layout.NUMERIC, source).size());
+    }
+}
@@ -0,0 +1,35 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class KeyboardMetricsTest {
+
+    @Test
+    public void reports_every_n_keys_and_copies_without_sharing_state() {
+        final KeyboardMetrics metrics = new KeyboardMetrics();
+        final KeyboardMetrics snapshot = new KeyboardMetrics();
+        final int[] reports = {0};
+        metrics.setOnReportListener(3, new KeyboardMetrics.OnReportListener() {
+            @Override
+            public void onReport(KeyboardMetrics m) {
+                reports[0]++;
+                m.copyTo(snapshot);
+                m.reset();
+            }
+        });
+
+        for (int i = 1; i <= 7; i++) {
+            metrics.record(KeyboardMetrics.Stage.DISPATCH, i * 1000L);
+            metrics.record(KeyboardMetrics.Stage.COMMIT, 10);
+            metrics.reportIfDue();
+        }
+
+        assertEquals(2, reports[0]);
+        assertEquals(3, snapshot.keyCount());
+        assertEquals(6000, snapshot.histogram(KeyboardMetrics.Stage.DISPATCH).max());
+        assertEquals(1, metrics.keyCount());
+        assertEquals(0, metrics.histogram(KeyboardMetrics.Stage.DECODE).count());
+    }
+}
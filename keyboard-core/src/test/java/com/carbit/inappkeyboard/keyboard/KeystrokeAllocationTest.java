@@ -0,0 +1,186 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Allocation budgets for the keystroke paths, in bytes per keystroke, measured on the JVM with a
+ * decoder that allocates nothing itself. {@code KeystrokeAllocationInstrumentedTest} in the app
+ * holds the budgets for the same paths through the real view.
+ *
+ * A failing budget means a change added garbage to every key; find it before raising the number.
+ */
+public class KeystrokeAllocationTest {
+
+    /** Append one letter and bind the new candidate list, reading the visible page. */
+    private static final long PINYIN_LETTER_BUDGET = 512;
+    /** Erase one composing letter and rebind. */
+    private static final long BACKSPACE_BUDGET = 512;
+    /** Pick a candidate: choose, commit and clear. */
+    private static final long CANDIDATE_COMMIT_BUDGET = 128;
+    /** A letter on the EN layout, inserted into the target as it is. */
+    private static final long LATIN_LETTER_BUDGET = 64;
+    /** One press of the language key, EN -> ZH -> FR -> AR -> EN. */
+    private static final long LAYOUT_SWITCH_BUDGET = 64;
+
+    private static final String SCRIPT = "zhonghuarenmin";
+    private static final int WARMUP_RUNS = 2_000;
+    private static final int MEASURED_RUNS = 2_000;
+
+    private final Fakes.Decoder decoder =
+            new Fakes.Decoder("中", "种", "重", "众", "钟", "终", "忠", "肿", "仲", "衷");
+    private final PinyinImeSession session = new PinyinImeSession(decoder);
+    private final Fakes.Target target = new Fakes.Target();
+    private final Fakes.Bar bar = new Fakes.Bar();
+    private final String[] letters = new String[SCRIPT.length()];
+    private final KeyAction[] letterKeys = new KeyAction[SCRIPT.length()];
+    private final KeyAction languageKey = KeyAction.forLabel("lang");
+
+    @Before
+    public void setUp() {
+        assumeTrue("thread allocation counters unavailable", AllocationCounter.isSupported());
+        for (int i = 0; i < letters.length; i++) {
+            letters[i] = String.valueOf(SCRIPT.charAt(i));
+            letterKeys[i] = KeyAction.forLabel(letters[i]);
+        }
+    }
+
+    @Test
+    public void latin_letter_stays_within_budget() {
+        final KeyboardEngine engine = Fakes.engine(target, bar, decoder);
+        assertWithinBudget("latin letter", LATIN_LETTER_BUDGET, new Script() {
+            @Override
+            public int run(boolean measured) {
+                target.sb.setLength(0);
+                long before = AllocationCounter.current();
+                for (KeyAction key : letterKeys) engine.dispatch(key);
+                if (measured) allocated += AllocationCounter.current() - before;
+                return letterKeys.length;
+            }
+        });
+    }
+
+    @Test
+    public void layout_switch_stays_within_budget() {
+        final KeyboardEngine engine = Fakes.engine(target, bar, decoder);
+        assertWithinBudget("layout switch", LAYOUT_SWITCH_BUDGET, new Script() {
+            @Override
+            public int run(boolean measured) {
+                long before = AllocationCounter.current();
+                for (int i = 0; i < 4; i++) engine.dispatch(languageKey);
+                if (measured) allocated += AllocationCounter.current() - before;
+                return 4;
+            }
+        });
+    }
+
+    @Test
+    public void pinyin_letter_stays_within_budget() {
+        assertWithinBudget("pinyin letter", PINYIN_LETTER_BUDGET, new Script() {
+            @Override
+            public int run(boolean measured) {
+                session.clear();
+                long before = AllocationCounter.current();
+                for (String letter : letters) typeLetter(letter);
+                if (measured) allocated += AllocationCounter.current() - before;
+                return letters.length;
+            }
+        });
+    }
+
+    @Test
+    public void backspace_stays_within_budget() {
+        assertWithinBudget("backspace", BACKSPACE_BUDGET, new Script() {
+            @Override
+            public int run(boolean measured) {
+                session.clear();
+                for (String letter : letters) typeLetter(letter);
+                long before = AllocationCounter.current();
+                while (session.onBackspace()) session.bindCandidateClicks(target, bar);
+                if (measured) allocated += AllocationCounter.current() - before;
+                return letters.length;
+            }
+        });
+    }
+
+    @Test
+    public void candidate_commit_stays_within_budget() {
+        assertWithinBudget("candidate commit", CANDIDATE_COMMIT_BUDGET, new Script() {
+            @Override
+            public int run(boolean measured) {
+                session.clear();
+                target.sb.setLength(0);
+                typeLetter(letters[0]);
+                typeLetter(letters[1]);
+                long before = AllocationCounter.current();
+                bar.onClick.onClick(1, bar.candidates.get(1));
+                if (measured) allocated += AllocationCounter.current() - before;
+                return 1;
+            }
+        });
+    }
+
+    private void typeLetter(String letter) {
+        session.onCommitChar(letter);
+        session.bindCandidateClicks(target, bar);
+    }
+
+    private static void assertWithinBudget(String path, long budget, Script script) {
+        for (int i = 0; i < WARMUP_RUNS; i++) script.run(false);
+        long keys = 0;
+        for (int i = 0; i < MEASURED_RUNS; i++) keys += script.run(true);
+        long perKey = script.allocated / keys;
+        assertTrue(path + " allocates " + perKey + " bytes per keystroke, budget " + budget,
+                perKey <= budget);
+    }
+
+    /** One pass of a key sequence; adds the bytes of its measured keys to {@link #allocated}. */
+    private abstract static class Script {
+        long allocated;
+
+        /** Returns the number of keys measured. */
+        abstract int run(boolean measured);
+    }
+
+    /**
+     * Bytes allocated by the current thread, read reflectively: {@code com.sun.management} is not
+     * on the Android compile classpath, but every HotSpot JVM running the unit tests has it.
+     */
+    private static final class AllocationCounter {
+        private static final Object BEAN;
+        private static final Method CURRENT;
+
+        static {
+            Object bean = null;
+            Method current = null;
+            try {
+                bean = Class.forName("java.lang.management.ManagementFactory")
+                        .getMethod("getThreadMXBean").invoke(null);
+                current = Class.forName("com.sun.management.ThreadMXBean")
+                        .getMethod("getCurrentThreadAllocatedBytes");
+                if ((Long) current.invoke(bean) < 0) current = null;
+            } catch (Exception e) {
+                current = null;
+            }
+            BEAN = bean;
+            CURRENT = current;
+        }
+
+        static boolean isSupported() {
+            return CURRENT != null;
+        }
+
+        static long current() {
+            try {
+                return (Long) CURRENT.invoke(BEAN);
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
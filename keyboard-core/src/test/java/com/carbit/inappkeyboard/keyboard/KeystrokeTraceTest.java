@@ -0,0 +1,142 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KeystrokeTraceTest {
+
+    private static KeyboardEngine engine(ITextCommitTarget target, ICandidateBar bar) {
+        return Fakes.engine(target, bar, decoder());
+    }
+
+    private static Fakes.Decoder decoder() {
+        return new Fakes.Decoder("你好", "你", "泥");
+    }
+
+    @Test
+    public void round_trips_events_and_timings() {
+        KeystrokeTrace.Recorder recorder = new KeystrokeTrace.Recorder(16);
+        recorder.start(1, 0, 1_000_000L);
+        recorder.key("ä", 3_000_000L, 250_000L);
+        recorder.keyRedacted(3_500_000L, 1_000L);
+        recorder.keyRepeat("⌫", 1, 300_000_000L, 42_000L);
+        recorder.layout(5, 300_100_000L, 7_000_000L);
+        recorder.candidate(300, 300_200_000L, 0L);
+
+        KeystrokeTrace.Reader reader = new KeystrokeTrace.Reader(recorder.toByteArray());
+        assertEquals(1, reader.inputMode);
+        assertEquals(0, reader.layout);
+
+        assertTrue(reader.next());
+        assertEquals(KeystrokeTrace.KEY, reader.type());
+        assertEquals("ä", reader.label().toString());
+        assertEquals(2_000, reader.gapMicros());
+        assertEquals(250, reader.costMicros());
+
+        assertTrue(reader.next());
+        assertEquals(KeystrokeTrace.KEY_REDACTED, reader.type());
+        assertEquals(KeystrokeTrace.REDACTED_LABEL, reader.label().toString());
+
+        assertTrue(reader.next());
+        assertEquals(KeystrokeTrace.KEY_REPEAT, reader.type());
+        assertEquals("⌫", reader.label().toString());
+        assertEquals(1, reader.value());
+        assertEquals(296_500, reader.gapMicros());
+
+        assertTrue(reader.next());
+        assertEquals(KeystrokeTrace.LAYOUT, reader.type());
+        assertEquals(5, reader.value());
+        assertEquals(7_000, reader.costMicros());
+
+        assertTrue(reader.next());
+        assertEquals(KeystrokeTrace.CANDIDATE, reader.type());
+        assertEquals(300, reader.value());
+
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void events_before_start_are_dropped() {
+        KeystrokeTrace.Recorder recorder = new KeystrokeTrace.Recorder();
+        recorder.key("a", 0L, 0L);
+        assertEquals(0, recorder.size());
+    }
+
+    @Test
+    public void password_mode_stores_no_labels_but_layout_keys() {
+        KeystrokeTrace.Recorder recorder = new KeystrokeTrace.Recorder();
+        recorder.start(KeyboardEngine.InputMode.PASSWORD.ordinal(), 0, 0);
+        long t = 0;
+        for (String label : new String[]{"a", "space", "b", "enter", "⌫", "123"}) {
+            recorder.key(KeyAction.forLabel(label), null, true, t += 1_000, 0);
+        }
+        recorder.key(KeyAction.forLabel("⌫"), KeyRepeatPolicy.Granularity.WORD, true, t + 1_000, 0);
+
+        KeystrokeTrace.Reader reader = new KeystrokeTrace.Reader(recorder.toByteArray());
+        for (int i = 0; i < 5; i++) {
+            assertTrue(reader.next());
+            assertEquals(KeystrokeTrace.KEY_REDACTED, reader.type());
+        }
+        assertTrue(reader.next());
+        assertEquals(KeystrokeTrace.KEY, reader.type());
+        assertEquals("123", reader.label().toString());
+        assertTrue(reader.next());
+        assertEquals(KeystrokeTrace.KEY_REDACTED, reader.type());
+        assertFalse(reader.next());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejects_other_data() {
+        new KeystrokeTrace.Reader("not a trace".getBytes());
+    }
+
+    @Test
+    public void replays_keys_and_candidate_picks_into_an_engine() {
+        PinyinImeSession session = new PinyinImeSession(decoder());
+        Fakes.Target target = new Fakes.Target();
+        Fakes.Bar bar = new Fakes.Bar();
+
+        // Record through the session, as the keyboard does for candidate clicks.
+        KeystrokeTrace.Recorder recorder = new KeystrokeTrace.Recorder();
+        session.setTraceRecorder(recorder);
+        long t = 0;
+        recorder.start(1, 1, t);
+        for (String key : new String[]{"n", "i", "h", "a", "o"}) {
+            session.onCommitChar(key);
+            recorder.key(key, t += 1_000_000, 1_000);
+        }
+        session.commitCandidate(1, target, bar);
+        recorder.key("space", t += 1_000_000, 1_000);
+        recorder.key("x", t += 1_000_000, 1_000);
+        recorder.key("⌫", t += 1_000_000, 1_000);
+        recorder.key("enter", t + 1_000_000, 1_000);
+        assertEquals("你好", target.sb.toString());
+
+        Fakes.Target replayed = new Fakes.Target();
+        KeystrokeReplayer.Result result = KeystrokeReplayer.replay(recorder.toByteArray(),
+                KeystrokeReplayer.engineTarget(engine(replayed, bar)), false);
+
+        assertEquals("你好 \n", replayed.sb.toString());
+        assertEquals(10, result.events);
+        assertEquals(10, result.replayed.count());
+        assertEquals(0, result.lateness.count());
+    }
+
+    @Test
+    public void replays_at_original_speed() {
+        KeystrokeTrace.Recorder recorder = new KeystrokeTrace.Recorder();
+        recorder.start(1, 0, 0);
+        recorder.key("a", 5_000_000L, 0);
+        recorder.key("b", 10_000_000L, 0);
+
+        Fakes.Target replayed = new Fakes.Target();
+        KeystrokeReplayer.Result result = KeystrokeReplayer.replay(recorder.toByteArray(),
+                KeystrokeReplayer.engineTarget(engine(replayed, new Fakes.Bar())), true);
+
+        assertTrue(result.elapsedNanos >= 10_000_000L);
+        assertEquals(2, result.lateness.count());
+    }
+}
@@ -0,0 +1,54 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentiles_are_within_bucket_precision() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (long v = 1; v <= 1000; v++) h.record(v * 1000);
+        assertEquals(1000, h.count());
+        assertEquals(1000, h.min());
+        assertEquals(1_000_000, h.max());
+        assertNear(500_000, h.valueAtPercentile(50));
+        assertNear(990_000, h.valueAtPercentile(99));
+        assertEquals(1_000_000, h.valueAtPercentile(100));
+        assertEquals(500_500, h.mean(), 0.5);
+    }
+
+    @Test
+    public void buckets_cover_the_range_without_gaps() {
+        for (long v = 0; v < 1 << 16; v++) {
+            int b = LatencyHistogram.bucketOf(v);
+            assertTrue(v + " above its bucket", v <= LatencyHistogram.highestIn(b));
+            assertTrue(v + " below its bucket", b == 0 || v > LatencyHistogram.highestIn(b - 1));
+        }
+    }
+
+    @Test
+    public void copy_reset_and_add() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(10);
+        h.record(-5);
+        h.record(Long.MAX_VALUE);
+        LatencyHistogram copy = new LatencyHistogram();
+        h.copyTo(copy);
+        h.reset();
+        assertEquals(0, h.count());
+        assertEquals(0, h.valueAtPercentile(99));
+        assertEquals(3, copy.count());
+        assertEquals(0, copy.min());
+        h.add(copy);
+        h.add(copy);
+        assertEquals(6, h.count());
+        assertEquals(10, h.valueAtPercentile(50));
+    }
+
+    private static void assertNear(long expected, long actual) {
+        assertTrue(actual + " not within 3% of " + expected, Math.abs(actual - expected) <= expected * 0.03);
+    }
+}
@@ -0,0 +1,44 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PendingEditTest {
+
+    @Test
+    public void deletes_consume_pending_text_before_document_text() {
+        PendingEdit edit = new PendingEdit();
+        assertTrue(edit.isEmpty());
+
+        edit.insert("abc");
+        edit.deleteBefore(2);
+        assertEquals("a", edit.text().toString());
+        assertEquals(0, edit.deleteCount());
+
+        edit.deleteBefore(3);
+        assertEquals("", edit.text().toString());
+        assertEquals(2, edit.deleteCount());
+
+        edit.insert("xy");
+        assertEquals("xy", edit.text().toString());
+        assertEquals(2, edit.deleteCount());
+        assertFalse(edit.isEmpty());
+
+        edit.clear();
+        assertTrue(edit.isEmpty());
+        assertEquals(0, edit.deleteCount());
+    }
+
+    @Test
+    public void apply_to_yields_text_before_caret_after_the_edit() {
+        PendingEdit edit = new PendingEdit();
+        edit.deleteBefore(2);
+        edit.insert("XY");
+        assertEquals("lXY", edit.applyTo("hello", 3).toString());
+        assertEquals("Y", edit.applyTo("hello", 1).toString());
+        assertEquals("XY", edit.applyTo("h", 8).toString());
+    }
+}
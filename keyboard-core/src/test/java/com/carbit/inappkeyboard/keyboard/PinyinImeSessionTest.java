@@ -0,0 +1,149 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class PinyinImeSessionTest {
+
+    private static final String[] BASE = {"你", "拟", "尼", "呢", "泥"};
+
+    @Test
+    public void typing_in_composing_mode_updates_candidates_but_does_not_auto_commit() {
+        Fakes.Decoder decoder = new Fakes.Decoder(BASE);
+        Fakes.Bar bar = new Fakes.Bar();
+        PinyinImeSession session = new PinyinImeSession(decoder);
+
+        session.onCommitChar("n", bar);
+        assertTrue(session.hasComposing());
+        assertEquals("n", session.composingText());
+        assertEquals("n", decoder.lastPinyin);
+        assertFalse(bar.candidates.isEmpty());
+        assertEquals("n", bar.candidates.get(0));
+        assertFalse(bar.cleared);
+    }
+
+    @Test
+    public void space_commits_best_candidate_and_clears_composing() {
+        Fakes.Decoder decoder = new Fakes.Decoder(BASE);
+        Fakes.Bar bar = new Fakes.Bar();
+        Fakes.Target target = new Fakes.Target();
+        PinyinImeSession session = new PinyinImeSession(decoder);
+
+        session.onCommitChar("n", bar);
+        session.onCommitChar("i", bar);
+        boolean consumed = session.onSpaceCommitBest(target, bar);
+
+        assertTrue(consumed);
+        assertFalse(session.hasComposing());
+        assertEquals("你", target.sb.toString());
+        assertTrue(bar.cleared);
+    }
+
+    @Test
+    public void candidate_click_commits_selected_candidate_and_clears_composing() {
+        Fakes.Decoder decoder = new Fakes.Decoder(BASE);
+        Fakes.Bar bar = new Fakes.Bar();
+        Fakes.Target target = new Fakes.Target();
+        PinyinImeSession session = new PinyinImeSession(decoder);
+
+        session.onCommitChar("n", bar);
+        session.onCommitChar("i", bar);
+        session.bindCandidateClicks(target, bar);
+
+        assertNotNull(bar.onClick);
+        // index 0 is raw pinyin, index 1 maps to decoder candidate 0.
+        bar.onClick.onClick(1, bar.candidates.get(1));
+
+        assertEquals("你", target.sb.toString());
+        assertFalse(session.hasComposing());
+        assertTrue(bar.cleared);
+    }
+
+    @Test
+    public void installed_metrics_record_decode_and_candidate_fetches() {
+        Fakes.Decoder decoder = new Fakes.Decoder(BASE);
+        Fakes.Bar bar = new Fakes.Bar();
+        Fakes.Target target = new Fakes.Target();
+        PinyinImeSession session = new PinyinImeSession(decoder);
+        KeyboardMetrics metrics = new KeyboardMetrics();
+        session.setMetrics(metrics);
+
+        session.onCommitChar("n");
+        session.bindCandidateClicks(target, bar);
+        bar.candidates.get(0);
+        bar.candidates.get(1);
+        bar.onClick.onClick(2, bar.candidates.get(2));
+
+        // One search plus one choose; one page of candidates (raw letters are not fetched).
+        assertEquals(2, metrics.histogram(KeyboardMetrics.Stage.DECODE).count());
+        assertEquals(BASE.length, metrics.histogram(KeyboardMetrics.Stage.CANDIDATE_FETCH).count());
+    }
+
+    @Test
+    public void candidate_click_on_raw_pinyin_commits_letters() {
+        Fakes.Decoder decoder = new Fakes.Decoder(BASE);
+        Fakes.Bar bar = new Fakes.Bar();
+        Fakes.Target target = new Fakes.Target();
+        PinyinImeSession session = new PinyinImeSession(decoder);
+
+        session.onCommitChar("n", bar);
+        session.onCommitChar("i", bar);
+        session.bindCandidateClicks(target, bar);
+
+        assertNotNull(bar.onClick);
+        bar.onClick.onClick(0, bar.candidates.get(0));
+
+        assertEquals("ni", target.sb.toString());
+        assertFalse(session.hasComposing());
+        assertTrue(bar.cleared);
+    }
+
+    @Test
+    public void candidate_list_exposes_every_decoder_candidate_after_raw_pinyin() {
+        Fakes.Decoder decoder = new Fakes.Decoder(BASE);
+        Fakes.Bar bar = new Fakes.Bar();
+        PinyinImeSession session = new PinyinImeSession(decoder);
+
+        session.onCommitChar("n", bar);
+
+        assertEquals(1 + BASE.length, bar.candidates.size());
+        assertEquals("n", bar.candidates.get(0));
+        assertEquals("泥", bar.candidates.get(BASE.length));
+    }
+
+    @Test
+    public void click_on_list_bound_before_further_typing_is_ignored() {
+        Fakes.Decoder decoder = new Fakes.Decoder(BASE);
+        Fakes.Bar bar = new Fakes.Bar();
+        Fakes.Target target = new Fakes.Target();
+        PinyinImeSession session = new PinyinImeSession(decoder);
+
+        session.onCommitChar("n");
+        session.bindCandidateClicks(target, bar);
+        // Next key arrives before the coalesced candidate update re-binds the bar.
+        session.onCommitChar("i");
+        bar.onClick.onClick(1, bar.candidates.get(1));
+
+        assertEquals("", target.sb.toString());
+        assertEquals("ni", session.composingText());
+    }
+
+    @Test
+    public void backspace_in_composing_mode_consumes_and_updates_candidates() {
+        Fakes.Decoder decoder = new Fakes.Decoder(BASE);
+        Fakes.Bar bar = new Fakes.Bar();
+        PinyinImeSession session = new PinyinImeSession(decoder);
+
+        session.onCommitChar("n", bar);
+        session.onCommitChar("i", bar);
+        boolean consumed = session.onBackspace(bar);
+
+        assertTrue(consumed);
+        assertEquals("n", session.composingText());
+        assertFalse(bar.candidates.isEmpty());
+    }
+}
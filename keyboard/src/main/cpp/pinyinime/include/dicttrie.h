@@ -173,9 +173,12 @@ class DictTrie : AtomDictBase {
   void convert_to_scis_ids(char16 *str, uint16 str_len);
 
   // Load a binary dictionary
-  // The SpellingTrie instance/DictList will be also loaded
+  // The SpellingTrie instance/DictList will be also loaded. The shared
+  // SpellingTrie and NGram are loaded under a lock, so decoders on several
+  // threads may load the same dictionary at once.
   bool load_dict(const char *filename, LemmaIdType start_id,
                  LemmaIdType end_id);
+  // As load_dict(), from sys_fd, which is closed whether or not it succeeds.
   bool load_dict_fd(int sys_fd, long start_offset, long length,
                     LemmaIdType start_id, LemmaIdType end_id);
   bool close_dict() {return true;}
@@ -0,0 +1,27 @@
+#ifndef PINYINIME_INCLUDE_LOG_H__
+#define PINYINIME_INCLUDE_LOG_H__
+
+// Routes the engine's logging to logcat on Android and to stderr on host
+// builds, which have no liblog.
+#ifdef __ANDROID__
+#include <android/log.h>
+#else
+#include <stdarg.h>
+#include <stdio.h>
+
+#define ANDROID_LOG_DEBUG 3
+#define ANDROID_LOG_ERROR 6
+
+static inline int __android_log_print(int prio, const char* tag,
+                                      const char* fmt, ...) {
+  va_list args;
+  va_start(args, fmt);
+  fprintf(stderr, "%c/%s: ", prio >= ANDROID_LOG_ERROR ? 'E' : 'D', tag);
+  int ret = vfprintf(stderr, fmt, args);
+  fputc('\n', stderr);
+  va_end(args);
+  return ret;
+}
+#endif
+
+#endif  // PINYINIME_INCLUDE_LOG_H__
@@ -23,10 +23,10 @@
 
 namespace ime_pinyin {
 
-// Used to cache LmaPsbItem list for half spelling ids.
+// Used to cache LmaPsbItem list for half spelling ids. There is one cache per
+// thread, so decoders searching on different threads never share one.
 class LpiCache {
  private:
-  static LpiCache *instance_;
   static const int kMaxLpiCachePerId = 15;
 
   LmaPsbItem *lpi_cache_;
@@ -36,6 +36,7 @@ class LpiCache {
   LpiCache();
   ~LpiCache();
 
+  // The calling thread's cache.
   static LpiCache& get_instance();
 
   // Test if the LPI list of the given splid  has been cached.
@@ -377,6 +377,8 @@ class MatrixSearch {
 
   bool init(const char *fn_sys_dict, const char *fn_usr_dict);
 
+  // As init(), from length bytes of sys_fd at start_offset; sys_fd is closed.
+  // A NULL fn_usr_dict searches the system dictionary only.
   bool init_fd(int sys_fd, long start_offset, long length,
                const char *fn_usr_dict);
 
@@ -19,6 +19,7 @@
 
 #include <stdio.h>
 #include <stdlib.h>
+#include <atomic>
 #include "./dictdef.h"
 
 namespace ime_pinyin {
@@ -55,8 +56,9 @@ class NGram {
 
   // Score compensation for system dictionary lemmas.
   // Because after user adds some user lemmas, the total frequency changes, and
-  // we use this value to normalize the score.
-  float sys_score_compensation_;
+  // we use this value to normalize the score. Atomic because the user
+  // dictionary may change it while decoders on other threads score lemmas.
+  std::atomic<float> sys_score_compensation_;
 
 #ifdef ___BUILD_MODEL___
   double *freq_codes_df_;
@@ -71,6 +73,9 @@ class NGram {
   static NGram& get_instance();
 
   bool save_ngram(FILE *fp);
+  // Once loaded, the tables stay for the life of the process, as decoders on
+  // other threads may be scoring with them: loading the same ones again leaves
+  // them in place and loading different ones fails.
   bool load_ngram(FILE *fp);
 
   // Set the total frequency of all none system dictionaries.
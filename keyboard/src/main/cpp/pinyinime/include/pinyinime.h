@@ -45,7 +45,8 @@ extern "C" {
    * file sys_fd.
    * @param length The length of the system dictionary in the file sys_fd,
    * counted in byte.
-   * @return true if succeed.
+   * @param fn_usr_dict The user dictionary, or NULL for none.
+   * @return true if succeed. sys_fd is closed either way.
    */
   bool im_open_decoder_fd(int sys_fd, long start_offset, long length,
                           const char *fn_usr_dict);
@@ -202,6 +203,21 @@ extern "C" {
    * Enable Yunmus in ShouZiMu mode.
    */
   void im_enable_ym_as_szm(bool enable);
+
+  /**
+   * Copy the engine statistics of all threads (see stats.h for the order and
+   * how they add up) into stats.
+   *
+   * @param stats The buffer to fill.
+   * @param stats_max The length of stats; extra counters are left out.
+   * @return The number of counters copied.
+   */
+  size_t im_get_stats(int64 *stats, size_t stats_max);
+
+  /**
+   * Zero the engine statistics of all threads.
+   */
+  void im_reset_stats();
 }
 
 #ifdef __cplusplus
@@ -232,7 +232,8 @@ class SpellingTrie {
   // Save to the file stream
   bool save_spl_trie(FILE *fp);
 
-  // Load from the file stream
+  // Load from the file stream. Once loaded, loading the same spellings again
+  // changes nothing and loading different ones fails.
   bool load_spl_trie(FILE *fp);
 
   // Get the number of spellings
@@ -242,10 +243,12 @@ class SpellingTrie {
   // If the string is not valid, return 0;
   uint8 get_ym_id(const char* ym_str);
 
-  // Get the readonly Pinyin string for a given spelling id
+  // Get the readonly Pinyin string for a given spelling id. The string is
+  // in a buffer shared by all decoders; see load_spl_trie().
   const char* get_spelling_str(uint16 splid);
 
-  // Get the readonly Pinyin string for a given spelling id
+  // Get the readonly Pinyin string for a given spelling id. The string is
+  // in a buffer shared by all decoders; see load_spl_trie().
   const char16* get_spelling_str16(uint16 splid);
 
   // Get Pinyin string for a given spelling id. Return the length of the
@@ -0,0 +1,76 @@
+#ifndef PINYINIME_INCLUDE_STATS_H__
+#define PINYINIME_INCLUDE_STATS_H__
+
+#include <atomic>
+#include "./dictdef.h"
+
+namespace ime_pinyin {
+
+// Engine counters for sizing the pools and caches from real usage, read
+// through im_get_stats(). Each thread counts into a set of its own, so the
+// decoders on different threads never share a cache line; im_get_stats() adds
+// the sets of all threads up.
+// Keep the order in sync with PinyinDecoder.STAT_*.
+enum EngineStat {
+  kStatSearches = 0,       // MatrixSearch::search() calls.
+  kStatSearchSteps,        // Letters decoded; a search reuses the common prefix.
+  kStatMtrxNdUsed,         // MatrixNode pool entries in use after the last step.
+  kStatMtrxNdPeak,
+  kStatMtrxNdPoolSize,
+  kStatMtrxNdRejected,     // Node extensions dropped because the pool was full.
+  kStatDmiUsed,            // DictMatchInfo pool entries in use after the last step.
+  kStatDmiPeak,
+  kStatDmiPoolSize,
+  kStatDmiRejected,        // Letters not decoded because the pool was full.
+  kStatLpiCacheHits,       // Half spelling id lookups in LpiCache.
+  kStatLpiCacheMisses,
+  kStatUsrCacheHits,       // User dictionary lookups served by its caches.
+  kStatUsrMissCacheHits,   // ... of which were known misses.
+  kStatUsrCacheMisses,
+  kStatCount
+};
+
+// One thread's counters, linked into the process-wide list while the thread
+// lives. Only that thread writes them, so relaxed loads and stores suffice;
+// they are atomics because im_get_stats() reads them from other threads.
+struct ThreadStats {
+  ThreadStats();
+  ~ThreadStats();
+
+  std::atomic<int64> values[kStatCount];
+  ThreadStats *prev;
+  ThreadStats *next;
+};
+
+extern thread_local ThreadStats g_thread_stats;
+
+inline int64 stats_get(EngineStat stat) {
+  return g_thread_stats.values[stat].load(std::memory_order_relaxed);
+}
+
+inline void stats_put(int stat, int64 value) {
+  g_thread_stats.values[stat].store(value, std::memory_order_relaxed);
+}
+
+inline void stats_add(EngineStat stat) {
+  stats_put(stat, stats_get(stat) + 1);
+}
+
+inline void stats_set_pool(EngineStat used, size_t value, size_t size) {
+  stats_put(used, value);
+  if (stats_get(static_cast<EngineStat>(used + 1)) < (int64)value)
+    stats_put(used + 1, value);
+  stats_put(used + 2, size);
+}
+
+// All threads' counters, including those of threads that have exited, added
+// up; the pool entries are the largest of any thread, as each thread has
+// pools of its own.
+void stats_snapshot(int64 *out);
+
+// Zero every thread's counters and peaks; pool sizes are kept.
+void stats_reset();
+
+}  // namespace ime_pinyin
+
+#endif  // PINYINIME_INCLUDE_STATS_H__
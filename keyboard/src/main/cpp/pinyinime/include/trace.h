@@ -0,0 +1,41 @@
+#ifndef PINYINIME_INCLUDE_TRACE_H__
+#define PINYINIME_INCLUDE_TRACE_H__
+
+#include <stddef.h>
+
+namespace ime_pinyin {
+
+// Systrace/Perfetto sections for the engine. ATrace_* is looked up at load
+// time (it exists from API 23, minSdk is 21); while nothing is tracing a
+// section costs one call that reads a cached flag. Host builds compile the
+// markers out.
+#ifdef __ANDROID__
+typedef bool (*TraceIsEnabledFn)();
+
+extern TraceIsEnabledFn g_trace_is_enabled;
+
+void trace_begin(const char *name);
+void trace_end();
+
+class ScopedTrace {
+ public:
+  explicit ScopedTrace(const char *name)
+      : active_(NULL != g_trace_is_enabled && g_trace_is_enabled()) {
+    if (active_) trace_begin(name);
+  }
+  ~ScopedTrace() {
+    if (active_) trace_end();
+  }
+
+ private:
+  bool active_;
+};
+
+#define PINYIN_TRACE(name) ::ime_pinyin::ScopedTrace pinyin_trace_(name)
+#else
+#define PINYIN_TRACE(name) do {} while (0)
+#endif
+
+}  // namespace ime_pinyin
+
+#endif  // PINYINIME_INCLUDE_TRACE_H__
@@ -2,9 +2,10 @@
 #include <string.h>
 #include <unistd.h>
 
-#include <android/log.h>
-
+#include "include/log.h"
+#include "include/matrixsearch.h"
 #include "include/pinyinime.h"
+#include "include/stats.h"
 
 using namespace ime_pinyin;
 
@@ -19,6 +20,8 @@ static struct {
     jfieldID mDescriptor;
 } gFileDescriptorOffsets;
 
+static jclass gStringClass;
+
 extern "C" JNIEXPORT jboolean JNICALL
 Java_com_carbit_inappkeyboard_keyboard_PinyinDecoder_nativeImOpenDecoderFd(
         JNIEnv* env,
@@ -34,12 +37,12 @@ Java_com_carbit_inappkeyboard_keyboard_PinyinDecoder_nativeImOpenDecoderFd(
     jboolean jret = JNI_FALSE;
     int newfd = dup(fd);
     if (newfd >= 0) {
+        // The engine closes newfd.
         if (im_open_decoder_fd(newfd, (long)startoffset, (long)length, (const char*)fud)) {
             jret = JNI_TRUE;
         } else {
             LOGE("im_open_decoder_fd failed");
         }
-        close(newfd);
     } else {
         LOGE("dup(fd) failed");
     }
@@ -94,6 +97,93 @@ Java_com_carbit_inappkeyboard_keyboard_PinyinDecoder_nativeImChoose(
     return (jint)im_choose(choiceId);
 }
 
+extern "C" JNIEXPORT void JNICALL
+Java_com_carbit_inappkeyboard_keyboard_PinyinDecoder_nativeImGetStats(
+        JNIEnv* env, jclass /*clazz*/, jlongArray stats) {
+    jsize len = env->GetArrayLength(stats);
+    jlong* body = env->GetLongArrayElements(stats, nullptr);
+    if (body != nullptr) {
+        int64 values[kStatCount];
+        size_t num = im_get_stats(values, (size_t)len);
+        for (size_t i = 0; i < num; i++) body[i] = (jlong)values[i];
+        env->ReleaseLongArrayElements(stats, body, 0);
+    }
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_com_carbit_inappkeyboard_keyboard_PinyinDecoder_nativeImResetStats(
+        JNIEnv* /*env*/, jclass /*clazz*/) {
+    im_reset_stats();
+}
+
+// Decoder instances independent of the im_* one above, one per thread using them at a time.
+// They search the system dictionary only; the shared tables are loaded once per process.
+// Having no user dictionary also keeps them off SpellingTrie's shared query buffers.
+
+extern "C" JNIEXPORT jlong JNICALL
+Java_com_carbit_inappkeyboard_keyboard_PinyinDecoder_nativeInstanceOpenFd(
+        JNIEnv* env, jclass /*clazz*/, jobject fd_sys_dict, jlong startoffset, jlong length) {
+    jint fd = env->GetIntField(fd_sys_dict, gFileDescriptorOffsets.mDescriptor);
+    int newfd = dup(fd);
+    if (newfd < 0) {
+        LOGE("dup(fd) failed");
+        return 0;
+    }
+    MatrixSearch* search = new MatrixSearch();
+    // The engine closes newfd.
+    if (!search->init_fd(newfd, (long)startoffset, (long)length, nullptr)) {
+        LOGE("MatrixSearch::init_fd failed");
+        delete search;
+        return 0;
+    }
+    search->set_max_lens(64, 64);
+    return (jlong)(intptr_t)search;
+}
+
+extern "C" JNIEXPORT jobjectArray JNICALL
+Java_com_carbit_inappkeyboard_keyboard_PinyinDecoder_nativeInstanceCandidates(
+        JNIEnv* env, jclass /*clazz*/, jlong handle, jbyteArray pybuf, jint pylen, jint max) {
+    MatrixSearch* search = (MatrixSearch*)(intptr_t)handle;
+    jbyte* array_body = env->GetByteArrayElements(pybuf, nullptr);
+    if (array_body == nullptr) return nullptr;
+    search->search((const char*)array_body, (size_t)pylen);
+    env->ReleaseByteArrayElements(pybuf, array_body, JNI_ABORT);
+
+    size_t num = search->get_candidate_num();
+    if (num > (size_t)max) num = (size_t)max;
+    jobjectArray out = env->NewObjectArray((jsize)num, gStringClass, nullptr);
+    if (out == nullptr) return nullptr;
+    char16 buf[RET_BUF_LEN];
+    size_t found = 0;
+    for (; found < num; found++) {
+        if (search->get_candidate(found, buf, RET_BUF_LEN) == nullptr || buf[0] == 0) break;
+        jstring str = env->NewString((unsigned short*)buf, (jsize)utf16_strlen(buf));
+        if (str == nullptr) return nullptr;
+        env->SetObjectArrayElement(out, (jsize)found, str);
+        env->DeleteLocalRef(str);
+    }
+    if (found < num) {
+        jobjectArray shorter = env->NewObjectArray((jsize)found, gStringClass, nullptr);
+        if (shorter == nullptr) return nullptr;
+        for (size_t i = 0; i < found; i++) {
+            jobject str = env->GetObjectArrayElement(out, (jsize)i);
+            env->SetObjectArrayElement(shorter, (jsize)i, str);
+            env->DeleteLocalRef(str);
+        }
+        out = shorter;
+    }
+    return out;
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_com_carbit_inappkeyboard_keyboard_PinyinDecoder_nativeInstanceClose(
+        JNIEnv* /*env*/, jclass /*clazz*/, jlong handle) {
+    MatrixSearch* search = (MatrixSearch*)(intptr_t)handle;
+    if (search == nullptr) return;
+    search->close();
+    delete search;
+}
+
 static int registerFileDescriptorOffsets(JNIEnv* env) {
     jclass localClass = env->FindClass("java/io/FileDescriptor");
     if (!localClass) return JNI_FALSE;
@@ -104,7 +194,8 @@ static int registerFileDescriptorOffsets(JNIEnv* env) {
 
     gFileDescriptorOffsets.mDescriptor = env->GetFieldID(gFileDescriptorOffsets.mClass, "descriptor", "I");
     if (!gFileDescriptorOffsets.mDescriptor) {
-        // Some Android versions use 'fd' instead.
+        // Some Android versions, and OpenJDK on the host, use 'fd' instead.
+        env->ExceptionClear();
         gFileDescriptorOffsets.mDescriptor = env->GetFieldID(gFileDescriptorOffsets.mClass, "fd", "I");
     }
     return gFileDescriptorOffsets.mDescriptor != nullptr;
@@ -121,5 +212,10 @@ JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM* vm, void* /*reserved*/) {
         return JNI_ERR;
     }
 
+    jclass stringClass = env->FindClass("java/lang/String");
+    if (!stringClass) return JNI_ERR;
+    gStringClass = (jclass)env->NewGlobalRef(stringClass);
+    env->DeleteLocalRef(stringClass);
+
     return JNI_VERSION_1_6;
 }
@@ -17,6 +17,8 @@
 #include <assert.h>
 #include <stdio.h>
 #include <string.h>
+#include <unistd.h>
+#include <mutex>
 #include "../include/dicttrie.h"
 #include "../include/dictbuilder.h"
 #include "../include/lpicache.h"
@@ -25,6 +27,9 @@
 
 namespace ime_pinyin {
 
+// Guards loading the process-wide SpellingTrie and NGram.
+static std::mutex g_shared_load_mutex;
+
 DictTrie::DictTrie() {
   spl_trie_ = SpellingTrie::get_cpinstance();
 
@@ -257,6 +262,7 @@ bool DictTrie::load_dict(const char *filename, LemmaIdType start_id,
     return false;
   }
 
+  std::lock_guard<std::mutex> lock(g_shared_load_mutex);
   SpellingTrie &spl_trie = SpellingTrie::get_instance();
   NGram &ngram = NGram::get_instance();
 
@@ -275,12 +281,16 @@ bool DictTrie::load_dict(const char *filename, LemmaIdType start_id,
 bool DictTrie::load_dict_fd(int sys_fd, long start_offset,
                             long length, LemmaIdType start_id,
                             LemmaIdType end_id) {
-  if (start_offset < 0 || length <= 0 || end_id <= start_id)
+  if (start_offset < 0 || length <= 0 || end_id <= start_id) {
+    ::close(sys_fd);
     return false;
+  }
 
   FILE *fp = fdopen(sys_fd, "rb");
-  if (NULL == fp)
+  if (NULL == fp) {
+    ::close(sys_fd);
     return false;
+  }
 
   if (-1 == fseek(fp, start_offset, SEEK_SET)) {
     fclose(fp);
@@ -295,6 +305,7 @@ bool DictTrie::load_dict_fd(int sys_fd, long start_offset,
     return false;
   }
 
+  std::lock_guard<std::mutex> lock(g_shared_load_mutex);
   SpellingTrie &spl_trie = SpellingTrie::get_instance();
   NGram &ngram = NGram::get_instance();
 
@@ -16,11 +16,10 @@
 
 #include <assert.h>
 #include "../include/lpicache.h"
+#include "../include/stats.h"
 
 namespace ime_pinyin {
 
-LpiCache* LpiCache::instance_ = NULL;
-
 LpiCache::LpiCache() {
   lpi_cache_ = new LmaPsbItem[kFullSplIdStart * kMaxLpiCachePerId];
   lpi_cache_len_ = new uint16[kFullSplIdStart];
@@ -39,17 +38,16 @@ LpiCache::~LpiCache() {
 }
 
 LpiCache& LpiCache::get_instance() {
-  if (NULL == instance_) {
-    instance_ = new LpiCache();
-    assert(NULL != instance_);
-  }
-  return *instance_;
+  static thread_local LpiCache instance;
+  return instance;
 }
 
 bool LpiCache::is_cached(uint16 splid) {
   if (splid >= kFullSplIdStart)
     return false;
-  return lpi_cache_len_[splid] != 0;
+  bool cached = lpi_cache_len_[splid] != 0;
+  stats_add(cached ? kStatLpiCacheHits : kStatLpiCacheMisses);
+  return cached;
 }
 
 size_t LpiCache::put_cache(uint16 splid, LmaPsbItem lpi_items[],
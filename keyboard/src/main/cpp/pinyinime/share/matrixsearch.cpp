@@ -18,10 +18,13 @@
 #include <math.h>
 #include <stdio.h>
 #include <string.h>
+#include <unistd.h>
 #include "../include/lpicache.h"
 #include "../include/matrixsearch.h"
 #include "../include/mystdlib.h"
 #include "../include/ngram.h"
+#include "../include/stats.h"
+#include "../include/trace.h"
 #include "../include/userdict.h"
 
 namespace ime_pinyin {
@@ -147,16 +150,17 @@ bool MatrixSearch::init(const char *fn_sys_dict, const char *fn_usr_dict) {
 
 bool MatrixSearch::init_fd(int sys_fd, long start_offset, long length,
                            const char *fn_usr_dict) {
-  if (NULL == fn_usr_dict)
-    return false;
-
-  if (!alloc_resource())
+  PINYIN_TRACE("IAK:MatrixSearch::init");
+  if (!alloc_resource()) {
+    ::close(sys_fd);
     return false;
+  }
 
   if (!dict_trie_->load_dict_fd(sys_fd, start_offset, length, 1, kSysDictIdEnd))
     return false;
 
-  if (!user_dict_->load_dict(fn_usr_dict, kUserDictIdStart, kUserDictIdEnd)) {
+  if (NULL == fn_usr_dict ||
+      !user_dict_->load_dict(fn_usr_dict, kUserDictIdStart, kUserDictIdEnd)) {
     delete user_dict_;
     user_dict_ = NULL;
   } else {
@@ -417,9 +421,12 @@ void MatrixSearch::del_in_pys(size_t start, size_t len) {
 }
 
 size_t MatrixSearch::search(const char *py, size_t py_len) {
+  PINYIN_TRACE("IAK:MatrixSearch::search");
   if (!inited_ || NULL == py)
     return 0;
 
+  stats_add(kStatSearches);
+
   // If the search Pinyin string is too long, it will be truncated.
   if (py_len > kMaxRowNum - 1)
     py_len = kMaxRowNum - 1;
@@ -603,6 +610,7 @@ size_t MatrixSearch::get_candidate_num() {
 
 char16* MatrixSearch::get_candidate(size_t cand_id, char16 *cand_str,
                                     size_t max_len) {
+  PINYIN_TRACE("IAK:MatrixSearch::get_candidate");
   if (!inited_ || 0 == pys_decoded_len_ || NULL == cand_str)
     return NULL;
 
@@ -772,6 +780,7 @@ bool MatrixSearch::try_add_cand0_to_userdict() {
 //                sentence contains user lemmas, -> hit, and add occuring count
 //                by 1.
 size_t MatrixSearch::choose(size_t cand_id) {
+  PINYIN_TRACE("IAK:MatrixSearch::choose");
   if (!inited_ || 0 == pys_decoded_len_)
     return 0;
 
@@ -927,7 +936,10 @@ bool MatrixSearch::prepare_add_char(char ch) {
       (!spl_parser_->is_valid_to_parse(ch) && ch != '\''))
     return false;
 
-  if (dmi_pool_used_ >= kDmiPoolSize) return false;
+  if (dmi_pool_used_ >= kDmiPoolSize) {
+    stats_add(kStatDmiRejected);
+    return false;
+  }
 
   pys_[pys_decoded_len_] = ch;
   pys_decoded_len_++;
@@ -969,6 +981,7 @@ bool MatrixSearch::add_char(char ch) {
 }
 
 bool MatrixSearch::add_char_qwerty() {
+  PINYIN_TRACE("IAK:MatrixSearch::add_char");
   matrix_[pys_decoded_len_].mtrx_nd_num = 0;
 
   bool spl_matched = false;
@@ -1122,6 +1135,10 @@ bool MatrixSearch::add_char_qwerty() {
   }  // for ext_len
   mtrx_nd_pool_used_ += matrix_[pys_decoded_len_].mtrx_nd_num;
 
+  stats_add(kStatSearchSteps);
+  stats_set_pool(kStatMtrxNdUsed, mtrx_nd_pool_used_, kMtrxNdPoolSize);
+  stats_set_pool(kStatDmiUsed, dmi_pool_used_, kDmiPoolSize);
+
   if (dmi_c_phrase_)
     return true;
 
@@ -1129,6 +1146,7 @@ bool MatrixSearch::add_char_qwerty() {
 }
 
 void MatrixSearch::prepare_candidates() {
+  PINYIN_TRACE("IAK:MatrixSearch::prepare_candidates");
   // Get candiates from the first un-fixed step.
   uint16 lma_size_max = kMaxLemmaSize;
   if (lma_size_max > spl_id_num_ - fixed_hzs_)
@@ -1538,8 +1556,10 @@ size_t MatrixSearch::extend_mtrx_nd(MatrixNode *mtrx_nd, LmaPsbItem lpi_items[],
   assert(NULL != mtrx_nd);
   matrix_[res_row].mtrx_nd_fixed = NULL;
 
-  if (mtrx_nd_pool_used_ >= kMtrxNdPoolSize - kMaxNodeARow)
+  if (mtrx_nd_pool_used_ >= kMtrxNdPoolSize - kMaxNodeARow) {
+    stats_add(kStatMtrxNdRejected);
     return 0;
+  }
 
   if (0 == mtrx_nd->step) {
     // Because the list is sorted, if the source step is 0, it is only
@@ -19,6 +19,7 @@
 #include <stdio.h>
 #include <string.h>
 #include <time.h>
+#include <mutex>
 #include "../include/mystdlib.h"
 #include "../include/ngram.h"
 
@@ -152,8 +153,9 @@ NGram::~NGram() {
 }
 
 NGram& NGram::get_instance() {
-  if (NULL == instance_)
-    instance_ = new NGram();
+  // Created once even when the first decoders open on several threads.
+  static std::once_flag created;
+  std::call_once(created, [] { instance_ = new NGram(); });
   return *instance_;
 }
 
@@ -181,10 +183,38 @@ bool NGram::load_ngram(FILE *fp) {
   if (NULL == fp)
     return false;
 
-  initialized_ = false;
+  uint32 idx_num;
+  if (fread(&idx_num, sizeof(uint32), 1, fp) != 1 )
+    return false;
 
-  if (fread(&idx_num_, sizeof(uint32), 1, fp) != 1 )
+  CODEBOOK_TYPE *lma_freq_idx = static_cast<CODEBOOK_TYPE*>
+                                (malloc(idx_num * sizeof(CODEBOOK_TYPE)));
+  LmaScoreType *freq_codes = static_cast<LmaScoreType*>
+      (malloc(kCodeBookSize * sizeof(LmaScoreType)));
+
+  if (NULL == lma_freq_idx || NULL == freq_codes ||
+      fread(freq_codes, sizeof(LmaScoreType), kCodeBookSize, fp) !=
+      kCodeBookSize ||
+      fread(lma_freq_idx, sizeof(CODEBOOK_TYPE), idx_num, fp) != idx_num) {
+    free(lma_freq_idx);
+    free(freq_codes);
     return false;
+  }
+
+  // Decoders on other threads may be scoring with the tables in use, so they
+  // are never replaced: the same tables again succeed, different ones fail.
+  if (initialized_) {
+    bool same = idx_num == idx_num_ &&
+        memcmp(freq_codes, freq_codes_,
+               kCodeBookSize * sizeof(LmaScoreType)) == 0 &&
+        memcmp(lma_freq_idx, lma_freq_idx_,
+               idx_num * sizeof(CODEBOOK_TYPE)) == 0;
+    free(lma_freq_idx);
+    free(freq_codes);
+    return same;
+  }
+
+  initialized_ = false;
 
   if (NULL != lma_freq_idx_)
     free(lma_freq_idx_);
@@ -192,20 +222,9 @@ bool NGram::load_ngram(FILE *fp) {
   if (NULL != freq_codes_)
     free(freq_codes_);
 
-  lma_freq_idx_ = static_cast<CODEBOOK_TYPE*>
-                  (malloc(idx_num_ * sizeof(CODEBOOK_TYPE)));
-  freq_codes_ = static_cast<LmaScoreType*>
-      (malloc(kCodeBookSize * sizeof(LmaScoreType)));
-
-  if (NULL == lma_freq_idx_ || NULL == freq_codes_)
-    return false;
-
-  if (fread(freq_codes_, sizeof(LmaScoreType), kCodeBookSize, fp) !=
-      kCodeBookSize)
-    return false;
-
-  if (fread(lma_freq_idx_, sizeof(CODEBOOK_TYPE), idx_num_, fp) != idx_num_)
-    return false;
+  idx_num_ = idx_num;
+  lma_freq_idx_ = lma_freq_idx;
+  freq_codes_ = freq_codes;
 
   initialized_ = true;
 
@@ -228,7 +247,7 @@ void NGram::set_total_freq_none_sys(size_t freq_none_sys) {
 // The caller makes sure this oject is initialized.
 float NGram::get_uni_psb(LemmaIdType lma_id) {
   return  static_cast<float>(freq_codes_[lma_freq_idx_[lma_id]]) +
-      sys_score_compensation_;
+      sys_score_compensation_.load(std::memory_order_relaxed);
 }
 
 float NGram::convert_psb_to_score(double psb) {
@@ -19,6 +19,7 @@
 #include "../include/dicttrie.h"
 #include "../include/matrixsearch.h"
 #include "../include/spellingtrie.h"
+#include "../include/stats.h"
 
 #ifdef __cplusplus
 extern "C" {
@@ -181,6 +182,21 @@ extern "C" {
     spl_trie.szm_enable_ym(enable);
   }
 
+  size_t im_get_stats(int64 *stats, size_t stats_max) {
+    if (NULL == stats)
+      return 0;
+    int64 all[kStatCount];
+    stats_snapshot(all);
+    size_t num = stats_max < kStatCount ? stats_max : kStatCount;
+    for (size_t pos = 0; pos < num; pos++)
+      stats[pos] = all[pos];
+    return num;
+  }
+
+  void im_reset_stats() {
+    stats_reset();
+  }
+
 #ifdef __cplusplus
 }
 #endif
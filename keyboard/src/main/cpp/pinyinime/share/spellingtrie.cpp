@@ -17,6 +17,7 @@
 #include <stdio.h>
 #include <string.h>
 #include <assert.h>
+#include <mutex>
 #include "../include/dictdef.h"
 
 #ifdef ___BUILD_MODEL___
@@ -229,9 +230,9 @@ const SpellingTrie* SpellingTrie::get_cpinstance() {
 }
 
 SpellingTrie& SpellingTrie::get_instance() {
-  if (NULL == instance_)
-    instance_ = new SpellingTrie();
-
+  // Created once even when the first decoders open on several threads.
+  static std::once_flag created;
+  std::call_once(created, [] { instance_ = new SpellingTrie(); });
   return *instance_;
 }
 
@@ -663,28 +664,57 @@ bool SpellingTrie::load_spl_trie(FILE *fp) {
   if (NULL == fp)
     return false;
 
-  if (fread(&spelling_size_, sizeof(uint32), 1, fp) != 1)
-    return false;
+  uint32 spelling_size, spelling_num;
+  float score_amplifier;
+  unsigned char average_score;
 
-  if (fread(&spelling_num_, sizeof(uint32), 1, fp) != 1)
+  if (fread(&spelling_size, sizeof(uint32), 1, fp) != 1)
     return false;
 
-  if (fread(&score_amplifier_, sizeof(float), 1, fp) != 1)
+  if (fread(&spelling_num, sizeof(uint32), 1, fp) != 1)
     return false;
 
-  if (fread(&average_score_, sizeof(unsigned char), 1, fp) != 1)
+  if (fread(&score_amplifier, sizeof(float), 1, fp) != 1)
     return false;
 
-  if (NULL != spelling_buf_)
-    delete [] spelling_buf_;
+  if (fread(&average_score, sizeof(unsigned char), 1, fp) != 1)
+    return false;
 
-  spelling_buf_ = new char[spelling_size_ * spelling_num_];
-  if (NULL == spelling_buf_)
+  char *spelling_buf = new char[spelling_size * spelling_num];
+  if (NULL == spelling_buf)
     return false;
 
-  if (fread(spelling_buf_, sizeof(char) * spelling_size_,
-            spelling_num_, fp) != spelling_num_)
+  if (fread(spelling_buf, sizeof(char) * spelling_size,
+            spelling_num, fp) != spelling_num) {
+    delete [] spelling_buf;
     return false;
+  }
+
+  // The trie is shared by every decoder in the process and other threads may
+  // be reading it, so once built it stays: loading the same spellings again
+  // keeps it, and different ones fail.
+  // Only get_spelling_str() and get_spelling_str16(uint16) write to it, into
+  // splstr_queried_/splstr16_queried_. The user dictionary calls them, which is
+  // safe only because the keyboard's decoder is the one with a user dictionary;
+  // batch instances have none.
+  qsort(spelling_buf, spelling_num, spelling_size, compare_spl);
+  if (NULL != root_) {
+    bool same = spelling_size == spelling_size_ &&
+        spelling_num == spelling_num_ &&
+        score_amplifier == score_amplifier_ &&
+        average_score == average_score_ &&
+        memcmp(spelling_buf, spelling_buf_, spelling_size * spelling_num) == 0;
+    delete [] spelling_buf;
+    return same;
+  }
+
+  if (NULL != spelling_buf_)
+    delete [] spelling_buf_;
+  spelling_buf_ = spelling_buf;
+  spelling_size_ = spelling_size;
+  spelling_num_ = spelling_num;
+  score_amplifier_ = score_amplifier;
+  average_score_ = average_score;
 
   return construct(spelling_buf_, spelling_size_, spelling_num_,
                    score_amplifier_, average_score_);
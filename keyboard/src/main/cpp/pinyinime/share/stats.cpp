@@ -0,0 +1,77 @@
+#include <mutex>
+#include "../include/stats.h"
+
+namespace ime_pinyin {
+
+// Guards the list of live threads and the counts left by exited ones.
+static std::mutex g_stats_mutex;
+static ThreadStats *g_stats_threads = NULL;
+static int64 g_stats_exited[kStatCount];
+
+thread_local ThreadStats g_thread_stats;
+
+static bool is_pool_stat(int stat) {
+  return (stat >= kStatMtrxNdUsed && stat <= kStatMtrxNdPoolSize) ||
+         (stat >= kStatDmiUsed && stat <= kStatDmiPoolSize);
+}
+
+static bool is_pool_size(int stat) {
+  return stat == kStatMtrxNdPoolSize || stat == kStatDmiPoolSize;
+}
+
+static void stats_merge(int64 *into, const ThreadStats &from) {
+  for (int i = 0; i < kStatCount; i++) {
+    int64 value = from.values[i].load(std::memory_order_relaxed);
+    if (!is_pool_stat(i))
+      into[i] += value;
+    else if (into[i] < value)
+      into[i] = value;
+  }
+}
+
+ThreadStats::ThreadStats() {
+  for (int i = 0; i < kStatCount; i++)
+    values[i].store(0, std::memory_order_relaxed);
+  std::lock_guard<std::mutex> lock(g_stats_mutex);
+  prev = NULL;
+  next = g_stats_threads;
+  if (NULL != next)
+    next->prev = this;
+  g_stats_threads = this;
+}
+
+ThreadStats::~ThreadStats() {
+  std::lock_guard<std::mutex> lock(g_stats_mutex);
+  // The thread's pools go with it, only its counts and peaks remain.
+  values[kStatMtrxNdUsed].store(0, std::memory_order_relaxed);
+  values[kStatDmiUsed].store(0, std::memory_order_relaxed);
+  stats_merge(g_stats_exited, *this);
+  if (NULL != prev)
+    prev->next = next;
+  else
+    g_stats_threads = next;
+  if (NULL != next)
+    next->prev = prev;
+}
+
+void stats_snapshot(int64 *out) {
+  std::lock_guard<std::mutex> lock(g_stats_mutex);
+  for (int i = 0; i < kStatCount; i++)
+    out[i] = g_stats_exited[i];
+  for (ThreadStats *t = g_stats_threads; NULL != t; t = t->next)
+    stats_merge(out, *t);
+}
+
+void stats_reset() {
+  std::lock_guard<std::mutex> lock(g_stats_mutex);
+  // Counts a thread adds while this runs may survive the reset.
+  for (int i = 0; i < kStatCount; i++) {
+    if (is_pool_size(i))
+      continue;
+    g_stats_exited[i] = 0;
+    for (ThreadStats *t = g_stats_threads; NULL != t; t = t->next)
+      t->values[i].store(0, std::memory_order_relaxed);
+  }
+}
+
+}  // namespace ime_pinyin
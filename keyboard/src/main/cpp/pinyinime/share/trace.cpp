@@ -0,0 +1,35 @@
+#include "../include/trace.h"
+
+#ifdef __ANDROID__
+#include <dlfcn.h>
+
+namespace ime_pinyin {
+
+typedef void (*TraceBeginFn)(const char *name);
+typedef void (*TraceEndFn)();
+
+TraceIsEnabledFn g_trace_is_enabled = NULL;
+static TraceBeginFn g_trace_begin = NULL;
+static TraceEndFn g_trace_end = NULL;
+
+// Runs when the library is loaded, before any search.
+__attribute__((constructor)) static void trace_init() {
+  void *lib = dlopen("libandroid.so", RTLD_NOW | RTLD_LOCAL);
+  if (NULL == lib) return;
+  g_trace_begin = reinterpret_cast<TraceBeginFn>(dlsym(lib, "ATrace_beginSection"));
+  g_trace_end = reinterpret_cast<TraceEndFn>(dlsym(lib, "ATrace_endSection"));
+  if (NULL != g_trace_begin && NULL != g_trace_end) {
+    g_trace_is_enabled = reinterpret_cast<TraceIsEnabledFn>(dlsym(lib, "ATrace_isEnabled"));
+  }
+}
+
+void trace_begin(const char *name) {
+  g_trace_begin(name);
+}
+
+void trace_end() {
+  g_trace_end();
+}
+
+}  // namespace ime_pinyin
+#endif
@@ -20,7 +20,8 @@
 #include <stdio.h>
 #include <string.h>
 #include <stdlib.h>
-#include <android/log.h>
+#include "../include/log.h"
+#include "../include/stats.h"
 #include <unistd.h>
 #include <fcntl.h>
 #include <sys/stat.h>
@@ -1482,14 +1483,18 @@ bool UserDict::cache_hit(UserDictSearchable *searchable,
                          uint32 *offset, uint32 *length) {
   bool hit = load_miss_cache(searchable);
   if (hit) {
+    stats_add(kStatUsrCacheHits);
+    stats_add(kStatUsrMissCacheHits);
     *offset = 0;
     *length = 0;
     return true;
   }
   hit = load_cache(searchable, offset, length);
   if (hit) {
+    stats_add(kStatUsrCacheHits);
     return true;
   }
+  stats_add(kStatUsrCacheMisses);
   return false;
 }
 
@@ -1,21 +1,75 @@
 package com.carbit.inappkeyboard.keyboard;
 
 import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
 import android.util.AttributeSet;
-import android.view.LayoutInflater;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
 import android.view.View;
-import android.widget.Button;
-import android.widget.HorizontalScrollView;
-import android.widget.LinearLayout;
+import android.view.ViewConfiguration;
+import android.widget.OverScroller;
 
+import androidx.annotation.VisibleForTesting;
+
+import java.util.Collections;
 import java.util.List;
 
 /**
- * A very small candidate bar (no RecyclerView) for IME-like suggestions.
+ * A single-line, custom-drawn candidate strip (no child views, no RecyclerView).
+ *
+ * Only candidates inside the viewport plus a small overscan are measured and drawn. Widths are
+ * cached per string, and positions are laid out incrementally as the strip scrolls, so a
+ * {@link PagedCandidateList} with hundreds of entries is only read page by page.
  */
-public class CandidateBarView extends HorizontalScrollView implements ICandidateBar {
+public class CandidateBarView extends View implements ICandidateBar {
+
+    /** Lets a host (e.g. {@link InAppKeyboardPanelView}) show the candidates in a larger view. */
+    public interface OnExpandListener {
+        /** The expand button at the end of the strip was tapped. */
+        void onExpandClicked();
+
+        /** Candidates were replaced or cleared; an expanded view should follow. */
+        void onCandidatesChanged();
+    }
+
+    private static final int INITIAL_CAPACITY = 32;
+
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint pressedPaint = new Paint();
+    private final Paint dividerPaint = new Paint();
+    private final TextWidthCache widthCache = new TextWidthCache(256);
+    private final OverScroller scroller;
+    private final int touchSlop;
+    private final int minFlingVelocity;
+    private final int maxFlingVelocity;
 
-    private final LinearLayout container;
+    private final int itemPadding;
+    private final int minItemWidth;
+    private final int overscan;
+    private final int verticalPadding;
+    private final int expandButtonWidth;
+
+    private List<String> candidates = Collections.emptyList();
+    private OnCandidateClickListener listener;
+    private OnExpandListener expandListener;
+    private boolean expanded = false;
+    private KeyboardMetrics metrics;
+
+    // Incremental layout: left edge + width of the first laidOutCount candidates.
+    private float[] itemLeft = new float[INITIAL_CAPACITY];
+    private float[] itemWidth = new float[INITIAL_CAPACITY];
+    private int laidOutCount = 0;
+    private float contentRight = 0f;
+
+    private VelocityTracker velocityTracker;
+    private float downX;
+    private float lastX;
+    private boolean dragging;
+    private int pressedIndex = -1;
+    private boolean expandPressed;
 
     public CandidateBarView(Context context) {
         this(context, null);
@@ -24,40 +78,311 @@ public class CandidateBarView extends HorizontalScrollView implements ICandidate
     public CandidateBarView(Context context, AttributeSet attrs) {
         super(context, attrs);
         setHorizontalScrollBarEnabled(false);
-        LayoutInflater.from(context).inflate(R.layout.candidate_bar, this, true);
-        container = findViewById(R.id.candidates_container);
+
+        textPaint.setColor(Color.WHITE);
+        textPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 18,
+                getResources().getDisplayMetrics()));
+        pressedPaint.setColor(Color.parseColor("#8E7CC3"));
+        dividerPaint.setColor(Color.parseColor("#44FFFFFF"));
+
+        itemPadding = dp(12);
+        minItemWidth = dp(40);
+        overscan = dp(96);
+        verticalPadding = dp(8);
+        expandButtonWidth = dp(44);
+
+        scroller = new OverScroller(context);
+        ViewConfiguration vc = ViewConfiguration.get(context);
+        touchSlop = vc.getScaledTouchSlop();
+        minFlingVelocity = vc.getScaledMinimumFlingVelocity();
+        maxFlingVelocity = vc.getScaledMaximumFlingVelocity();
     }
 
     @Override
     public void setCandidates(List<String> candidates, final OnCandidateClickListener listener) {
-        container.removeAllViews();
+        scroller.forceFinished(true);
+        this.candidates = candidates != null ? candidates : Collections.<String>emptyList();
+        this.listener = listener;
+        resetLayout();
 
-        if (candidates == null || candidates.isEmpty()) {
+        if (this.candidates.isEmpty()) {
             setVisibility(INVISIBLE);
-            return;
-        }
-
-        for (int index = 0; index < candidates.size(); index++) {
-            final String cand = candidates.get(index);
-            final int idx = index;
-            Button btn = new Button(getContext());
-            btn.setText(cand);
-            btn.setAllCaps(false);
-            btn.setOnClickListener(new View.OnClickListener() {
-                @Override
-                public void onClick(View v) {
-                    listener.onClick(idx, cand);
-                }
-            });
-            container.addView(btn);
+        } else {
+            setVisibility(VISIBLE);
+            invalidate();
         }
-
-        setVisibility(VISIBLE);
+        if (expandListener != null) expandListener.onCandidatesChanged();
     }
 
     @Override
     public void clear() {
-        container.removeAllViews();
+        scroller.forceFinished(true);
+        candidates = Collections.emptyList();
+        listener = null;
+        resetLayout();
         setVisibility(INVISIBLE);
+        if (expandListener != null) expandListener.onCandidatesChanged();
+    }
+
+    public List<String> getCandidates() {
+        return candidates;
+    }
+
+    public OnCandidateClickListener getCandidateClickListener() {
+        return listener;
+    }
+
+    public void setOnExpandListener(OnExpandListener listener) {
+        this.expandListener = listener;
+        invalidate();
+    }
+
+    /** Flip the expand button glyph; the host owns the actual expanded view. */
+    public void setExpanded(boolean expanded) {
+        if (this.expanded == expanded) return;
+        this.expanded = expanded;
+        invalidate();
+    }
+
+    public boolean isExpanded() {
+        return expanded;
+    }
+
+    /** Record draw time into {@code metrics}; {@code null} turns recording off. */
+    void setMetrics(KeyboardMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @VisibleForTesting
+    public int getCandidateCount() {
+        return candidates.size();
+    }
+
+    /** Behaves like a tap on candidate {@code index}. */
+    @VisibleForTesting
+    public boolean performCandidateClick(int index) {
+        if (listener == null || index < 0 || index >= candidates.size()) return false;
+        listener.onClick(index, candidates.get(index));
+        return true;
+    }
+
+    private void resetLayout() {
+        laidOutCount = 0;
+        contentRight = 0f;
+        pressedIndex = -1;
+        dragging = false;
+        scrollTo(0, 0);
+    }
+
+    /** Measure and place candidates until the laid-out content reaches {@code untilX}. */
+    private void layoutUntil(float untilX) {
+        int size = candidates.size();
+        while (laidOutCount < size && contentRight < untilX) {
+            if (laidOutCount == itemLeft.length) growLayoutArrays();
+            String text = candidates.get(laidOutCount);
+            float w = Math.max(minItemWidth, widthCache.measure(textPaint, text) + 2 * itemPadding);
+            itemLeft[laidOutCount] = contentRight;
+            itemWidth[laidOutCount] = w;
+            contentRight += w;
+            laidOutCount++;
+        }
+    }
+
+    private void growLayoutArrays() {
+        int n = itemLeft.length * 2;
+        float[] left = new float[n];
+        float[] width = new float[n];
+        System.arraycopy(itemLeft, 0, left, 0, laidOutCount);
+        System.arraycopy(itemWidth, 0, width, 0, laidOutCount);
+        itemLeft = left;
+        itemWidth = width;
+    }
+
+    /** Width available to candidates (excludes the expand button). */
+    private int viewportWidth() {
+        return expandListener != null ? Math.max(0, getWidth() - expandButtonWidth) : getWidth();
+    }
+
+    private int maxScrollX() {
+        return Math.max(0, (int) Math.ceil(contentRight) - viewportWidth());
+    }
+
+    /** Index of the laid-out candidate under content coordinate {@code x}, or -1. */
+    private int indexAt(float x) {
+        int lo = 0;
+        int hi = laidOutCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (x < itemLeft[mid]) hi = mid - 1;
+            else if (x >= itemLeft[mid] + itemWidth[mid]) lo = mid + 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        Paint.FontMetrics fm = textPaint.getFontMetrics();
+        int desiredHeight = (int) Math.ceil(fm.descent - fm.ascent) + 2 * verticalPadding;
+        setMeasuredDimension(
+                getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec),
+                resolveSize(Math.max(desiredHeight, getSuggestedMinimumHeight()), heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (candidates.isEmpty()) return;
+        long t0 = metrics != null ? System.nanoTime() : 0;
+
+        int scrollX = getScrollX();
+        float viewportRight = scrollX + viewportWidth();
+        layoutUntil(viewportRight + overscan);
+
+        int first = indexAt(scrollX);
+        if (first < 0) first = 0;
+        float h = getHeight();
+        float baseline = (h - (textPaint.descent() + textPaint.ascent())) / 2f;
+
+        canvas.save();
+        canvas.clipRect(scrollX, 0, viewportRight, h);
+        for (int i = first; i < laidOutCount; i++) {
+            float left = itemLeft[i];
+            if (left >= viewportRight) break;
+            float w = itemWidth[i];
+            if (i == pressedIndex) {
+                canvas.drawRect(left, 0, left + w, h, pressedPaint);
+            }
+            String text = candidates.get(i);
+            float textWidth = widthCache.measure(textPaint, text);
+            canvas.drawText(text, left + (w - textWidth) / 2f, baseline, textPaint);
+            if (i + 1 < candidates.size()) {
+                canvas.drawRect(left + w - 1, verticalPadding, left + w, h - verticalPadding, dividerPaint);
+            }
+        }
+        canvas.restore();
+
+        if (expandListener != null) {
+            float left = viewportRight;
+            if (expandPressed) canvas.drawRect(left, 0, left + expandButtonWidth, h, pressedPaint);
+            canvas.drawRect(left, verticalPadding, left + 1, h - verticalPadding, dividerPaint);
+            String glyph = expanded ? "\u25B4" : "\u25BE";
+            float glyphWidth = widthCache.measure(textPaint, glyph);
+            canvas.drawText(glyph, left + (expandButtonWidth - glyphWidth) / 2f, baseline, textPaint);
+        }
+        if (metrics != null) metrics.record(KeyboardMetrics.Stage.CANDIDATE_RENDER, System.nanoTime() - t0);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (candidates.isEmpty()) return false;
+        if (velocityTracker == null) velocityTracker = VelocityTracker.obtain();
+        velocityTracker.addMovement(event);
+
+        float x = event.getX();
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                scroller.forceFinished(true);
+                downX = x;
+                lastX = x;
+                dragging = false;
+                if (x >= viewportWidth()) {
+                    expandPressed = expandListener != null;
+                    pressedIndex = -1;
+                } else {
+                    pressedIndex = indexAt(x + getScrollX());
+                }
+                invalidate();
+                return true;
+            case MotionEvent.ACTION_MOVE: {
+                if (expandPressed) return true;
+                if (!dragging && Math.abs(x - downX) > touchSlop) {
+                    dragging = true;
+                    pressedIndex = -1;
+                    if (getParent() != null) getParent().requestDisallowInterceptTouchEvent(true);
+                }
+                if (dragging) {
+                    int dx = (int) (lastX - x);
+                    layoutUntil(getScrollX() + dx + viewportWidth() + overscan);
+                    scrollTo(clamp(getScrollX() + dx, 0, maxScrollX()), 0);
+                    invalidate();
+                }
+                lastX = x;
+                return true;
+            }
+            case MotionEvent.ACTION_UP: {
+                int tapped = pressedIndex;
+                boolean expandTapped = expandPressed && x >= viewportWidth();
+                if (dragging) {
+                    velocityTracker.computeCurrentVelocity(1000, maxFlingVelocity);
+                    int vx = (int) velocityTracker.getXVelocity();
+                    if (Math.abs(vx) > minFlingVelocity) {
+                        // Upper bound is open-ended: more candidates are laid out while flinging.
+                        scroller.fling(getScrollX(), 0, -vx, 0, 0, Integer.MAX_VALUE / 2, 0, 0);
+                        postInvalidateOnAnimation();
+                    }
+                }
+                recycleTouchState();
+                invalidate();
+                if (tapped >= 0) performCandidateClick(tapped);
+                if (expandTapped && expandListener != null) expandListener.onExpandClicked();
+                return true;
+            }
+            case MotionEvent.ACTION_CANCEL:
+                recycleTouchState();
+                invalidate();
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    private void recycleTouchState() {
+        dragging = false;
+        pressedIndex = -1;
+        expandPressed = false;
+        if (velocityTracker != null) {
+            velocityTracker.recycle();
+            velocityTracker = null;
+        }
+    }
+
+    @Override
+    public void computeScroll() {
+        if (!scroller.computeScrollOffset()) return;
+        int target = scroller.getCurrX();
+        layoutUntil(target + viewportWidth() + overscan);
+        int max = maxScrollX();
+        if (target >= max && laidOutCount == candidates.size()) {
+            scroller.forceFinished(true);
+        }
+        scrollTo(clamp(target, 0, max), 0);
+        postInvalidateOnAnimation();
+        HeadlessRenderer.report(this);
+    }
+
+    @Override
+    protected int computeHorizontalScrollRange() {
+        return Math.max(viewportWidth(), (int) contentRight);
+    }
+
+    @Override
+    public void invalidate() {
+        super.invalidate();
+        HeadlessRenderer.report(this);
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        if (changedView == this) HeadlessRenderer.report(this);
+    }
+
+    private static int clamp(int v, int min, int max) {
+        return v < min ? min : (v > max ? max : v);
+    }
+
+    private int dp(int v) {
+        return (int) (v * getResources().getDisplayMetrics().density);
     }
 }
@@ -0,0 +1,333 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.widget.OverScroller;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Scrollable, custom-drawn grid of candidates used by {@link InAppKeyboardPanelView} when the
+ * candidate strip is expanded.
+ *
+ * Candidates are packed into rows of fixed-width columns (long phrases span several columns). Rows
+ * are laid out incrementally as the grid scrolls, so a {@link PagedCandidateList} only loads the
+ * pages that actually come into view. Cell geometry lives in primitive arrays that are reused for
+ * every candidate list; nothing is allocated per cell.
+ */
+public class CandidateGridView extends View {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint pressedPaint = new Paint();
+    private final Paint gridPaint = new Paint();
+    private final TextWidthCache widthCache = new TextWidthCache(512);
+    private final OverScroller scroller;
+    private final int touchSlop;
+    private final int minFlingVelocity;
+    private final int maxFlingVelocity;
+
+    private final int minColumnWidth;
+    private final int rowHeight;
+    private final int cellPadding;
+    private final int overscan;
+
+    private List<String> candidates = Collections.emptyList();
+    private ICandidateBar.OnCandidateClickListener listener;
+
+    private int columns = 1;
+    private float columnWidth;
+
+    // Incremental layout state, reused across candidate lists.
+    private int[] cellRow = new int[INITIAL_CAPACITY];
+    private int[] cellColumn = new int[INITIAL_CAPACITY];
+    private int[] cellSpan = new int[INITIAL_CAPACITY];
+    private int laidOutCount = 0;
+    private int nextRow = 0;
+    private int nextColumn = 0;
+
+    private VelocityTracker velocityTracker;
+    private float downY;
+    private float lastY;
+    private boolean dragging;
+    private int pressedIndex = -1;
+
+    public CandidateGridView(Context context) {
+        this(context, null);
+    }
+
+    public CandidateGridView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        setVerticalScrollBarEnabled(true);
+
+        textPaint.setColor(Color.WHITE);
+        textPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 20,
+                getResources().getDisplayMetrics()));
+        pressedPaint.setColor(Color.parseColor("#8E7CC3"));
+        gridPaint.setColor(Color.parseColor("#33FFFFFF"));
+
+        minColumnWidth = dp(56);
+        rowHeight = dp(48);
+        cellPadding = dp(8);
+        overscan = rowHeight * 2;
+
+        scroller = new OverScroller(context);
+        ViewConfiguration vc = ViewConfiguration.get(context);
+        touchSlop = vc.getScaledTouchSlop();
+        minFlingVelocity = vc.getScaledMinimumFlingVelocity();
+        maxFlingVelocity = vc.getScaledMaximumFlingVelocity();
+    }
+
+    public void setCandidates(List<String> candidates, ICandidateBar.OnCandidateClickListener listener) {
+        scroller.forceFinished(true);
+        this.candidates = candidates != null ? candidates : Collections.<String>emptyList();
+        this.listener = listener;
+        resetLayout();
+        invalidate();
+    }
+
+    public void clear() {
+        setCandidates(null, null);
+    }
+
+    public int getCandidateCount() {
+        return candidates.size();
+    }
+
+    public boolean performCandidateClick(int index) {
+        if (listener == null || index < 0 || index >= candidates.size()) return false;
+        listener.onClick(index, candidates.get(index));
+        return true;
+    }
+
+    private void resetLayout() {
+        laidOutCount = 0;
+        nextRow = 0;
+        nextColumn = 0;
+        pressedIndex = -1;
+        dragging = false;
+        scrollTo(0, 0);
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (w == oldw) return;
+        int usable = Math.max(1, w - getPaddingLeft() - getPaddingRight());
+        columns = Math.max(1, usable / minColumnWidth);
+        columnWidth = usable / (float) columns;
+        // Cell placement depends on the column width; contents stay.
+        resetLayout();
+    }
+
+    /** Place candidates until the laid-out rows cover content y {@code untilY}. */
+    private void layoutUntil(int untilY) {
+        int size = candidates.size();
+        while (laidOutCount < size && nextRow * rowHeight < untilY) {
+            if (laidOutCount == cellRow.length) growLayoutArrays();
+            float w = widthCache.measure(textPaint, candidates.get(laidOutCount)) + 2 * cellPadding;
+            int span = Math.min(columns, Math.max(1, (int) Math.ceil(w / columnWidth)));
+            if (nextColumn + span > columns) {
+                nextRow++;
+                nextColumn = 0;
+            }
+            cellRow[laidOutCount] = nextRow;
+            cellColumn[laidOutCount] = nextColumn;
+            cellSpan[laidOutCount] = span;
+            laidOutCount++;
+            nextColumn += span;
+            if (nextColumn >= columns) {
+                nextRow++;
+                nextColumn = 0;
+            }
+        }
+    }
+
+    private void growLayoutArrays() {
+        int n = cellRow.length * 2;
+        int[] row = new int[n];
+        int[] column = new int[n];
+        int[] span = new int[n];
+        System.arraycopy(cellRow, 0, row, 0, laidOutCount);
+        System.arraycopy(cellColumn, 0, column, 0, laidOutCount);
+        System.arraycopy(cellSpan, 0, span, 0, laidOutCount);
+        cellRow = row;
+        cellColumn = column;
+        cellSpan = span;
+    }
+
+    private int contentHeight() {
+        int rows = nextColumn == 0 ? nextRow : nextRow + 1;
+        return rows * rowHeight + getPaddingTop() + getPaddingBottom();
+    }
+
+    private int maxScrollY() {
+        return Math.max(0, contentHeight() - getHeight());
+    }
+
+    /** First laid-out cell on {@code row} or later. */
+    private int firstIndexOnOrAfterRow(int row) {
+        int lo = 0;
+        int hi = laidOutCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cellRow[mid] < row) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private int indexAt(float x, float contentY) {
+        int row = (int) ((contentY - getPaddingTop()) / rowHeight);
+        if (row < 0) return -1;
+        int column = (int) ((x - getPaddingLeft()) / columnWidth);
+        for (int i = firstIndexOnOrAfterRow(row); i < laidOutCount && cellRow[i] == row; i++) {
+            if (column >= cellColumn[i] && column < cellColumn[i] + cellSpan[i]) return i;
+        }
+        return -1;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (candidates.isEmpty()) return;
+
+        int scrollY = getScrollY();
+        int viewportBottom = scrollY + getHeight();
+        layoutUntil(viewportBottom + overscan);
+
+        int firstRow = Math.max(0, (scrollY - getPaddingTop()) / rowHeight);
+        float baselineOffset = (rowHeight - (textPaint.descent() + textPaint.ascent())) / 2f;
+        int left0 = getPaddingLeft();
+        int top0 = getPaddingTop();
+
+        for (int i = firstIndexOnOrAfterRow(firstRow); i < laidOutCount; i++) {
+            float top = top0 + cellRow[i] * rowHeight;
+            if (top >= viewportBottom) break;
+            float left = left0 + cellColumn[i] * columnWidth;
+            float w = cellSpan[i] * columnWidth;
+            if (i == pressedIndex) {
+                canvas.drawRect(left, top, left + w, top + rowHeight, pressedPaint);
+            }
+            String text = candidates.get(i);
+            float textWidth = widthCache.measure(textPaint, text);
+            canvas.drawText(text, left + (w - textWidth) / 2f, top + baselineOffset, textPaint);
+            canvas.drawRect(left, top + rowHeight - 1, left + w, top + rowHeight, gridPaint);
+            canvas.drawRect(left + w - 1, top, left + w, top + rowHeight, gridPaint);
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (candidates.isEmpty()) return false;
+        if (velocityTracker == null) velocityTracker = VelocityTracker.obtain();
+        velocityTracker.addMovement(event);
+
+        float y = event.getY();
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                scroller.forceFinished(true);
+                downY = y;
+                lastY = y;
+                dragging = false;
+                pressedIndex = indexAt(event.getX(), y + getScrollY());
+                invalidate();
+                return true;
+            case MotionEvent.ACTION_MOVE: {
+                if (!dragging && Math.abs(y - downY) > touchSlop) {
+                    dragging = true;
+                    pressedIndex = -1;
+                    if (getParent() != null) getParent().requestDisallowInterceptTouchEvent(true);
+                }
+                if (dragging) {
+                    int dy = (int) (lastY - y);
+                    layoutUntil(getScrollY() + dy + getHeight() + overscan);
+                    scrollTo(0, clamp(getScrollY() + dy, 0, maxScrollY()));
+                    invalidate();
+                }
+                lastY = y;
+                return true;
+            }
+            case MotionEvent.ACTION_UP: {
+                int tapped = pressedIndex;
+                if (dragging) {
+                    velocityTracker.computeCurrentVelocity(1000, maxFlingVelocity);
+                    int vy = (int) velocityTracker.getYVelocity();
+                    if (Math.abs(vy) > minFlingVelocity) {
+                        // Upper bound is open-ended: more rows are laid out while flinging.
+                        scroller.fling(0, getScrollY(), 0, -vy, 0, 0, 0, Integer.MAX_VALUE / 2);
+                        postInvalidateOnAnimation();
+                    }
+                }
+                recycleTouchState();
+                invalidate();
+                if (tapped >= 0) performCandidateClick(tapped);
+                return true;
+            }
+            case MotionEvent.ACTION_CANCEL:
+                recycleTouchState();
+                invalidate();
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    private void recycleTouchState() {
+        dragging = false;
+        pressedIndex = -1;
+        if (velocityTracker != null) {
+            velocityTracker.recycle();
+            velocityTracker = null;
+        }
+    }
+
+    @Override
+    public void computeScroll() {
+        if (!scroller.computeScrollOffset()) return;
+        int target = scroller.getCurrY();
+        layoutUntil(target + getHeight() + overscan);
+        int max = maxScrollY();
+        if (target >= max && laidOutCount == candidates.size()) {
+            scroller.forceFinished(true);
+        }
+        scrollTo(0, clamp(target, 0, max));
+        postInvalidateOnAnimation();
+        HeadlessRenderer.report(this);
+    }
+
+    @Override
+    protected int computeVerticalScrollRange() {
+        return Math.max(getHeight(), contentHeight());
+    }
+
+    @Override
+    public void invalidate() {
+        super.invalidate();
+        HeadlessRenderer.report(this);
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        if (changedView == this) HeadlessRenderer.report(this);
+    }
+
+    private static int clamp(int v, int min, int max) {
+        return v < min ? min : (v > max ? max : v);
+    }
+
+    private int dp(int v) {
+        return (int) (v * getResources().getDisplayMetrics().density);
+    }
+}
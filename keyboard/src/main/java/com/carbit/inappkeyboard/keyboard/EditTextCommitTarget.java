@@ -1,13 +1,20 @@
 package com.carbit.inappkeyboard.keyboard;
 
+import android.text.Editable;
 import android.widget.EditText;
 
 /**
  * {@link ITextCommitTarget} that writes into an {@link EditText} (or {@link android.widget.AutoCompleteTextView}).
+ *
+ * Inside {@link #beginBatchEdit()}/{@link #endBatchEdit()} edits are coalesced into a
+ * {@link PendingEdit} and applied as a single {@link Editable#replace}, so TextWatchers, span
+ * updates and relayout happen once per batch instead of once per character.
  */
 public final class EditTextCommitTarget implements ITextCommitTarget {
 
     private final EditText editText;
+    private final PendingEdit pending = new PendingEdit();
+    private int batchDepth = 0;
 
     public EditTextCommitTarget(EditText editText) {
         this.editText = editText;
@@ -16,6 +23,10 @@ public final class EditTextCommitTarget implements ITextCommitTarget {
     @Override
     public void insert(String text) {
         if (editText == null || text == null) return;
+        if (batchDepth > 0) {
+            pending.insert(text);
+            return;
+        }
         int start = editText.getSelectionStart();
         int end = editText.getSelectionEnd();
         if (start < 0) start = editText.getText().length();
@@ -26,6 +37,10 @@ public final class EditTextCommitTarget implements ITextCommitTarget {
     @Override
     public void deleteLastChar(int count) {
         if (editText == null || count <= 0) return;
+        if (batchDepth > 0) {
+            pending.deleteBefore(count);
+            return;
+        }
         int start = editText.getSelectionStart();
         int end = editText.getSelectionEnd();
         if (start < 0) start = editText.getText().length();
@@ -37,4 +52,52 @@ public final class EditTextCommitTarget implements ITextCommitTarget {
             editText.getText().delete(deleteFrom, to);
         }
     }
+
+    @Override
+    public CharSequence getTextBeforeCursor(int n) {
+        if (editText == null || n <= 0) return null;
+        Editable text = editText.getText();
+        int start = editText.getSelectionStart();
+        int end = editText.getSelectionEnd();
+        if (start < 0) start = text.length();
+        if (end < 0) end = start;
+        int from = Math.min(start, end);
+        if (pending.isEmpty()) return text.subSequence(Math.max(0, from - n), from);
+        int reach = n + pending.deleteCount();
+        return pending.applyTo(text.subSequence(Math.max(0, from - reach), from), n);
+    }
+
+    @Override
+    public void beginBatchEdit() {
+        if (editText == null) return;
+        if (batchDepth++ == 0) editText.beginBatchEdit();
+    }
+
+    @Override
+    public void endBatchEdit() {
+        if (editText == null || batchDepth == 0) return;
+        if (--batchDepth > 0) return;
+        try {
+            applyPending();
+        } finally {
+            editText.endBatchEdit();
+        }
+    }
+
+    private void applyPending() {
+        if (pending.isEmpty()) return;
+        Editable text = editText.getText();
+        int start = editText.getSelectionStart();
+        int end = editText.getSelectionEnd();
+        if (start < 0) start = text.length();
+        if (end < 0) end = start;
+        int from = Math.min(start, end);
+        int to = Math.max(start, end);
+        int replaceFrom = Math.max(0, from - pending.deleteCount());
+        CharSequence insert = pending.text();
+        if (replaceFrom != to || insert.length() > 0) {
+            text.replace(replaceFrom, to, insert);
+        }
+        pending.clear();
+    }
 }
@@ -0,0 +1,50 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import android.view.Choreographer;
+
+/**
+ * Coalesces "something changed" notifications into at most one update per display frame.
+ *
+ * Must be used from a Looper thread (normally the UI thread). {@link #markDirty()} is cheap and
+ * idempotent; the update runs from the next {@link Choreographer} frame callback, or right away
+ * through {@link #flush()}.
+ */
+final class FrameUpdateScheduler implements Choreographer.FrameCallback {
+
+    private final Runnable update;
+    private boolean scheduled = false;
+
+    FrameUpdateScheduler(Runnable update) {
+        this.update = update;
+    }
+
+    void markDirty() {
+        if (scheduled) return;
+        scheduled = true;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    boolean isDirty() {
+        return scheduled;
+    }
+
+    /** Run a pending update now instead of waiting for the next frame. */
+    void flush() {
+        if (!scheduled) return;
+        cancel();
+        update.run();
+    }
+
+    void cancel() {
+        if (!scheduled) return;
+        scheduled = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!scheduled) return;
+        scheduled = false;
+        update.run();
+    }
+}
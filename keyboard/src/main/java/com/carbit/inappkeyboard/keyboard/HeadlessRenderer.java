@@ -0,0 +1,157 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.Region;
+import android.view.Surface;
+import android.view.View;
+import android.view.ViewParent;
+
+/**
+ * Renders a view tree that is not attached to a window into a {@link Bitmap} or {@link Surface},
+ * tracking exactly which regions changed since the previous frame.
+ *
+ * Detached views don't propagate invalidation, so parts that change on their own (key press
+ * state, popups, the candidate strip) call {@link #report(View)}; it finds the nearest headless
+ * root above them and adds their bounds to its damage. Outside headless mode the walk finds no
+ * renderer and nothing is recorded.
+ */
+final class HeadlessRenderer {
+
+    /** A view that can be the root of headless rendering. */
+    interface Host {
+        /** The active renderer, or {@code null} when the view is drawn by a window as usual. */
+        HeadlessRenderer headlessRenderer();
+    }
+
+    private final View root;
+    private final Region damage = new Region();
+    private final Rect bounds = new Rect();
+    private final Rect scratch = new Rect();
+    private final Canvas bitmapCanvas = new Canvas();
+    private InAppKeyboardView.OnDamageListener listener;
+    private int width;
+    private int height;
+
+    HeadlessRenderer(View root) {
+        this.root = root;
+    }
+
+    /** Add {@code view}'s bounds to the damage of the headless root above it, if any. */
+    static void report(View view) {
+        HeadlessRenderer renderer = find(view);
+        if (renderer != null) renderer.damage(view);
+    }
+
+    /** Renderer of the nearest headless root at or above {@code view}, or {@code null}. */
+    static HeadlessRenderer find(View view) {
+        View v = view;
+        while (v != null) {
+            if (v instanceof Host) {
+                HeadlessRenderer renderer = ((Host) v).headlessRenderer();
+                if (renderer != null) return renderer;
+            }
+            ViewParent p = v.getParent();
+            v = p instanceof View ? (View) p : null;
+        }
+        return null;
+    }
+
+    void setOnDamageListener(InAppKeyboardView.OnDamageListener listener) {
+        this.listener = listener;
+    }
+
+    void setSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+        layoutRoot();
+    }
+
+    /** Damage the bounds of {@code view}, a descendant of the root (or the root itself). */
+    void damage(View view) {
+        damage(view, 0, 0, view.getWidth(), view.getHeight());
+    }
+
+    /** Damage a rect given in {@code view}'s coordinates. */
+    void damage(View view, int left, int top, int right, int bottom) {
+        int x = 0;
+        int y = 0;
+        View v = view;
+        while (v != root) {
+            ViewParent p = v.getParent();
+            if (!(p instanceof View)) return;
+            View parent = (View) p;
+            x += v.getLeft() - parent.getScrollX();
+            y += v.getTop() - parent.getScrollY();
+            v = parent;
+        }
+        damage(x + left, y + top, x + right, y + bottom);
+    }
+
+    void damage(int left, int top, int right, int bottom) {
+        scratch.set(Math.max(0, left), Math.max(0, top), Math.min(width, right), Math.min(height, bottom));
+        if (scratch.isEmpty()) return;
+        boolean wasEmpty = damage.isEmpty();
+        damage.union(scratch);
+        if (wasEmpty && listener != null) listener.onDamage(root);
+    }
+
+    void damageAll() {
+        damage(0, 0, width, height);
+    }
+
+    boolean render(Bitmap bitmap, Region outDamage) {
+        if (!prepare(outDamage)) return false;
+        bitmapCanvas.setBitmap(bitmap);
+        try {
+            draw(bitmapCanvas, bounds);
+        } finally {
+            bitmapCanvas.setBitmap(null);
+        }
+        return true;
+    }
+
+    boolean render(Surface surface, Region outDamage) {
+        if (!prepare(outDamage)) return false;
+        // The surface may widen the rect when it cannot keep the previous buffer; redraw all of it.
+        scratch.set(bounds);
+        Canvas canvas = surface.lockCanvas(scratch);
+        try {
+            draw(canvas, scratch);
+        } finally {
+            surface.unlockCanvasAndPost(canvas);
+        }
+        return true;
+    }
+
+    private boolean prepare(Region outDamage) {
+        if (root.isLayoutRequested() || root.getWidth() != width || root.getHeight() != height) {
+            layoutRoot();
+        }
+        if (damage.isEmpty()) {
+            if (outDamage != null) outDamage.setEmpty();
+            return false;
+        }
+        damage.getBounds(bounds);
+        if (outDamage != null) outDamage.set(damage);
+        damage.setEmpty();
+        return true;
+    }
+
+    private void layoutRoot() {
+        root.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+        root.layout(0, 0, width, height);
+        damageAll();
+    }
+
+    private void draw(Canvas canvas, Rect clip) {
+        canvas.save();
+        canvas.clipRect(clip);
+        canvas.drawColor(0, PorterDuff.Mode.CLEAR);
+        root.draw(canvas);
+        canvas.restore();
+    }
+}
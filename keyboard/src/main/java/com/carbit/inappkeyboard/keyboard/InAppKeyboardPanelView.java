@@ -1,21 +1,33 @@
 package com.carbit.inappkeyboard.keyboard;
 
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Region;
 import android.util.AttributeSet;
+import android.view.Surface;
 import android.view.View;
 import android.widget.EditText;
 import android.widget.FrameLayout;
 import android.widget.LinearLayout;
 
+import java.util.List;
+
 /**
  * A convenience composite view: CandidateBarView + InAppKeyboardView.
  *
  * Goal: make it trivial for consumers to drop a single view into XML and bind it to an EditText.
+ *
+ * The candidate strip can be expanded into a {@link CandidateGridView} that temporarily covers the
+ * key area. The keyboard is only made invisible (it keeps its size and keys), so expanding and
+ * collapsing never rebuilds it.
  */
-public class InAppKeyboardPanelView extends LinearLayout {
+public class InAppKeyboardPanelView extends LinearLayout implements HeadlessRenderer.Host {
 
     private final CandidateBarView candidateBarView;
+    private final CandidateGridView candidateGridView;
     private final InAppKeyboardView keyboardView;
+    private boolean candidatesExpanded = false;
+    private HeadlessRenderer headlessRenderer;
 
     public InAppKeyboardPanelView(Context context) {
         this(context, null);
@@ -49,6 +61,31 @@ public class InAppKeyboardPanelView extends LinearLayout {
         );
         keyboardContainer.addView(keyboardView, kvParams);
 
+        // Same container as the keys: MATCH_PARENT picks up the (invisible) keyboard's height.
+        this.candidateGridView = new CandidateGridView(context);
+        candidateGridView.setVisibility(View.GONE);
+        keyboardContainer.addView(candidateGridView, new FrameLayout.LayoutParams(
+                LayoutParams.MATCH_PARENT,
+                LayoutParams.MATCH_PARENT
+        ));
+
+        candidateBarView.setOnExpandListener(new CandidateBarView.OnExpandListener() {
+            @Override
+            public void onExpandClicked() {
+                setCandidatesExpanded(!candidatesExpanded);
+            }
+
+            @Override
+            public void onCandidatesChanged() {
+                if (!candidatesExpanded) return;
+                if (candidateBarView.getCandidates().isEmpty()) {
+                    setCandidatesExpanded(false);
+                } else {
+                    bindGridToBar();
+                }
+            }
+        });
+
         addView(candidateBarView, new LayoutParams(LayoutParams.MATCH_PARENT, candidateBarHeightPx));
         addView(keyboardContainer);
 
@@ -58,6 +95,7 @@ public class InAppKeyboardPanelView extends LinearLayout {
 
     private boolean autoShowOnFocus = true;
     private boolean autoHideOnBlur = true;
+    private boolean keyboardHiddenByGrid = false;
 
     public CandidateBarView getCandidateBarView() {
         return candidateBarView;
@@ -67,6 +105,73 @@ public class InAppKeyboardPanelView extends LinearLayout {
         return keyboardView;
     }
 
+    public CandidateGridView getCandidateGridView() {
+        return candidateGridView;
+    }
+
+    public boolean isCandidatesExpanded() {
+        return candidatesExpanded;
+    }
+
+    /**
+     * Show the current candidates in the grid in place of the keys (or go back to the keys).
+     * Expanding is ignored while there are no candidates.
+     */
+    public void setCandidatesExpanded(boolean expanded) {
+        if (expanded && candidateBarView.getCandidates().isEmpty()) expanded = false;
+        if (candidatesExpanded == expanded) return;
+        candidatesExpanded = expanded;
+        candidateBarView.setExpanded(expanded);
+        if (expanded) {
+            bindGridToBar();
+            candidateGridView.setVisibility(View.VISIBLE);
+            keyboardHiddenByGrid = keyboardView.getVisibility() == View.VISIBLE;
+            if (keyboardHiddenByGrid) keyboardView.setVisibility(View.INVISIBLE);
+        } else {
+            candidateGridView.setVisibility(View.GONE);
+            candidateGridView.clear();
+            if (keyboardHiddenByGrid) keyboardView.setVisibility(View.VISIBLE);
+            keyboardHiddenByGrid = false;
+        }
+    }
+
+    private void bindGridToBar() {
+        List<String> candidates = candidateBarView.getCandidates();
+        final ICandidateBar.OnCandidateClickListener barListener = candidateBarView.getCandidateClickListener();
+        candidateGridView.setCandidates(candidates, new ICandidateBar.OnCandidateClickListener() {
+            @Override
+            public void onClick(int index, String text) {
+                setCandidatesExpanded(false);
+                if (barListener != null) barListener.onClick(index, text);
+            }
+        });
+    }
+
+    /** Headless rendering of the whole panel; see {@link InAppKeyboardView#setHeadlessSize}. */
+    public void setHeadlessSize(int width, int height) {
+        if (headlessRenderer == null) headlessRenderer = new HeadlessRenderer(this);
+        headlessRenderer.setSize(width, height);
+    }
+
+    @Override
+    public HeadlessRenderer headlessRenderer() {
+        return headlessRenderer;
+    }
+
+    public void setOnDamageListener(InAppKeyboardView.OnDamageListener listener) {
+        if (headlessRenderer == null) headlessRenderer = new HeadlessRenderer(this);
+        headlessRenderer.setOnDamageListener(listener);
+    }
+
+    /** Keys, popup and candidate strip changes since the last render; see {@link InAppKeyboardView#renderTo(Bitmap, Region)}. */
+    public boolean renderTo(Bitmap bitmap, Region outDamage) {
+        return headlessRenderer != null && headlessRenderer.render(bitmap, outDamage);
+    }
+
+    public boolean renderTo(Surface surface, Region outDamage) {
+        return headlessRenderer != null && headlessRenderer.render(surface, outDamage);
+    }
+
     public InAppKeyboardView.InputMode getInputMode() {
         return keyboardView.getInputMode();
     }
@@ -130,11 +235,13 @@ public class InAppKeyboardPanelView extends LinearLayout {
         keyboardView.ensureBuilt();
         keyboardView.requestLayout();
         keyboardView.invalidate();
-        keyboardView.setVisibility(View.VISIBLE);
+        if (candidatesExpanded) keyboardHiddenByGrid = true;
+        else keyboardView.setVisibility(View.VISIBLE);
         requestLayout();
     }
 
     public void hide() {
+        setCandidatesExpanded(false);
         keyboardView.setVisibility(View.INVISIBLE);
         candidateBarView.clear();
     }
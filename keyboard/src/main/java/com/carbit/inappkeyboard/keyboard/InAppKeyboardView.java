@@ -2,39 +2,62 @@ package com.carbit.inappkeyboard.keyboard;
 
 import android.content.Context;
 import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Region;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.text.Editable;
 import android.text.InputType;
 import android.util.AttributeSet;
-import android.util.Log;
 import android.view.Gravity;
 import android.view.MotionEvent;
+import android.view.Surface;
 import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.LinearLayout;
+import android.widget.PopupWindow;
 import android.graphics.Color;
+import android.graphics.drawable.ColorDrawable;
 
 import androidx.annotation.VisibleForTesting;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A minimal in-app (non-IME) soft keyboard.
  *
  * Key idea: we do NOT rely on Android's InputMethodService, so this works inside a Presentation
  * shown on a VirtualDisplay (where the system IME often won't appear).
+ *
+ * What keys do is decided by a {@link KeyboardEngine} from {@code :keyboard-core}; this view turns
+ * touches into its keys, shows its layouts and candidates, and times and traces the work.
  */
-public class InAppKeyboardView extends LinearLayout {
-    private static final String TAG = "InAppKeyboardView";
-    private static final boolean DEBUG = true;
+public class InAppKeyboardView extends LinearLayout implements HeadlessRenderer.Host {
+
+    private static final KeyRepeatPolicy.Granularity[] GRANULARITIES = KeyRepeatPolicy.Granularity.values();
 
+    /** The constants of {@link KeyboardEngine.Layout}, in the same order. */
     public enum Layout { EN, ZH_PINYIN, FR, AR, SYMBOLS, NUMERIC }
 
+    /** The constants of {@link KeyboardEngine.InputMode}, in the same order. */
     public enum InputMode { AUTO, TEXT, NUMBER, PASSWORD }
 
+    private static final Layout[] LAYOUTS = Layout.values();
+    private static final KeyboardEngine.Layout[] ENGINE_LAYOUTS = KeyboardEngine.Layout.values();
+    private static final InputMode[] INPUT_MODES = InputMode.values();
+    private static final KeyboardEngine.InputMode[] ENGINE_INPUT_MODES = KeyboardEngine.InputMode.values();
+
     public interface OnLayoutChangedListener {
         void onLayoutChanged(Layout layout);
     }
@@ -51,29 +74,121 @@ public class InAppKeyboardView extends LinearLayout {
         boolean onSpace(Layout layout);
     }
 
+    /** Headless rendering: something changed; call {@code renderTo} to get the new pixels. */
+    public interface OnDamageListener {
+        void onDamage(View root);
+    }
+
     private boolean inputModeLocked = false;
-    private InputMode inputMode = InputMode.AUTO;
 
     private Editable target;
-    private ITextCommitTarget commitTarget;
     private EditText boundEditText;
-    private ICandidateBar candidateBar;
     private PinyinDecoder pinyinDecoder;
-    private PinyinImeSession pinyinSession;
 
     private boolean isLandscape = false;
     private boolean isUltraWide = false;
 
-    private Layout currentLayout = Layout.EN;
-
     private OnLayoutChangedListener onLayoutChangedListener;
     private OnCommitTextListener onCommitTextListener;
     private OnBackspaceListener onBackspaceListener;
     private OnSpaceListener onSpaceListener;
 
-    private boolean shift = false;
+    // Layout, input mode, shift, commit target, candidate bar and pinyin session live here.
+    private final KeyboardEngine engine = new KeyboardEngine(new KeyboardEngine.Host() {
+        @Override
+        public void onLayoutChanged(KeyboardEngine.Layout layout) {
+            onEngineLayoutChanged(LAYOUTS[layout.ordinal()]);
+        }
+
+        @Override
+        public void onCandidatesChanged(KeyboardEngine engine) {
+            candidateUpdates.markDirty();
+        }
+
+        @Override
+        public boolean onCommitText(KeyboardEngine.Layout layout, String text) {
+            return onCommitTextListener != null && onCommitTextListener.onCommitText(LAYOUTS[layout.ordinal()], text);
+        }
+
+        @Override
+        public boolean onBackspace(KeyboardEngine.Layout layout) {
+            return onBackspaceListener != null && onBackspaceListener.onBackspace(LAYOUTS[layout.ordinal()]);
+        }
+
+        @Override
+        public boolean onSpace(KeyboardEngine.Layout layout) {
+            return onSpaceListener != null && onSpaceListener.onSpace(LAYOUTS[layout.ordinal()]);
+        }
+    });
+    private final KeyboardLayouts.Source layoutAssets = new KeyboardLayouts.Source() {
+        @Override
+        public InputStream open(String path) throws IOException {
+            return getContext().getAssets().open(path);
+        }
+    };
+    // Parsed key rows per layout. Size-independent, so resizing never re-parses or rebuilds.
+    private final EnumMap<Layout, List<List<KeyAction>>> layoutModels = new EnumMap<>(Layout.class);
+    private KeyboardTheme theme;
+    private KeyRepeatPolicy keyRepeatPolicy = KeyRepeatPolicy.DEFAULT;
+    private KeyboardMetrics metrics;
+    private KeystrokeTrace.Recorder traceRecorder;
+    // Nesting of our begin/endBatchEdit calls; the outermost end is the commit that gets timed.
+    private int editDepth = 0;
+    // Touches are resolved against key rects, not dispatched to key views. Local multi-touch and
+    // injected remote touches get separate pointer trackers; both feed one ordered queue.
+    private final KeyGeometry keyGeometry = new KeyGeometry();
+    private final KeyEventQueue keyEvents = new KeyEventQueue();
+    private final KeyTouchTracker.Callback touchCallback = new KeyTouchTracker.Callback() {
+        @Override
+        public void onKeyPressed(KeyView key, boolean pressed) {
+            key.setPressed(pressed);
+        }
+
+        @Override
+        public boolean onKeyLongPress(KeyView key) {
+            View popup = currentPopups != null ? currentPopups.get(key.getAction().label) : null;
+            if (popup == null) return false;
+            showPopup(key, popup);
+            return true;
+        }
+    };
+    private final KeyTouchTracker localTouches = new KeyTouchTracker(keyGeometry, keyEvents, touchCallback);
+    private final KeyTouchTracker injectedTouches = new KeyTouchTracker(keyGeometry, keyEvents, touchCallback);
+    private final Runnable touchTimer = new Runnable() {
+        @Override
+        public void run() {
+            localTouches.advanceTo(SystemClock.uptimeMillis());
+            drainKeyEvents();
+            scheduleTouchTimer();
+        }
+    };
+    // Actions of the keys currently on screen, by internal label (for injectKey).
+    private final Map<String, KeyAction> actionsByLabel = new HashMap<>();
+
+    // Long-press popups are built once per layout and reused; showing one only swaps the content.
+    private final EnumMap<Layout, Map<String, View>> popupCache = new EnumMap<>(Layout.class);
+    private Map<String, View> currentPopups;
+    private PopupWindow popupWindow;
+    private HeadlessRenderer headlessRenderer;
+    // Headless mode has no window for the PopupWindow; the popup is drawn over the keys instead.
+    private View headlessPopup;
+    private int headlessPopupX;
+    private int headlessPopupY;
     private final Handler handler = new Handler(Looper.getMainLooper());
 
+    // Candidate UI is rebuilt at most once per frame; composing state and commits stay synchronous.
+    private final FrameUpdateScheduler candidateUpdates = new FrameUpdateScheduler(new Runnable() {
+        @Override
+        public void run() {
+            boolean traced = KeyboardTrace.begin(KeyboardTrace.REFRESH_CANDIDATES);
+            try {
+                engine.refreshCandidates();
+            } finally {
+                KeyboardTrace.end(traced);
+            }
+        }
+    });
+
     public InAppKeyboardView(Context context) {
         this(context, null);
     }
@@ -82,24 +197,33 @@ public class InAppKeyboardView extends LinearLayout {
         super(context, attrs);
         setOrientation(VERTICAL);
         setGravity(Gravity.CENTER_HORIZONTAL);
+        theme = KeyboardTheme.fromAttributes(context, attrs);
+        localTouches.setSlop(dp(8));
+        localTouches.setLongPressTimeout(ViewConfiguration.getLongPressTimeout());
+        injectedTouches.setSlop(dp(8));
         updateSizeFlags(getWidth(), getHeight());
         rebuild();
     }
 
     public InputMode getInputMode() {
-        return inputMode;
+        return INPUT_MODES[engine.getInputMode().ordinal()];
     }
 
     public void setInputMode(InputMode value) {
-        inputMode = value;
         inputModeLocked = (value != InputMode.AUTO);
-        applyInputModeIfNeeded();
+        startTraceBeforeSwitch();
+        engine.setInputMode(ENGINE_INPUT_MODES[value.ordinal()]);
     }
 
     private void setInferredInputMode(InputMode value) {
-        inputMode = value;
         inputModeLocked = false;
-        applyInputModeIfNeeded();
+        startTraceBeforeSwitch();
+        engine.setInputMode(ENGINE_INPUT_MODES[value.ordinal()]);
+    }
+
+    /** The engine behind this view; use it on the UI thread. */
+    public KeyboardEngine getEngine() {
+        return engine;
     }
 
     public Editable getTarget() {
@@ -111,7 +235,7 @@ public class InAppKeyboardView extends LinearLayout {
     }
 
     public Layout getCurrentLayout() {
-        return currentLayout;
+        return LAYOUTS[engine.getLayout().ordinal()];
     }
 
     public OnLayoutChangedListener getOnLayoutChangedListener() {
@@ -146,6 +270,61 @@ public class InAppKeyboardView extends LinearLayout {
         this.onSpaceListener = listener;
     }
 
+    public KeyboardTheme getKeyboardTheme() {
+        return theme;
+    }
+
+    /** Restyle the keys; the current layout is rebuilt once with the new theme. */
+    public void setKeyboardTheme(KeyboardTheme theme) {
+        if (theme == null || theme == this.theme) return;
+        this.theme = theme;
+        popupCache.clear();
+        rebuild();
+    }
+
+    public KeyRepeatPolicy getKeyRepeatPolicy() {
+        return keyRepeatPolicy;
+    }
+
+    /** How held repeatable keys (delete, and keys marked {@code isRepeatable}) repeat. */
+    public void setKeyRepeatPolicy(KeyRepeatPolicy policy) {
+        this.keyRepeatPolicy = policy != null ? policy : KeyRepeatPolicy.DEFAULT;
+        engine.setKeyRepeatPolicy(keyRepeatPolicy);
+        localTouches.setRepeatPolicy(keyRepeatPolicy);
+        injectedTouches.setRepeatPolicy(keyRepeatPolicy);
+    }
+
+    public KeyboardMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Record per-key latencies (dispatch, decode, candidate fetch and render, commit) into
+     * {@code metrics}; {@code null}, the default, turns recording off.
+     */
+    public void setMetrics(KeyboardMetrics metrics) {
+        this.metrics = metrics;
+        if (engine.getPinyinSession() != null) engine.getPinyinSession().setMetrics(metrics);
+        ICandidateBar bar = engine.getCandidateBar();
+        if (bar instanceof CandidateBarView) ((CandidateBarView) bar).setMetrics(metrics);
+    }
+
+    public KeystrokeTrace.Recorder getTraceRecorder() {
+        return traceRecorder;
+    }
+
+    /**
+     * Record keys, held-key repeats, layout switches and candidate picks with their timings into
+     * {@code recorder}, for replay with {@link KeystrokeReplayer}; {@code null}, the default, stops.
+     * In {@link InputMode#PASSWORD} only layout keys keep their labels; every other key is recorded
+     * as a bare press.
+     */
+    public void setTraceRecorder(KeystrokeTrace.Recorder recorder) {
+        this.traceRecorder = recorder;
+        if (recorder != null) startTrace(System.nanoTime());
+        if (engine.getPinyinSession() != null) engine.getPinyinSession().setTraceRecorder(recorder);
+    }
+
     public void attachTarget(Editable editable) {
         this.target = editable;
     }
@@ -156,8 +335,9 @@ public class InAppKeyboardView extends LinearLayout {
 
     public void attachTo(EditText editText, ICandidateBar candidateBar) {
         this.boundEditText = editText;
-        this.candidateBar = candidateBar;
-        this.commitTarget = new EditTextCommitTarget(editText);
+        engine.setCandidateBar(candidateBar);
+        if (candidateBar instanceof CandidateBarView) ((CandidateBarView) candidateBar).setMetrics(metrics);
+        engine.setTarget(new EditTextCommitTarget(editText));
         attachTarget(editText.getText());
 
         try {
@@ -179,9 +359,10 @@ public class InAppKeyboardView extends LinearLayout {
     public void attachTo(ITextCommitTarget commitTarget) {
         this.boundEditText = null;
         this.target = null;
-        this.commitTarget = commitTarget;
-        this.candidateBar = null;
-        pinyinSession = null;
+        engine.setTarget(commitTarget);
+        engine.setCandidateBar(null);
+        engine.setPinyinSession(null);
+        candidateUpdates.cancel();
         try {
             if (pinyinDecoder != null) pinyinDecoder.close();
         } catch (Throwable ignored) {
@@ -190,6 +371,65 @@ public class InAppKeyboardView extends LinearLayout {
         applyInputModeIfNeeded();
     }
 
+    /**
+     * The target's {@link InputType} changed (e.g. focus moved to another field of a WebView).
+     * Switches layout like {@link #attachTo(EditText)} does, unless the input mode was set explicitly.
+     */
+    public void setTargetInputType(int inputType) {
+        if (inputModeLocked) return;
+        setInferredInputMode(inferInputMode(inputType));
+    }
+
+    /**
+     * Switch to headless rendering at the given size: the view is laid out without a window and
+     * drawn only through {@link #renderTo(Bitmap, Region)} / {@link #renderTo(Surface, Region)}.
+     */
+    public void setHeadlessSize(int width, int height) {
+        if (headlessRenderer == null) headlessRenderer = new HeadlessRenderer(this);
+        headlessRenderer.setSize(width, height);
+    }
+
+    @Override
+    public HeadlessRenderer headlessRenderer() {
+        return headlessRenderer;
+    }
+
+    /** Called (headless mode only) when the first change after a render happens. */
+    public void setOnDamageListener(OnDamageListener listener) {
+        if (headlessRenderer == null) headlessRenderer = new HeadlessRenderer(this);
+        headlessRenderer.setOnDamageListener(listener);
+    }
+
+    /**
+     * Draw what changed since the last render into {@code bitmap} (which keeps the previous frame)
+     * and store the changed area in {@code outDamage}. Returns false when nothing changed.
+     */
+    public boolean renderTo(Bitmap bitmap, Region outDamage) {
+        return headlessRenderer != null && headlessRenderer.render(bitmap, outDamage);
+    }
+
+    /** Like {@link #renderTo(Bitmap, Region)}, locking only the damaged area of {@code surface}. */
+    public boolean renderTo(Surface surface, Region outDamage) {
+        return headlessRenderer != null && headlessRenderer.render(surface, outDamage);
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        super.dispatchDraw(canvas);
+        if (headlessPopup != null) {
+            canvas.save();
+            canvas.translate(headlessPopupX, headlessPopupY);
+            headlessPopup.draw(canvas);
+            canvas.restore();
+        }
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        if (changedView == this) HeadlessRenderer.report(this);
+    }
+
     /** Ensure keys are built (e.g., after attachment/visibility changes). */
     public void ensureBuilt() {
         if (getChildCount() == 0) {
@@ -198,20 +438,162 @@ public class InAppKeyboardView extends LinearLayout {
     }
 
     public void release() {
+        dismissPopup();
+        candidateUpdates.cancel();
         try {
             if (pinyinDecoder != null) pinyinDecoder.close();
         } catch (Throwable ignored) {
         }
         pinyinDecoder = null;
-        pinyinSession = null;
+        engine.setPinyinSession(null);
     }
 
     public void setLayout(Layout layout) {
-        if (currentLayout == layout) return;
-        currentLayout = layout;
-        shift = false;
+        startTraceBeforeSwitch();
+        engine.setLayout(ENGINE_LAYOUTS[layout.ordinal()]);
+    }
+
+    /** The engine switched layouts, by a key or a call; composing text is already cleared. */
+    private void onEngineLayoutChanged(Layout layout) {
+        long t0 = traceRecorder != null ? System.nanoTime() : 0;
+        if (layout != Layout.ZH_PINYIN) candidateUpdates.cancel();
         rebuild();
-        if (onLayoutChangedListener != null) onLayoutChangedListener.onLayoutChanged(currentLayout);
+        if (onLayoutChangedListener != null) onLayoutChangedListener.onLayoutChanged(layout);
+        // Switches made by a key are replayed by the key itself.
+        if (traceRecorder != null && editDepth == 0) {
+            traceRecorder.layout(layout.ordinal(), t0, System.nanoTime() - t0);
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        super.onLayout(changed, l, t, r, b);
+        keyGeometry.invalidate();
+    }
+
+    /**
+     * Dispatch a batch of touches given in keyboard coordinates, e.g. replayed from a remote head
+     * unit. Entry {@code i} in {@code [offset, offset + count)} is ({@code actions[i]},
+     * {@code pointerIds[i]}, {@code xs[i]}, {@code ys[i]}, {@code timesMs[i]}) where the action is
+     * {@link MotionEvent#ACTION_DOWN}, {@code ACTION_MOVE}, {@code ACTION_UP} or {@code ACTION_CANCEL}.
+     *
+     * Entries are applied in order straight against the key rects: no MotionEvents, no view
+     * dispatch, no allocation, and the resulting edits reach the target as one batch. Held
+     * repeatable keys repeat according to the timestamps, so a remote holding delete should keep
+     * sending moves. Long-press popups are not opened.
+     */
+    public void injectTouches(int[] actions, int[] pointerIds, float[] xs, float[] ys, long[] timesMs,
+                              int offset, int count) {
+        final ITextCommitTarget target = engine.getTarget();
+        if (target != null) beginEdit(target);
+        try {
+            for (int i = offset; i < offset + count; i++) {
+                ensureKeyGeometry();
+                injectedTouches.onTouch(actions[i], pointerIds[i], xs[i], ys[i], timesMs[i]);
+                // Drain per entry: a layout key must switch keys before the next touch resolves.
+                drainKeyEvents();
+            }
+        } finally {
+            if (target != null) endEdit(target);
+        }
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(MotionEvent event) {
+        // Keys never see touches; every pointer is tracked here so fast rollover typing keeps order.
+        return true;
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        ensureKeyGeometry();
+        long time = event.getEventTime();
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_POINTER_DOWN: {
+                int i = event.getActionIndex();
+                localTouches.onTouch(MotionEvent.ACTION_DOWN, event.getPointerId(i), event.getX(i), event.getY(i), time);
+                break;
+            }
+            case MotionEvent.ACTION_MOVE:
+                for (int i = 0; i < event.getPointerCount(); i++) {
+                    localTouches.onTouch(MotionEvent.ACTION_MOVE, event.getPointerId(i), event.getX(i), event.getY(i), time);
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_POINTER_UP: {
+                int i = event.getActionIndex();
+                localTouches.onTouch(MotionEvent.ACTION_UP, event.getPointerId(i), event.getX(i), event.getY(i), time);
+                break;
+            }
+            case MotionEvent.ACTION_CANCEL:
+                localTouches.reset();
+                break;
+            default:
+                break;
+        }
+        drainKeyEvents();
+        scheduleTouchTimer();
+        return true;
+    }
+
+    private void scheduleTouchTimer() {
+        handler.removeCallbacks(touchTimer);
+        long next = localTouches.nextDeadline();
+        if (next != Long.MAX_VALUE) handler.postAtTime(touchTimer, next);
+    }
+
+    /** Dispatch queued key events in order, as one batch edit. */
+    private void drainKeyEvents() {
+        if (keyEvents.size() == 0) return;
+        final ITextCommitTarget target = engine.getTarget();
+        if (target != null) beginEdit(target);
+        try {
+            // A layout key may rebuild mid-drain; that only resets the trackers, not the queue.
+            for (int i = 0; i < keyEvents.size(); i++) {
+                KeyAction action = keyEvents.actionAt(i);
+                int kind = keyEvents.kindAt(i);
+                if (kind == KeyEventQueue.KEY) onKey(action);
+                else onKeyRepeat(action, GRANULARITIES[kind]);
+            }
+        } finally {
+            keyEvents.clear();
+            if (target != null) endEdit(target);
+        }
+    }
+
+    private void beginEdit(ITextCommitTarget target) {
+        editDepth++;
+        target.beginBatchEdit();
+    }
+
+    private void endEdit(ITextCommitTarget target) {
+        if (--editDepth > 0) {
+            target.endBatchEdit();
+            return;
+        }
+        long t0 = metrics != null ? System.nanoTime() : 0;
+        boolean traced = KeyboardTrace.begin(KeyboardTrace.COMMIT);
+        try {
+            target.endBatchEdit();
+        } finally {
+            KeyboardTrace.end(traced);
+        }
+        if (metrics != null) {
+            metrics.record(KeyboardMetrics.Stage.COMMIT, System.nanoTime() - t0);
+            metrics.reportIfDue();
+        }
+    }
+
+    private void ensureKeyGeometry() {
+        if (keyGeometry.isValid() && !isLayoutRequested()) return;
+        if (isLayoutRequested() && getWidth() > 0) {
+            // Keys were replaced mid-batch (layout switch); lay them out now instead of next frame.
+            measure(MeasureSpec.makeMeasureSpec(getWidth(), MeasureSpec.EXACTLY),
+                    MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED));
+            layout(getLeft(), getTop(), getRight(), getTop() + getMeasuredHeight());
+        }
+        keyGeometry.rebuild(this);
     }
 
     @Override
@@ -221,15 +603,24 @@ public class InAppKeyboardView extends LinearLayout {
         boolean beforeUltraWide = isUltraWide;
         updateSizeFlags(w, h);
         if (beforeLandscape != isLandscape || beforeUltraWide != isUltraWide) {
-            rebuild();
+            // Only key sizes depend on these flags. Requesting layout from onSizeChanged is deferred
+            // by the framework to the next pass, which is what we want.
+            applyKeyGeometry();
         }
     }
 
+    /**
+     * Thresholds have hysteresis: key heights change the keyboard's own height and so its aspect,
+     * and a window being drag-resized would otherwise flip the flags back and forth.
+     */
     private void updateSizeFlags(int w, int h) {
         Configuration cfg = getResources().getConfiguration();
-        isLandscape = cfg.orientation == Configuration.ORIENTATION_LANDSCAPE || (w > 0 && h > 0 && w > h);
         float aspect = (w > 0 && h > 0) ? (float) w / (float) h : 0f;
-        isUltraWide = aspect >= 2.0f || w >= dp(1000);
+        isLandscape = cfg.orientation == Configuration.ORIENTATION_LANDSCAPE
+                || aspect > (isLandscape ? 0.9f : 1.1f);
+        isUltraWide = isUltraWide
+                ? aspect >= 1.8f || w >= dp(960)
+                : aspect >= 2.0f || w >= dp(1000);
     }
 
     private InputMode inferInputMode(int inputType) {
@@ -250,30 +641,15 @@ public class InAppKeyboardView extends LinearLayout {
     }
 
     private void applyInputModeIfNeeded() {
-        switch (inputMode) {
-            case AUTO:
-                break;
-            case NUMBER:
-                if (currentLayout != Layout.NUMERIC) setLayout(Layout.NUMERIC);
-                break;
-            case PASSWORD:
-                if (currentLayout != Layout.EN) setLayout(Layout.EN);
-                if (candidateBar != null) candidateBar.clear();
-                break;
-            case TEXT:
-                if (currentLayout == Layout.NUMERIC || currentLayout == Layout.SYMBOLS) {
-                    setLayout(Layout.EN);
-                }
-                break;
-        }
+        startTraceBeforeSwitch();
+        engine.setInputMode(engine.getInputMode());
     }
 
     private void wireBuiltInPinyinIfNeeded() {
-        final ITextCommitTarget pinyinCommitTarget = this.commitTarget;
-        final ICandidateBar bar = candidateBar;
-
-        if (bar == null || pinyinCommitTarget == null || inputMode != InputMode.TEXT) {
-            pinyinSession = null;
+        if (engine.getCandidateBar() == null || engine.getTarget() == null
+                || engine.getInputMode() != KeyboardEngine.InputMode.TEXT) {
+            candidateUpdates.cancel();
+            engine.setPinyinSession(null);
             try {
                 if (pinyinDecoder != null) pinyinDecoder.close();
             } catch (Throwable ignored) {
@@ -283,324 +659,399 @@ public class InAppKeyboardView extends LinearLayout {
         }
 
         if (pinyinDecoder == null) pinyinDecoder = new PinyinDecoder(getContext());
-        if (pinyinSession == null) pinyinSession = new PinyinImeSession(pinyinDecoder);
+        PinyinImeSession session = engine.getPinyinSession();
+        if (session == null) {
+            session = new PinyinImeSession(pinyinDecoder);
+            engine.setPinyinSession(session);
+        }
+        session.setMetrics(metrics);
+        session.setTraceRecorder(traceRecorder);
+    }
 
-        final Runnable refreshCandidates = new Runnable() {
-            @Override
-            public void run() {
-                if (pinyinSession == null) return;
-                if (!pinyinSession.hasComposing()) {
-                    bar.clear();
-                    return;
-                }
-                pinyinSession.bindCandidateClicks(pinyinCommitTarget, bar);
+    private void rebuild() {
+        boolean traced = KeyboardTrace.begin(KeyboardTrace.BUILD_LAYOUT);
+        try {
+            rebuildKeys();
+        } finally {
+            KeyboardTrace.end(traced);
+        }
+    }
+
+    private void rebuildKeys() {
+        dismissPopup();
+        handler.removeCallbacks(touchTimer);
+        localTouches.reset();
+        injectedTouches.reset();
+        keyGeometry.invalidate();
+        removeAllViews();
+        actionsByLabel.clear();
+        Layout layout = getCurrentLayout();
+        currentPopups = popupCache.get(layout);
+        if (currentPopups == null) {
+            currentPopups = new HashMap<>();
+            popupCache.put(layout, currentPopups);
+        }
+        List<List<KeyAction>> rows = layoutModels.get(layout);
+        if (rows == null) {
+            boolean traced = KeyboardTrace.begin(KeyboardTrace.PARSE_LAYOUT);
+            try {
+                rows = KeyboardLayouts.load(engine.getLayout(), layoutAssets);
+            } finally {
+                KeyboardTrace.end(traced);
             }
-        };
+            layoutModels.put(layout, rows);
+        }
+        addKeyRows(rows);
+        requestLayout();
+        invalidate();
+        HeadlessRenderer.report(this);
+    }
 
-        onCommitTextListener = new OnCommitTextListener() {
-            @Override
-            public boolean onCommitText(Layout layout, String text) {
-                if (layout == Layout.ZH_PINYIN && pinyinSession != null) {
-                    pinyinSession.onCommitChar(text, bar);
-                    refreshCandidates.run();
-                    return true;
+    /** Create key views for {@code rows}, all drawing from one shared label atlas. */
+    private void addKeyRows(List<List<KeyAction>> rows) {
+        List<String> labels = new ArrayList<>();
+        for (List<KeyAction> keys : rows) {
+            for (KeyAction action : keys) labels.add(displayLabel(action));
+        }
+        KeyFaceAtlas atlas = KeyFaceAtlas.obtain(getCurrentLayout().name(),
+                getResources().getDisplayMetrics().density, theme.keyLabelPaint(), labels);
+        for (List<KeyAction> keys : rows) addKeyRow(keys, atlas);
+    }
+
+    private void addKeyRow(List<KeyAction> keys, KeyFaceAtlas atlas) {
+        LinearLayout row = new LinearLayout(getContext());
+        row.setOrientation(HORIZONTAL);
+        row.setGravity(Gravity.CENTER);
+        row.setLayoutParams(new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.WRAP_CONTENT));
+
+        for (final KeyAction action : keys) {
+            actionsByLabel.put(action.label, action);
+
+            KeyView btn = new KeyView(getContext(), action, displayLabel(action), atlas, theme, keyHeight());
+            LayoutParams lp = new LayoutParams(0, LayoutParams.WRAP_CONTENT);
+            lp.setMarginStart(theme.keyGap);
+            lp.setMarginEnd(theme.keyGap);
+            applyKeyWidth(lp, action);
+            btn.setLayoutParams(lp);
+
+            // Touches are handled by the keyboard (see onTouchEvent); these serve accessibility.
+            btn.setOnClickListener(new OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    onKey(action);
                 }
-                return false;
-            }
-        };
+            });
 
-        onBackspaceListener = new OnBackspaceListener() {
-            @Override
-            public boolean onBackspace(Layout layout) {
-                if (layout == Layout.ZH_PINYIN && pinyinSession != null) {
-                    boolean consumed = pinyinSession.onBackspace(bar);
-                    if (consumed) refreshCandidates.run();
-                    return consumed;
+            if (action.hasPopup()) {
+                View popup = currentPopups.get(action.label);
+                if (popup == null) {
+                    popup = buildPopupView(action);
+                    currentPopups.put(action.label, popup);
                 }
-                return false;
+                final View popupView = popup;
+                btn.setOnLongClickListener(new OnLongClickListener() {
+                    @Override
+                    public boolean onLongClick(View v) {
+                        showPopup(v, popupView);
+                        return true;
+                    }
+                });
             }
-        };
 
-        onSpaceListener = new OnSpaceListener() {
-            @Override
-            public boolean onSpace(Layout layout) {
-                if (layout == Layout.ZH_PINYIN && pinyinSession != null) {
-                    boolean consumed = pinyinSession.onSpaceCommitBest(pinyinCommitTarget, bar);
-                    if (consumed) refreshCandidates.run();
-                    return consumed;
-                }
-                return false;
+            row.addView(btn);
+        }
+
+        addView(row);
+    }
+
+    private int keyHeight() {
+        return isLandscape ? theme.keyHeightLandscape : theme.keyHeight;
+    }
+
+    /** Fixed widths on ultra-wide screens, otherwise weights (space counts triple). */
+    private void applyKeyWidth(LayoutParams lp, KeyAction action) {
+        if (isUltraWide) {
+            int unit = theme.wideScreenKeyWidth;
+            switch (action.code) {
+                case KeyAction.CODE_SPACE: lp.width = unit * 4; break;
+                case KeyAction.CODE_ENTER:
+                case KeyAction.CODE_LANGUAGE: lp.width = unit * 2; break;
+                default: lp.width = unit; break;
             }
-        };
+            lp.weight = 0f;
+        } else {
+            lp.width = 0;
+            lp.weight = action.code == KeyAction.CODE_SPACE ? 3f : 1f;
+        }
+    }
 
-        final OnLayoutChangedListener existing = onLayoutChangedListener;
-        onLayoutChangedListener = new OnLayoutChangedListener() {
-            @Override
-            public void onLayoutChanged(Layout layout) {
-                if (existing != null) existing.onLayoutChanged(layout);
-                if (layout != Layout.ZH_PINYIN && pinyinSession != null) {
-                    pinyinSession.clear();
-                    bar.clear();
-                }
+    /** Resize the existing keys for the current size flags; structure and views stay. */
+    private void applyKeyGeometry() {
+        int keyHeight = keyHeight();
+        for (int r = 0; r < getChildCount(); r++) {
+            View row = getChildAt(r);
+            if (!(row instanceof ViewGroup)) continue;
+            ViewGroup keys = (ViewGroup) row;
+            for (int k = 0; k < keys.getChildCount(); k++) {
+                View child = keys.getChildAt(k);
+                if (!(child instanceof KeyView)) continue;
+                KeyView key = (KeyView) child;
+                key.setKeyMinHeight(keyHeight);
+                applyKeyWidth((LayoutParams) key.getLayoutParams(), key.getAction());
             }
-        };
+            keys.requestLayout();
+        }
+        keyGeometry.invalidate();
+        requestLayout();
+        HeadlessRenderer.report(this);
     }
 
-    private void rebuild() {
-        removeAllViews();
-        if (DEBUG) Log.d(TAG, "rebuild layout=" + currentLayout + " view=" + System.identityHashCode(this));
-        switch (currentLayout) {
-            case EN:
-                buildEnQwerty();
-                break;
-            case ZH_PINYIN:
-                buildZhPinyin();
-                break;
-            case FR:
-                buildFrAzerty();
-                break;
-            case AR:
-                buildArabic();
-                break;
-            case SYMBOLS:
-                buildSymbols();
-                break;
-            case NUMERIC:
-                buildNumeric();
-                break;
+    /** Build (and measure) the popup for a key once; it is reused for every long-press. */
+    private View buildPopupView(KeyAction action) {
+        final int maxColumns = 8;
+        int keySize = theme.popupKeySize;
+
+        LinearLayout popup = new LinearLayout(getContext());
+        popup.setOrientation(VERTICAL);
+        popup.setBackgroundColor(theme.popupBackgroundColor);
+        popup.setPadding(dp(2), dp(2), dp(2), dp(2));
+
+        LinearLayout row = null;
+        String chars = action.popupCharacters;
+        for (int i = 0; i < chars.length(); ) {
+            int cp = chars.codePointAt(i);
+            i += Character.charCount(cp);
+            if (Character.isWhitespace(cp)) continue;
+            if (row == null || row.getChildCount() == maxColumns) {
+                row = new LinearLayout(getContext());
+                row.setOrientation(HORIZONTAL);
+                popup.addView(row);
+            }
+            final KeyAction popupAction = KeyAction.forLabel(new String(Character.toChars(cp)));
+            Button btn = new Button(getContext());
+            btn.setText(popupAction.label);
+            btn.setAllCaps(false);
+            btn.setMinWidth(0);
+            btn.setMinimumWidth(0);
+            btn.setPadding(0, 0, 0, 0);
+            btn.setBackground(theme.newPopupKeyBackground());
+            btn.setTextColor(theme.keyTextColor);
+            LayoutParams lp = new LayoutParams(keySize, keySize);
+            lp.setMargins(dp(1), dp(1), dp(1), dp(1));
+            btn.setOnClickListener(new OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    dismissPopup();
+                    onKey(popupAction);
+                }
+            });
+            row.addView(btn, lp);
         }
+
+        popup.measure(MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED),
+                MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED));
+        return popup;
     }
 
-    private void buildEnQwerty() {
-        buildFromAskXml("ask_layouts/en_qwerty.xml");
+    private void showPopup(View anchor, View content) {
+        if (isHeadless()) {
+            showHeadlessPopup(anchor, content);
+            return;
+        }
+        if (popupWindow == null) {
+            popupWindow = new PopupWindow(getContext());
+            popupWindow.setBackgroundDrawable(new ColorDrawable(Color.TRANSPARENT));
+            popupWindow.setOutsideTouchable(true);
+            popupWindow.setClippingEnabled(false);
+        }
+        dismissPopup();
+        // The pre-built view may still hang off the container of a previous show.
+        if (content.getParent() instanceof ViewGroup) {
+            ((ViewGroup) content.getParent()).removeView(content);
+        }
+        popupWindow.setContentView(content);
+        popupWindow.setWidth(content.getMeasuredWidth());
+        popupWindow.setHeight(content.getMeasuredHeight());
+        popupWindow.showAsDropDown(anchor, 0, -(anchor.getHeight() + content.getMeasuredHeight()));
     }
 
-    private void buildZhPinyin() {
-        buildFromAskXml("ask_layouts/en_qwerty.xml");
+    private void dismissPopup() {
+        if (popupWindow != null && popupWindow.isShowing()) popupWindow.dismiss();
+        if (headlessPopup != null) {
+            damageHeadlessPopup();
+            headlessPopup = null;
+        }
     }
 
-    private void buildFrAzerty() {
-        buildFromAskXml("ask_layouts/fr_azerty.xml");
+    private boolean isHeadless() {
+        return getWindowToken() == null && HeadlessRenderer.find(this) != null;
     }
 
-    private void buildArabic() {
-        buildFromAskXml("ask_layouts/ar_qwerty.xml");
+    private void showHeadlessPopup(View anchor, View content) {
+        dismissPopup();
+        if (content.getParent() instanceof ViewGroup) {
+            ((ViewGroup) content.getParent()).removeView(content);
+        }
+        int w = content.getMeasuredWidth();
+        int h = content.getMeasuredHeight();
+        content.layout(0, 0, w, h);
+        // Above the key, kept inside the keyboard since there is nothing to draw outside it.
+        View row = (View) anchor.getParent();
+        headlessPopupX = Math.max(0, Math.min(getWidth() - w, row.getLeft() + anchor.getLeft()));
+        headlessPopupY = Math.max(0, row.getTop() + anchor.getTop() - h);
+        headlessPopup = content;
+        damageHeadlessPopup();
     }
 
-    private void buildSymbols() {
-        addRow(list("1", "2", "3", "4", "5", "6", "7", "8", "9", "0"));
-        addRow(list("@", "#", "$", "%", "&", "*", "-", "+", "(", ")"));
-        addRow(list("abc", "_", "\"", "'", ":", ";", "!", "?", "⌫"));
-        addRow(list("lang", "space", "enter"));
+    private void damageHeadlessPopup() {
+        HeadlessRenderer renderer = HeadlessRenderer.find(this);
+        if (renderer == null) return;
+        renderer.damage(this, headlessPopupX, headlessPopupY,
+                headlessPopupX + headlessPopup.getMeasuredWidth(), headlessPopupY + headlessPopup.getMeasuredHeight());
     }
 
-    private void buildNumeric() {
-        addRow(list("1", "2", "3"));
-        addRow(list("4", "5", "6"));
-        addRow(list("7", "8", "9"));
-        addRow(list("123", "0", "⌫"));
-        addRow(list("lang", "enter"));
+    /** Text shown on the key face; resolved at build time, never per key press. */
+    private String displayLabel(KeyAction action) {
+        switch (action.code) {
+            case KeyAction.CODE_SPACE: return "Space";
+            case KeyAction.CODE_ENTER: return "Enter";
+            case KeyAction.CODE_ALPHABET: return "ABC";
+            case KeyAction.CODE_SYMBOLS: return (getCurrentLayout() == Layout.NUMERIC) ? "#+=" : "123";
+            case KeyAction.CODE_LANGUAGE:
+                switch (getCurrentLayout()) {
+                    case EN: return "EN";
+                    case ZH_PINYIN: return "中";
+                    case FR: return "FR";
+                    case AR: return "AR";
+                    case SYMBOLS: return "#";
+                    case NUMERIC: return "123";
+                }
+                return action.label;
+            default:
+                return action.label;
+        }
     }
 
-    private static List<String> list(String... items) {
-        List<String> l = new ArrayList<>();
-        for (String s : items) l.add(s);
-        return l;
+    /**
+     * Dispatch a key as if it was tapped. Injected keys have no frame to coalesce into, so pending
+     * candidate updates are applied before returning.
+     */
+    @VisibleForTesting
+    public void injectKey(String label) {
+        KeyAction action = actionsByLabel.get(label);
+        onKey(action != null ? action : KeyAction.forLabel(label));
+        candidateUpdates.flush();
     }
 
-    private void buildFromAskXml(String assetPath) {
-        try {
-            AskXmlKeyboardParser.Layout layout = AskXmlKeyboardParser.parseAsset(getContext().getAssets(), assetPath);
-
-            int totalKeys = 0;
-            for (List<AskXmlKeyboardParser.Key> row : layout.rows) {
-                List<String> labels = new ArrayList<>();
-                for (AskXmlKeyboardParser.Key key : row) {
-                    String label = null;
-                    if (key.code != null) {
-                        if (key.code == -1) label = "⇧";
-                        else if (key.code == -5) label = "⌫";
-                        else label = key.label != null ? key.label : String.valueOf((char) (int) key.code);
-                    } else if (key.label != null && !key.label.isEmpty()) {
-                        label = key.label;
-                    }
-                    if (label != null) labels.add(label);
-                }
-                if (!labels.isEmpty()) {
-                    totalKeys += labels.size();
-                    addRow(labels);
-                    if (DEBUG) Log.d(TAG, "addRow labels=" + labels.size() + " totalKeys=" + totalKeys);
-                }
+    /** Target for {@link KeystrokeReplayer}: events go through {@link #injectKey} and friends. */
+    public KeystrokeReplayer.Target replayTarget() {
+        return new KeystrokeReplayer.Target() {
+            @Override
+            public void start(int inputMode, int layout) {
+                setInputMode(INPUT_MODES[inputMode]);
+                setLayout(LAYOUTS[layout]);
             }
 
-            if (totalKeys == 0) {
-                // Fallback: minimal qwerty when ASK parsing yields no keys.
-                addRow(list("q","w","e","r","t","y","u","i","o","p"));
-                addRow(list("a","s","d","f","g","h","j","k","l"));
-                addRow(list("⇧","z","x","c","v","b","n","m","⌫"));
+            @Override
+            public void key(String label) {
+                injectKey(label);
             }
 
-            addRow(list("lang", "123", "space", "enter"));
-            if (DEBUG) Log.d(TAG, "rebuild done childCount=" + getChildCount() + " view=" + System.identityHashCode(this));
-            requestLayout();
-            invalidate();
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to parse keyboard layout: " + assetPath, e);
-        }
-    }
-
-    private void addRow(List<String> keys) {
-        LinearLayout row = new LinearLayout(getContext());
-        row.setOrientation(HORIZONTAL);
-        row.setGravity(Gravity.CENTER);
-        row.setLayoutParams(new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.WRAP_CONTENT));
-
-        int keyHeight = isLandscape ? dp(36) : dp(44);
-        int fixedKeyWidth = isUltraWide ? dp(56) : 0;
+            @Override
+            public void keyRepeat(String label, int granularity) {
+                injectKeyRepeat(label, GRANULARITIES[granularity]);
+            }
 
-        for (String label : keys) {
-            Button btn = new Button(getContext());
-            btn.setText(resolveKeyLabel(label));
-            btn.setAllCaps(false);
-            btn.setMinHeight(keyHeight);
-            btn.setMinimumHeight(keyHeight);
-            // Make keys visible against dark background
-            btn.setBackgroundColor(Color.parseColor("#8E7CC3"));
-            btn.setTextColor(Color.WHITE);
-
-            if (isUltraWide) {
-                int w = "space".equals(label) ? fixedKeyWidth * 4 : "enter".equals(label) || "lang".equals(label) ? fixedKeyWidth * 2 : fixedKeyWidth;
-                LayoutParams lp = new LayoutParams(w, LayoutParams.WRAP_CONTENT);
-                lp.setMarginStart(dp(2));
-                lp.setMarginEnd(dp(2));
-                btn.setLayoutParams(lp);
-            } else {
-                float weight = "space".equals(label) ? 3f : 1f;
-                LayoutParams lp = new LayoutParams(0, LayoutParams.WRAP_CONTENT, weight);
-                lp.setMarginStart(dp(2));
-                lp.setMarginEnd(dp(2));
-                btn.setLayoutParams(lp);
+            @Override
+            public void layout(int layout) {
+                setLayout(LAYOUTS[layout]);
             }
 
-            if ("⌫".equals(label)) {
-                setupBackspaceRepeater(btn);
-            } else {
-                btn.setOnClickListener(new OnClickListener() {
-                    @Override
-                    public void onClick(View v) {
-                        onKey(label);
-                    }
-                });
+            @Override
+            public void candidate(int index) {
+                injectCandidate(index);
             }
+        };
+    }
 
-            row.addView(btn);
-        }
+    /** Dispatch a repeat of a held key at {@code granularity}, as the touch trackers do. */
+    private void injectKeyRepeat(String label, KeyRepeatPolicy.Granularity granularity) {
+        KeyAction action = actionsByLabel.get(label);
+        onKeyRepeat(action != null ? action : KeyAction.forLabel(label), granularity);
+        candidateUpdates.flush();
+    }
 
-        addView(row);
+    /** Pick entry {@code index} of the candidate bar (0 is the raw pinyin), as a click on it does. */
+    private void injectCandidate(int index) {
+        candidateUpdates.flush();
+        engine.commitCandidate(index);
+        candidateUpdates.flush();
     }
 
-    private String resolveKeyLabel(String label) {
-        if ("space".equals(label)) return "Space";
-        if ("enter".equals(label)) return "Enter";
-        if ("abc".equals(label)) return "ABC";
-        if ("123".equals(label)) return (currentLayout == Layout.NUMERIC) ? "#+=" : "123";
-        if ("lang".equals(label)) {
-            switch (currentLayout) {
-                case EN: return "EN";
-                case ZH_PINYIN: return "中";
-                case FR: return "FR";
-                case AR: return "AR";
-                case SYMBOLS: return "#";
-                case NUMERIC: return "123";
-            }
-        }
-        return label;
+    @Override
+    protected void onDetachedFromWindow() {
+        // A frame callback may never come while detached; don't leave the bar stale.
+        candidateUpdates.flush();
+        dismissPopup();
+        handler.removeCallbacks(touchTimer);
+        localTouches.reset();
+        super.onDetachedFromWindow();
     }
 
-    @VisibleForTesting
-    public void injectKey(String label) {
-        onKey(label);
-    }
-
-    private void onKey(String label) {
-        if (commitTarget == null) return;
-
-        if ("⌫".equals(label)) {
-            boolean consumed = onBackspaceListener != null && onBackspaceListener.onBackspace(currentLayout);
-            if (!consumed) commitTarget.deleteLastChar(1);
-        } else if ("enter".equals(label)) {
-            commitTarget.insert("\n");
-        } else if ("space".equals(label)) {
-            boolean consumed = onSpaceListener != null && onSpaceListener.onSpace(currentLayout);
-            if (!consumed) commitTarget.insert(" ");
-        } else if ("⇧".equals(label)) {
-            shift = !shift;
-        } else if ("123".equals(label)) {
-            setLayout(Layout.SYMBOLS);
-        } else if ("abc".equals(label)) {
-            if (inputMode == InputMode.NUMBER) setLayout(Layout.NUMERIC);
-            else setLayout(Layout.EN);
-        } else if ("lang".equals(label)) {
-            if (inputMode == InputMode.NUMBER) {
-                setLayout(Layout.NUMERIC);
-                return;
-            }
-            if (inputMode == InputMode.PASSWORD) {
-                setLayout(Layout.EN);
-                return;
-            }
-            Layout next;
-            switch (currentLayout) {
-                case EN: next = Layout.ZH_PINYIN; break;
-                case ZH_PINYIN: next = Layout.FR; break;
-                case FR: next = Layout.AR; break;
-                case AR:
-                case SYMBOLS:
-                case NUMERIC: next = Layout.EN; break;
-                default: next = Layout.EN; break;
-            }
-            setLayout(next);
-        } else {
-            String ch = shift ? label.toUpperCase() : label;
-            boolean consumed = onCommitTextListener != null && onCommitTextListener.onCommitText(currentLayout, ch);
-            if (!consumed) commitTarget.insert(ch);
-            if (shift) shift = false;
+    private void onKey(KeyAction action) {
+        // Listeners may issue several edits for one key; let the target apply them as one.
+        final ITextCommitTarget target = engine.getTarget();
+        if (target == null) return;
+
+        boolean timed = metrics != null || traceRecorder != null;
+        long t0 = timed ? System.nanoTime() : 0;
+        if (traceRecorder != null) startTrace(t0);
+        boolean traced = KeyboardTrace.begin(KeyboardTrace.DISPATCH_KEY);
+        beginEdit(target);
+        try {
+            engine.dispatch(action);
+        } finally {
+            if (timed) onKeyDispatched(action, null, t0, System.nanoTime() - t0);
+            endEdit(target);
+            KeyboardTrace.end(traced);
         }
     }
 
-    private void setupBackspaceRepeater(final Button btn) {
-        final long initialDelayMs = 250L;
-        final long repeatDelayMs = 50L;
+    private void onKeyDispatched(KeyAction action, KeyRepeatPolicy.Granularity repeat, long t0, long nanos) {
+        if (metrics != null) metrics.record(KeyboardMetrics.Stage.DISPATCH, nanos);
+        if (traceRecorder == null) return;
+        traceRecorder.key(action, repeat, engine.getInputMode() == KeyboardEngine.InputMode.PASSWORD, t0, nanos);
+    }
 
-        final boolean[] repeating = { false };
-        final Runnable repeatRunnable = new Runnable() {
-            @Override
-            public void run() {
-                if (!repeating[0]) return;
-                onKey("⌫");
-                handler.postDelayed(this, repeatDelayMs);
-            }
-        };
+    private void startTrace(long nowNanos) {
+        traceRecorder.start(engine.getInputMode().ordinal(), engine.getLayout().ordinal(), nowNanos);
+    }
 
-        btn.setOnTouchListener(new OnTouchListener() {
-            @Override
-            public boolean onTouch(View v, MotionEvent event) {
-                switch (event.getActionMasked()) {
-                    case MotionEvent.ACTION_DOWN:
-                        onKey("⌫");
-                        repeating[0] = true;
-                        handler.postDelayed(repeatRunnable, initialDelayMs);
-                        return true;
-                    case MotionEvent.ACTION_UP:
-                    case MotionEvent.ACTION_CANCEL:
-                        repeating[0] = false;
-                        handler.removeCallbacks(repeatRunnable);
-                        return true;
-                    default:
-                        return false;
-                }
+    /** The trace header holds the layout before a switch made by a call, which is then an event. */
+    private void startTraceBeforeSwitch() {
+        if (traceRecorder != null) startTrace(System.nanoTime());
+    }
+
+    /** A held key repeated; deletes past the policy's thresholds remove a word or line at once. */
+    private void onKeyRepeat(KeyAction action, KeyRepeatPolicy.Granularity granularity) {
+        final ITextCommitTarget target = engine.getTarget();
+        if (target == null) return;
+        boolean timed = metrics != null || traceRecorder != null;
+        long t0 = timed ? System.nanoTime() : 0;
+        if (traceRecorder != null) startTrace(t0);
+        boolean traced = KeyboardTrace.begin(KeyboardTrace.DISPATCH_KEY);
+        beginEdit(target);
+        try {
+            engine.dispatchRepeat(action, granularity);
+        } finally {
+            // Character repeats are recorded as plain keys.
+            if (timed) {
+                onKeyDispatched(action, granularity == KeyRepeatPolicy.Granularity.CHARACTER ? null : granularity,
+                        t0, System.nanoTime() - t0);
             }
-        });
+            endEdit(target);
+            KeyboardTrace.end(traced);
+        }
     }
 
     private int dp(int v) {
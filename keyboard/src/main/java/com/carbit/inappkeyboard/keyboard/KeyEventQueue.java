@@ -0,0 +1,47 @@
+package com.carbit.inappkeyboard.keyboard;
+
+/**
+ * Ordered key events produced by {@link KeyTouchTracker}, drained by the keyboard in one batch.
+ *
+ * Entries are (action, kind) where kind is {@link #KEY} for a press or a
+ * {@link KeyRepeatPolicy.Granularity} ordinal for a repeat. Backed by reused arrays.
+ */
+final class KeyEventQueue {
+
+    static final int KEY = -1;
+
+    private KeyAction[] actions = new KeyAction[16];
+    private int[] kinds = new int[16];
+    private int size = 0;
+
+    void add(KeyAction action, int kind) {
+        if (size == actions.length) {
+            KeyAction[] a = new KeyAction[size * 2];
+            int[] k = new int[size * 2];
+            System.arraycopy(actions, 0, a, 0, size);
+            System.arraycopy(kinds, 0, k, 0, size);
+            actions = a;
+            kinds = k;
+        }
+        actions[size] = action;
+        kinds[size] = kind;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    KeyAction actionAt(int index) {
+        return actions[index];
+    }
+
+    int kindAt(int index) {
+        return kinds[index];
+    }
+
+    void clear() {
+        for (int i = 0; i < size; i++) actions[i] = null;
+        size = 0;
+    }
+}
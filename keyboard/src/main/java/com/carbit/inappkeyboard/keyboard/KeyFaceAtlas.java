@@ -0,0 +1,182 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Key labels of one layout rasterized once into a shared alpha-only bitmap.
+ *
+ * Atlases are cached process-wide by (density, text style, layout, labels), so every
+ * {@link InAppKeyboardView} on every display — including Presentations on VirtualDisplays — reuses
+ * the same bitmap and draws a key label as a single bitmap blit instead of laying out text. The
+ * mask is tinted by the paint colour at draw time, so pressed and normal faces share it.
+ */
+final class KeyFaceAtlas {
+
+    private static final int MAX_WIDTH = 1024;
+    private static final int GAP = 1;
+    private static final int MAX_CACHED = 16;
+
+    private static final Map<CacheKey, KeyFaceAtlas> CACHE =
+            new LinkedHashMap<CacheKey, KeyFaceAtlas>(MAX_CACHED, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<CacheKey, KeyFaceAtlas> eldest) {
+                    return size() > MAX_CACHED;
+                }
+            };
+
+    /** Compares the labels themselves and the typeface by reference, so no two styles share an atlas. */
+    private static final class CacheKey {
+        final String layoutKey;
+        final float density;
+        final float textSize;
+        final Typeface typeface;
+        final Collection<String> labels;
+        final int hash;
+
+        CacheKey(String layoutKey, float density, float textSize, Typeface typeface, Collection<String> labels) {
+            this.layoutKey = layoutKey;
+            this.density = density;
+            this.textSize = textSize;
+            this.typeface = typeface;
+            this.labels = labels;
+            int h = layoutKey.hashCode();
+            h = 31 * h + Float.floatToIntBits(density);
+            h = 31 * h + Float.floatToIntBits(textSize);
+            h = 31 * h + System.identityHashCode(typeface);
+            this.hash = 31 * h + labels.hashCode();
+        }
+
+        /** This key with a private copy of the labels, to store in the cache. */
+        CacheKey frozen() {
+            List<String> copy = Collections.unmodifiableList(new ArrayList<>(labels));
+            return new CacheKey(layoutKey, density, textSize, typeface, copy);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CacheKey)) return false;
+            CacheKey k = (CacheKey) o;
+            return hash == k.hash && typeface == k.typeface && density == k.density && textSize == k.textSize
+                    && layoutKey.equals(k.layoutKey) && sameLabels(labels, k.labels);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        private static boolean sameLabels(Collection<String> a, Collection<String> b) {
+            if (a.size() != b.size()) return false;
+            Iterator<String> ib = b.iterator();
+            for (String label : a) {
+                String other = ib.next();
+                if (label == null ? other != null : !label.equals(other)) return false;
+            }
+            return true;
+        }
+    }
+
+    private final Bitmap bitmap;
+    private final Map<String, Integer> indexByLabel;
+    private final Rect[] src;
+
+    private KeyFaceAtlas(Bitmap bitmap, Map<String, Integer> indexByLabel, Rect[] src) {
+        this.bitmap = bitmap;
+        this.indexByLabel = indexByLabel;
+        this.src = src;
+    }
+
+    /** Shared atlas holding {@code labels} rendered with {@code textPaint}; built on first use. */
+    static KeyFaceAtlas obtain(String layoutKey, float density, Paint textPaint, Collection<String> labels) {
+        CacheKey key = new CacheKey(layoutKey, density, textPaint.getTextSize(), textPaint.getTypeface(), labels);
+        synchronized (CACHE) {
+            KeyFaceAtlas atlas = CACHE.get(key);
+            if (atlas == null) {
+                atlas = build(textPaint, labels);
+                CACHE.put(key.frozen(), atlas);
+            }
+            return atlas;
+        }
+    }
+
+    /** Drop every cached atlas (e.g. on low memory); views keep theirs until they rebuild. */
+    static void clearCache() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    private static KeyFaceAtlas build(Paint textPaint, Collection<String> labels) {
+        Paint paint = new Paint(textPaint);
+        paint.setColor(0xFFFFFFFF);
+        Paint.FontMetrics fm = paint.getFontMetrics();
+        int cellHeight = (int) Math.ceil(fm.descent - fm.ascent);
+
+        // Shelf packing: one row per cell height, wrapping at MAX_WIDTH.
+        Map<String, Integer> indexByLabel = new HashMap<>();
+        Rect[] src = new Rect[labels.size()];
+        int x = 0;
+        int y = 0;
+        int width = 1;
+        int count = 0;
+        for (String label : labels) {
+            if (label == null || indexByLabel.containsKey(label)) continue;
+            int w = Math.min(MAX_WIDTH, Math.max(1, (int) Math.ceil(paint.measureText(label))));
+            if (x > 0 && x + w > MAX_WIDTH) {
+                x = 0;
+                y += cellHeight + GAP;
+            }
+            src[count] = new Rect(x, y, x + w, y + cellHeight);
+            indexByLabel.put(label, count++);
+            x += w + GAP;
+            width = Math.max(width, x);
+        }
+
+        Bitmap bitmap = Bitmap.createBitmap(width, Math.max(1, y + cellHeight), Bitmap.Config.ALPHA_8);
+        Canvas canvas = new Canvas(bitmap);
+        for (Map.Entry<String, Integer> e : indexByLabel.entrySet()) {
+            Rect r = src[e.getValue()];
+            canvas.save();
+            canvas.clipRect(r);
+            canvas.drawText(e.getKey(), r.left, r.top - fm.ascent, paint);
+            canvas.restore();
+        }
+        Rect[] trimmed = new Rect[count];
+        System.arraycopy(src, 0, trimmed, 0, count);
+        return new KeyFaceAtlas(bitmap, indexByLabel, trimmed);
+    }
+
+    /** Index of {@code label} in this atlas, or -1. */
+    int indexOf(String label) {
+        Integer i = indexByLabel.get(label);
+        return i != null ? i : -1;
+    }
+
+    int width(int index) {
+        return src[index].width();
+    }
+
+    int height(int index) {
+        return src[index].height();
+    }
+
+    /** Blit face {@code index} into {@code dst}, tinted with {@code paint}'s colour. */
+    void draw(Canvas canvas, int index, RectF dst, Paint paint) {
+        canvas.drawBitmap(bitmap, src[index], dst, paint);
+    }
+}
@@ -0,0 +1,97 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * Key rects of an {@link InAppKeyboardView} in keyboard coordinates, as parallel primitive arrays.
+ *
+ * Rebuilt lazily after a layout pass; hit testing scans the arrays directly instead of walking the
+ * view tree. A point in the gap between keys resolves to the nearest key within {@code slop}.
+ */
+final class KeyGeometry {
+
+    private float[] left = new float[64];
+    private float[] top = new float[64];
+    private float[] right = new float[64];
+    private float[] bottom = new float[64];
+    private KeyView[] views = new KeyView[64];
+    private int count = 0;
+    private boolean valid = false;
+
+    void invalidate() {
+        valid = false;
+    }
+
+    boolean isValid() {
+        return valid;
+    }
+
+    /** Collect the {@link KeyView}s of {@code keyboard}'s rows. */
+    void rebuild(ViewGroup keyboard) {
+        count = 0;
+        for (int r = 0; r < keyboard.getChildCount(); r++) {
+            View rowView = keyboard.getChildAt(r);
+            if (!(rowView instanceof ViewGroup) || rowView.getVisibility() != View.VISIBLE) continue;
+            ViewGroup row = (ViewGroup) rowView;
+            for (int k = 0; k < row.getChildCount(); k++) {
+                View key = row.getChildAt(k);
+                if (!(key instanceof KeyView)) continue;
+                if (count == views.length) grow();
+                float l = row.getLeft() + key.getLeft();
+                float t = row.getTop() + key.getTop();
+                left[count] = l;
+                top[count] = t;
+                right[count] = l + key.getWidth();
+                bottom[count] = t + key.getHeight();
+                views[count] = (KeyView) key;
+                count++;
+            }
+        }
+        valid = true;
+    }
+
+    private void grow() {
+        int n = views.length * 2;
+        float[] l = new float[n];
+        float[] t = new float[n];
+        float[] r = new float[n];
+        float[] b = new float[n];
+        KeyView[] v = new KeyView[n];
+        System.arraycopy(left, 0, l, 0, count);
+        System.arraycopy(top, 0, t, 0, count);
+        System.arraycopy(right, 0, r, 0, count);
+        System.arraycopy(bottom, 0, b, 0, count);
+        System.arraycopy(views, 0, v, 0, count);
+        left = l;
+        top = t;
+        right = r;
+        bottom = b;
+        views = v;
+    }
+
+    int count() {
+        return count;
+    }
+
+    KeyView view(int index) {
+        return views[index];
+    }
+
+    /** Key containing (x, y), else the nearest key within {@code slop}, else -1. */
+    int indexAt(float x, float y, float slop) {
+        int nearest = -1;
+        float nearestDist = slop * slop;
+        for (int i = 0; i < count; i++) {
+            float dx = x < left[i] ? left[i] - x : (x >= right[i] ? x - right[i] : 0f);
+            float dy = y < top[i] ? top[i] - y : (y >= bottom[i] ? y - bottom[i] : 0f);
+            if (dx == 0f && dy == 0f) return i;
+            float d = dx * dx + dy * dy;
+            if (d <= nearestDist) {
+                nearestDist = d;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+}
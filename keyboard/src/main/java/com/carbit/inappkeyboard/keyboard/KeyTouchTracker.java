@@ -0,0 +1,202 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import android.view.MotionEvent;
+
+/**
+ * Per-pointer key tracking over a {@link KeyGeometry}, driven by plain (action, pointer, x, y,
+ * time) tuples rather than {@link MotionEvent}s, so local multi-touch and injected remote touches
+ * share one implementation.
+ *
+ * Character keys commit on up if the pointer is still on the key. When another finger lands while
+ * keys are held (rollover), the held keys commit first, in the order they went down, so
+ * overlapping taps keep their typed order. Repeatable keys fire on down and then repeat as
+ * {@link KeyRepeatPolicy} says, measured on the event timestamps. Keys are appended to a
+ * {@link KeyEventQueue}; state lives in fixed arrays and nothing is allocated.
+ */
+final class KeyTouchTracker {
+
+    interface Callback {
+        void onKeyPressed(KeyView key, boolean pressed);
+
+        /** Key held past the long-press timeout; return true if it was handled (no commit on up). */
+        boolean onKeyLongPress(KeyView key);
+    }
+
+    static final int MAX_POINTERS = 10;
+
+    private final KeyGeometry geometry;
+    private final KeyEventQueue queue;
+    private final Callback callback;
+    private final int[] pointerIds = new int[MAX_POINTERS];
+    private final KeyView[] keys = new KeyView[MAX_POINTERS];
+    private final long[] downSeq = new long[MAX_POINTERS];
+    private final long[] longPressAt = new long[MAX_POINTERS];
+    private final long[] nextRepeatAt = new long[MAX_POINTERS];
+    private final int[] repeats = new int[MAX_POINTERS];
+    // The key was already emitted (rollover, repeatable, long-press); up emits nothing.
+    private final boolean[] done = new boolean[MAX_POINTERS];
+    private int active = 0;
+    private long seq = 0;
+    private KeyRepeatPolicy policy = KeyRepeatPolicy.DEFAULT;
+    private long longPressTimeoutMs = 0;
+    private float slop;
+
+    KeyTouchTracker(KeyGeometry geometry, KeyEventQueue queue, Callback callback) {
+        this.geometry = geometry;
+        this.queue = queue;
+        this.callback = callback;
+    }
+
+    void setRepeatPolicy(KeyRepeatPolicy policy) {
+        this.policy = policy;
+    }
+
+    /** 0 disables long-press. */
+    void setLongPressTimeout(long ms) {
+        this.longPressTimeoutMs = ms;
+    }
+
+    /** How far outside a key (in px) a touch still counts as hitting it. */
+    void setSlop(float slop) {
+        this.slop = slop;
+    }
+
+    /**
+     * Feed one touch. {@code action} is {@link MotionEvent#ACTION_DOWN}, {@code ACTION_MOVE},
+     * {@code ACTION_UP} or {@code ACTION_CANCEL} (pointer variants accepted); coordinates are in
+     * keyboard space.
+     */
+    void onTouch(int action, int pointerId, float x, float y, long timeMs) {
+        advanceTo(timeMs);
+        switch (action) {
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_POINTER_DOWN:
+                down(pointerId, x, y, timeMs);
+                break;
+            case MotionEvent.ACTION_MOVE: {
+                int slot = slotOf(pointerId);
+                if (slot >= 0 && keys[slot] != null && !done[slot] && keyAt(x, y) != keys[slot]) {
+                    // Slid off the key: like a Button, the press is cancelled.
+                    release(slot);
+                }
+                break;
+            }
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_POINTER_UP: {
+                int slot = slotOf(pointerId);
+                if (slot < 0) break;
+                KeyView key = keys[slot];
+                boolean emit = key != null && !done[slot];
+                release(slot);
+                if (emit) queue.add(key.getAction(), KeyEventQueue.KEY);
+                break;
+            }
+            case MotionEvent.ACTION_CANCEL: {
+                int slot = slotOf(pointerId);
+                if (slot >= 0) release(slot);
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    /** Fire long-presses and repeats of held keys that are due at {@code timeMs}. */
+    void advanceTo(long timeMs) {
+        for (int slot = 0; slot < active; slot++) {
+            KeyView key = keys[slot];
+            if (key == null) continue;
+            KeyAction action = key.getAction();
+            if (action.repeatable) {
+                while (nextRepeatAt[slot] <= timeMs) {
+                    int repeat = repeats[slot]++;
+                    nextRepeatAt[slot] += policy.intervalMs(repeat);
+                    queue.add(action, policy.granularity(repeat).ordinal());
+                }
+            } else if (!done[slot] && longPressAt[slot] <= timeMs) {
+                longPressAt[slot] = Long.MAX_VALUE;
+                if (callback.onKeyLongPress(key)) done[slot] = true;
+            }
+        }
+    }
+
+    /** Earliest time {@link #advanceTo} has work, or {@link Long#MAX_VALUE}. */
+    long nextDeadline() {
+        long next = Long.MAX_VALUE;
+        for (int slot = 0; slot < active; slot++) {
+            KeyView key = keys[slot];
+            if (key == null) continue;
+            if (key.getAction().repeatable) next = Math.min(next, nextRepeatAt[slot]);
+            else if (!done[slot]) next = Math.min(next, longPressAt[slot]);
+        }
+        return next;
+    }
+
+    /** Forget every pointer (keys are being replaced); pressed keys are released without firing. */
+    void reset() {
+        while (active > 0) release(active - 1);
+    }
+
+    private void down(int pointerId, float x, float y, long timeMs) {
+        int existing = slotOf(pointerId);
+        if (existing >= 0) release(existing);
+        if (active == MAX_POINTERS) return;
+        commitHeldKeys();
+        KeyView key = keyAt(x, y);
+        int slot = active++;
+        pointerIds[slot] = pointerId;
+        keys[slot] = key;
+        downSeq[slot] = seq++;
+        repeats[slot] = 0;
+        nextRepeatAt[slot] = timeMs + policy.initialDelayMs;
+        boolean hasLongPress = key != null && longPressTimeoutMs > 0 && key.getAction().hasPopup();
+        longPressAt[slot] = hasLongPress ? timeMs + longPressTimeoutMs : Long.MAX_VALUE;
+        done[slot] = false;
+        if (key == null) return;
+        callback.onKeyPressed(key, true);
+        if (key.getAction().repeatable) {
+            done[slot] = true;
+            queue.add(key.getAction(), KeyEventQueue.KEY);
+        }
+    }
+
+    /** Rollover: emit keys still held by other fingers, oldest first. */
+    private void commitHeldKeys() {
+        while (true) {
+            int oldest = -1;
+            for (int slot = 0; slot < active; slot++) {
+                if (keys[slot] == null || done[slot]) continue;
+                if (oldest < 0 || downSeq[slot] < downSeq[oldest]) oldest = slot;
+            }
+            if (oldest < 0) return;
+            done[oldest] = true;
+            queue.add(keys[oldest].getAction(), KeyEventQueue.KEY);
+        }
+    }
+
+    private void release(int slot) {
+        KeyView key = keys[slot];
+        int last = --active;
+        pointerIds[slot] = pointerIds[last];
+        keys[slot] = keys[last];
+        downSeq[slot] = downSeq[last];
+        longPressAt[slot] = longPressAt[last];
+        nextRepeatAt[slot] = nextRepeatAt[last];
+        repeats[slot] = repeats[last];
+        done[slot] = done[last];
+        keys[last] = null;
+        if (key != null) callback.onKeyPressed(key, false);
+    }
+
+    private int slotOf(int pointerId) {
+        for (int i = 0; i < active; i++) {
+            if (pointerIds[i] == pointerId) return i;
+        }
+        return -1;
+    }
+
+    private KeyView keyAt(float x, float y) {
+        int index = geometry.indexAt(x, y, slop);
+        return index >= 0 ? geometry.view(index) : null;
+    }
+}
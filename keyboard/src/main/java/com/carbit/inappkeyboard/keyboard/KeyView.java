@@ -0,0 +1,76 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.RectF;
+import android.view.View;
+
+/**
+ * One key of {@link InAppKeyboardView}: a flat background plus a label blitted from a shared
+ * {@link KeyFaceAtlas}, both styled by the keyboard's {@link KeyboardTheme}. No text layout,
+ * drawables or per-key paints.
+ */
+final class KeyView extends View {
+
+    private final KeyAction action;
+    private final KeyFaceAtlas atlas;
+    private final int faceIndex;
+    private final KeyboardTheme theme;
+    private int minHeight;
+    private final RectF faceRect = new RectF();
+
+    KeyView(Context context, KeyAction action, String displayLabel, KeyFaceAtlas atlas,
+            KeyboardTheme theme, int minHeight) {
+        super(context);
+        this.action = action;
+        this.atlas = atlas;
+        this.faceIndex = atlas.indexOf(displayLabel);
+        this.theme = theme;
+        this.minHeight = minHeight;
+        setClickable(true);
+        setContentDescription(displayLabel);
+    }
+
+    KeyAction getAction() {
+        return action;
+    }
+
+    void setKeyMinHeight(int minHeight) {
+        if (this.minHeight == minHeight) return;
+        this.minHeight = minHeight;
+        requestLayout();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int faceWidth = faceIndex >= 0 ? atlas.width(faceIndex) : 0;
+        int faceHeight = faceIndex >= 0 ? atlas.height(faceIndex) : 0;
+        setMeasuredDimension(
+                resolveSize(faceWidth + getPaddingLeft() + getPaddingRight(), widthMeasureSpec),
+                resolveSize(Math.max(minHeight, faceHeight), heightMeasureSpec));
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (faceIndex < 0) return;
+        float fw = atlas.width(faceIndex);
+        float fh = atlas.height(faceIndex);
+        float left = (w - fw) / 2f;
+        float top = (h - fh) / 2f;
+        faceRect.set(left, top, left + fw, top + fh);
+    }
+
+    @Override
+    protected void drawableStateChanged() {
+        super.drawableStateChanged();
+        invalidate();
+        HeadlessRenderer.report(this);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        canvas.drawRect(0, 0, getWidth(), getHeight(), isPressed() ? theme.keyPressedPaint() : theme.keyPaint());
+        if (faceIndex >= 0) atlas.draw(canvas, faceIndex, faceRect, theme.keyLabelPaint());
+    }
+}
@@ -0,0 +1,187 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.StateListDrawable;
+import android.util.AttributeSet;
+import android.util.DisplayMetrics;
+import android.util.TypedValue;
+
+/**
+ * Colours, sizes and paints of {@link InAppKeyboardView}, resolved once.
+ *
+ * Built from the {@code InAppKeyboardView} XML attributes ({@link #fromAttributes}) or a
+ * {@link Builder}. All dimensions are pixels. Keys share the theme's paints, and popup keys share
+ * one drawable constant state, so building or resizing a layout derives no styles per key.
+ */
+public final class KeyboardTheme {
+
+    public final int keyBackgroundColor;
+    public final int keyPressedColor;
+    public final int keyTextColor;
+    public final float keyTextSize;
+    public final Typeface keyTypeface;
+    public final int keyHeight;
+    public final int keyHeightLandscape;
+    public final int keyGap;
+    public final int wideScreenKeyWidth;
+    public final int popupBackgroundColor;
+    public final int popupKeySize;
+
+    private final Paint keyPaint = new Paint();
+    private final Paint keyPressedPaint = new Paint();
+    private final Paint keyLabelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Drawable.ConstantState popupKeyBackground;
+
+    private KeyboardTheme(Builder b) {
+        this.keyBackgroundColor = b.keyBackgroundColor;
+        this.keyPressedColor = b.keyPressedColor;
+        this.keyTextColor = b.keyTextColor;
+        this.keyTextSize = b.keyTextSize;
+        this.keyTypeface = b.keyTypeface;
+        this.keyHeight = b.keyHeight;
+        this.keyHeightLandscape = b.keyHeightLandscape;
+        this.keyGap = b.keyGap;
+        this.wideScreenKeyWidth = b.wideScreenKeyWidth;
+        this.popupBackgroundColor = b.popupBackgroundColor;
+        this.popupKeySize = b.popupKeySize;
+
+        keyPaint.setColor(keyBackgroundColor);
+        keyPressedPaint.setColor(keyPressedColor);
+        keyLabelPaint.setColor(keyTextColor);
+        keyLabelPaint.setTextSize(keyTextSize);
+        if (keyTypeface != null) keyLabelPaint.setTypeface(keyTypeface);
+
+        StateListDrawable background = new StateListDrawable();
+        background.addState(new int[] { android.R.attr.state_pressed }, new ColorDrawable(keyPressedColor));
+        background.addState(new int[0], new ColorDrawable(keyBackgroundColor));
+        popupKeyBackground = background.getConstantState();
+    }
+
+    /** Theme from {@code InAppKeyboardView} attributes, with the built-in look for anything unset. */
+    public static KeyboardTheme fromAttributes(Context context, AttributeSet attrs) {
+        Builder b = new Builder(context);
+        if (attrs == null) return b.build();
+        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.InAppKeyboardView);
+        try {
+            b.keyBackgroundColor = a.getColor(R.styleable.InAppKeyboardView_keyBackgroundColor, b.keyBackgroundColor);
+            b.keyPressedColor = a.getColor(R.styleable.InAppKeyboardView_keyPressedColor, b.keyPressedColor);
+            b.keyTextColor = a.getColor(R.styleable.InAppKeyboardView_keyTextColor, b.keyTextColor);
+            b.keyTextSize = a.getDimension(R.styleable.InAppKeyboardView_keyTextSize, b.keyTextSize);
+            b.keyHeight = a.getDimensionPixelSize(R.styleable.InAppKeyboardView_keyHeight, b.keyHeight);
+            b.keyHeightLandscape = a.getDimensionPixelSize(R.styleable.InAppKeyboardView_keyHeightLandscape, b.keyHeightLandscape);
+            b.keyGap = a.getDimensionPixelSize(R.styleable.InAppKeyboardView_keyGap, b.keyGap);
+            b.wideScreenKeyWidth = a.getDimensionPixelSize(R.styleable.InAppKeyboardView_wideScreenKeyWidth, b.wideScreenKeyWidth);
+            b.popupBackgroundColor = a.getColor(R.styleable.InAppKeyboardView_popupBackgroundColor, b.popupBackgroundColor);
+        } finally {
+            a.recycle();
+        }
+        return b.build();
+    }
+
+    Paint keyPaint() {
+        return keyPaint;
+    }
+
+    Paint keyPressedPaint() {
+        return keyPressedPaint;
+    }
+
+    Paint keyLabelPaint() {
+        return keyLabelPaint;
+    }
+
+    /** Pressed-aware key background for popup keys; every call shares one constant state. */
+    Drawable newPopupKeyBackground() {
+        return popupKeyBackground.newDrawable();
+    }
+
+    public static final class Builder {
+        private int keyBackgroundColor = Color.parseColor("#8E7CC3");
+        private int keyPressedColor = Color.parseColor("#6F5DA8");
+        private int keyTextColor = Color.WHITE;
+        private float keyTextSize;
+        private Typeface keyTypeface;
+        private int keyHeight;
+        private int keyHeightLandscape;
+        private int keyGap;
+        private int wideScreenKeyWidth;
+        private int popupBackgroundColor = Color.parseColor("#222222");
+        private int popupKeySize;
+
+        /** Starts from the built-in look at {@code context}'s density. */
+        public Builder(Context context) {
+            DisplayMetrics dm = context.getResources().getDisplayMetrics();
+            keyTextSize = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 18, dm);
+            keyHeight = (int) (44 * dm.density);
+            keyHeightLandscape = (int) (36 * dm.density);
+            keyGap = (int) (2 * dm.density);
+            wideScreenKeyWidth = (int) (56 * dm.density);
+            popupKeySize = (int) (44 * dm.density);
+        }
+
+        public Builder setKeyBackgroundColor(int color) {
+            keyBackgroundColor = color;
+            return this;
+        }
+
+        public Builder setKeyPressedColor(int color) {
+            keyPressedColor = color;
+            return this;
+        }
+
+        public Builder setKeyTextColor(int color) {
+            keyTextColor = color;
+            return this;
+        }
+
+        public Builder setKeyTextSize(float px) {
+            keyTextSize = px;
+            return this;
+        }
+
+        public Builder setKeyTypeface(Typeface typeface) {
+            keyTypeface = typeface;
+            return this;
+        }
+
+        public Builder setKeyHeight(int px) {
+            keyHeight = px;
+            return this;
+        }
+
+        public Builder setKeyHeightLandscape(int px) {
+            keyHeightLandscape = px;
+            return this;
+        }
+
+        public Builder setKeyGap(int px) {
+            keyGap = px;
+            return this;
+        }
+
+        public Builder setWideScreenKeyWidth(int px) {
+            wideScreenKeyWidth = px;
+            return this;
+        }
+
+        public Builder setPopupBackgroundColor(int color) {
+            popupBackgroundColor = color;
+            return this;
+        }
+
+        public Builder setPopupKeySize(int px) {
+            popupKeySize = px;
+            return this;
+        }
+
+        public KeyboardTheme build() {
+            return new KeyboardTheme(this);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import android.os.Trace;
+
+/**
+ * {@link Trace} sections for the input pipeline, visible in systrace and Perfetto under the app's
+ * process. Off by default: a disabled section costs one volatile field read, and section names are
+ * constants, so nothing is allocated either way. Toggling while a section is open is safe, as each
+ * {@link #end(boolean)} closes only what its {@link #begin} opened.
+ *
+ * The native engine emits its own {@code IAK:MatrixSearch::*} sections whenever the system is
+ * tracing the app, independent of this switch.
+ */
+public final class KeyboardTrace {
+
+    static final String DISPATCH_KEY = "IAK:dispatchKey";
+    static final String BUILD_LAYOUT = "IAK:buildLayout";
+    static final String PARSE_LAYOUT = "IAK:parseLayout";
+    static final String REFRESH_CANDIDATES = "IAK:refreshCandidates";
+    static final String DECODER_SEARCH = "IAK:decoderSearch";
+    static final String CANDIDATE_FETCH = "IAK:candidateFetch";
+    static final String COMMIT = "IAK:commit";
+
+    private static volatile boolean enabled = false;
+
+    private KeyboardTrace() {
+    }
+
+    /** Turn the Java sections on, e.g. in debug builds or while capturing a trace. */
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Begin a section; pass the result to {@link #end(boolean)} on the same thread, in a finally
+     * block. Returns whether a section was opened.
+     */
+    static boolean begin(String section) {
+        if (!enabled) return false;
+        Trace.beginSection(section);
+        return true;
+    }
+
+    static void end(boolean begun) {
+        if (begun) Trace.endSection();
+    }
+}
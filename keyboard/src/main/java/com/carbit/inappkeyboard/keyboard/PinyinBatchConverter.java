@@ -0,0 +1,272 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import android.content.Context;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Converts a stream of pinyin strings to their top candidates on all cores, e.g. to precompute
+ * suggestions for a word list. Each worker thread searches with a native engine instance of its
+ * own, so throughput grows with the thread count; the instances share the read-only dictionary
+ * tables and ignore the user dictionary. The keyboard's {@link PinyinDecoder} is not touched.
+ *
+ * The calling thread reads the input in chunks, keeps at most {@link Builder#setMaxInFlight}
+ * strings queued, converting or awaiting their turn, and hands results to the {@link Sink} itself,
+ * in input order or as chunks complete. Close the converter to free the instances.
+ */
+public final class PinyinBatchConverter implements AutoCloseable {
+
+    /** Receives each conversion on the thread calling {@link #convert}. */
+    public interface Sink {
+        /** {@code index} counts from 0 in input order; {@code conversions} is best first. */
+        void accept(long index, String pinyin, List<String> conversions);
+    }
+
+    private static final class Chunk {
+        final long seq;
+        final long firstIndex;
+        final String[] pinyins;
+        final List<List<String>> results;
+        Throwable error;
+
+        Chunk(long seq, long firstIndex, String[] pinyins) {
+            this.seq = seq;
+            this.firstIndex = firstIndex;
+            this.pinyins = pinyins;
+            this.results = new ArrayList<>(pinyins.length);
+        }
+    }
+
+    public final int threads;
+    public final int topN;
+    public final int chunkSize;
+    public final int maxInFlight;
+    public final boolean ordered;
+
+    private final ExecutorService executor;
+    /** One instance per worker; a chunk holds one while it converts. */
+    private final BlockingQueue<Long> instances;
+    private final long[] allInstances;
+    private boolean closed = false;
+
+    private PinyinBatchConverter(Builder b, long[] handles) {
+        threads = handles.length;
+        topN = Math.max(1, b.topN);
+        chunkSize = Math.max(1, b.chunkSize);
+        maxInFlight = Math.max(chunkSize, b.maxInFlight > 0 ? b.maxInFlight : threads * chunkSize * 4);
+        ordered = b.ordered;
+        allInstances = handles;
+        instances = new ArrayBlockingQueue<>(handles.length);
+        for (long handle : handles) instances.add(handle);
+
+        final AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "pinyin-batch-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Convert everything {@code input} yields, passing each result to {@code sink}; returns how
+     * many strings were converted. Blocks until done. A failure in a worker is rethrown here; an
+     * {@link Error} or checked exception arrives wrapped in an {@link IllegalStateException}.
+     */
+    public long convert(Iterator<String> input, Sink sink) throws InterruptedException {
+        if (closed) throw new IllegalStateException("Converter is closed");
+        final BlockingQueue<Chunk> done = new LinkedBlockingQueue<>();
+        // Chunks that finished ahead of their turn in ordered mode; they count as in flight.
+        Map<Long, Chunk> waiting = new HashMap<>();
+        int maxChunks = Math.max(1, maxInFlight / chunkSize);
+        int running = 0;
+        long nextSeq = 0;
+        long nextToEmit = 0;
+        long count = 0;
+
+        while (true) {
+            while (input.hasNext() && running + waiting.size() < maxChunks) {
+                final Chunk chunk = new Chunk(nextSeq++, count, nextChunk(input));
+                count += chunk.pinyins.length;
+                running++;
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        convertChunk(chunk);
+                        done.add(chunk);
+                    }
+                });
+            }
+            if (running == 0) break;
+
+            Chunk chunk = done.take();
+            running--;
+            if (chunk.error instanceof RuntimeException) throw (RuntimeException) chunk.error;
+            if (chunk.error != null) throw new IllegalStateException("Pinyin conversion failed", chunk.error);
+            if (!ordered) {
+                emit(chunk, sink);
+                continue;
+            }
+            waiting.put(chunk.seq, chunk);
+            while ((chunk = waiting.remove(nextToEmit)) != null) {
+                emit(chunk, sink);
+                nextToEmit++;
+            }
+        }
+        return count;
+    }
+
+    /** Convert {@code pinyins}; the result at each position belongs to the input at the same one. */
+    public List<List<String>> convertAll(List<String> pinyins) throws InterruptedException {
+        final List<List<String>> out = new ArrayList<>(Collections.<List<String>>nCopies(pinyins.size(), null));
+        convert(pinyins.iterator(), new Sink() {
+            @Override
+            public void accept(long index, String pinyin, List<String> conversions) {
+                out.set((int) index, conversions);
+            }
+        });
+        return out;
+    }
+
+    /** Wait for running work, then free the engine instances. */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        executor.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.MINUTES)) break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        for (long handle : allInstances) PinyinDecoder.nativeInstanceClose(handle);
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private String[] nextChunk(Iterator<String> input) {
+        String[] pinyins = new String[chunkSize];
+        int n = 0;
+        while (n < chunkSize && input.hasNext()) pinyins[n++] = input.next();
+        return n == chunkSize ? pinyins : Arrays.copyOf(pinyins, n);
+    }
+
+    private void convertChunk(Chunk chunk) {
+        Long handle = instances.poll();
+        try {
+            if (handle == null) throw new IllegalStateException("No free engine instance");
+            for (String pinyin : chunk.pinyins) chunk.results.add(convertOne(handle, pinyin));
+        } catch (Throwable e) {
+            // Anything escaping would leave convert() waiting for this chunk forever.
+            chunk.error = e;
+        } finally {
+            if (handle != null) instances.add(handle);
+        }
+    }
+
+    private List<String> convertOne(long handle, String pinyin) {
+        if (pinyin.isEmpty()) return Collections.emptyList();
+        byte[] bytes = pinyin.getBytes(StandardCharsets.UTF_8);
+        byte[] buf = Arrays.copyOf(bytes, bytes.length + 1);
+        String[] candidates = PinyinDecoder.nativeInstanceCandidates(handle, buf, bytes.length, topN);
+        return candidates != null ? Arrays.asList(candidates) : Collections.<String>emptyList();
+    }
+
+    private static void emit(Chunk chunk, Sink sink) {
+        for (int i = 0; i < chunk.pinyins.length; i++) {
+            sink.accept(chunk.firstIndex + i, chunk.pinyins[i], chunk.results.get(i));
+        }
+    }
+
+    public static final class Builder {
+        private final Context context;
+        private final File dictFile;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private int topN = 8;
+        private int chunkSize = 64;
+        private int maxInFlight = 0;
+        private boolean ordered = true;
+
+        /** Convert with the dictionary packaged in the app. */
+        public Builder(Context context) {
+            this.context = context;
+            this.dictFile = null;
+        }
+
+        /**
+         * Convert with the system dictionary ({@code dict_pinyin.dat}) in a plain file. Its tables
+         * are shared by all engines in the process and never replaced, so once the keyboard or
+         * another converter has loaded a dictionary, only the same one can be used here.
+         */
+        public Builder(File dictFile) {
+            this.context = null;
+            this.dictFile = dictFile;
+        }
+
+        /** Worker threads, each with an engine instance; defaults to the available processors. */
+        public Builder setThreads(int value) {
+            threads = value;
+            return this;
+        }
+
+        /** Candidates kept per string, best first. */
+        public Builder setTopN(int value) {
+            topN = value;
+            return this;
+        }
+
+        /** Strings a worker converts per task. */
+        public Builder setChunkSize(int value) {
+            chunkSize = value;
+            return this;
+        }
+
+        /** Strings read ahead of the sink; defaults to four chunks per thread. */
+        public Builder setMaxInFlight(int value) {
+            maxInFlight = value;
+            return this;
+        }
+
+        /** Whether the sink sees results in input order (the default) or as they complete. */
+        public Builder setOrdered(boolean value) {
+            ordered = value;
+            return this;
+        }
+
+        /**
+         * Opens the engine instances; throws {@link IllegalStateException} if they cannot open,
+         * including for a dictionary other than the one already loaded in the process.
+         */
+        public PinyinBatchConverter build() {
+            long[] handles = new long[Math.max(1, threads)];
+            for (int i = 0; i < handles.length; i++) {
+                handles[i] = PinyinDecoder.openInstance(context, dictFile);
+                if (handles[i] == 0) {
+                    for (int j = 0; j < i; j++) PinyinDecoder.nativeInstanceClose(handles[j]);
+                    throw new IllegalStateException("Failed to open a pinyin engine instance");
+                }
+            }
+            return new PinyinBatchConverter(this, handles);
+        }
+    }
+}
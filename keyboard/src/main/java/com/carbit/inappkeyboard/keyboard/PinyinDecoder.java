@@ -6,6 +6,8 @@ import android.os.ParcelFileDescriptor;
 import android.util.Log;
 
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -14,18 +16,64 @@ import java.util.List;
 /**
  * Very small wrapper around AOSP PinyinIME native decoder.
  * We use it ONLY to get candidate strings for a pinyin buffer.
+ *
+ * On a plain JVM (unit tests, benchmarks) point the {@value #LIBRARY_PATH_PROPERTY} system
+ * property at a host build of {@code libjni_pinyinime.so} and use
+ * {@link #PinyinDecoder(File, File)} to open the dictionary from a file.
  */
 public class PinyinDecoder implements IPinyinDecoder {
 
+    /** System property naming a {@code libjni_pinyinime} to load instead of the packaged one. */
+    public static final String LIBRARY_PATH_PROPERTY = "inappkeyboard.pinyin.lib";
+
+    /**
+     * Indices into {@link #getStats}. Counters run since the process first searched or the last
+     * {@link #resetStats}; pool entries are per search and {@code *_PEAK} is the most seen.
+     * The order matches {@code EngineStat} in {@code cpp/pinyinime/include/stats.h}.
+     */
+    public static final int STAT_SEARCHES = 0;
+    /** Letters decoded; a search only decodes the letters after the previous search's prefix. */
+    public static final int STAT_SEARCH_STEPS = 1;
+    public static final int STAT_MATRIX_NODES_USED = 2;
+    public static final int STAT_MATRIX_NODES_PEAK = 3;
+    public static final int STAT_MATRIX_NODES_POOL_SIZE = 4;
+    /** Node extensions dropped because the MatrixNode pool was full. */
+    public static final int STAT_MATRIX_NODES_REJECTED = 5;
+    public static final int STAT_DMI_USED = 6;
+    public static final int STAT_DMI_PEAK = 7;
+    public static final int STAT_DMI_POOL_SIZE = 8;
+    /** Letters left undecoded because the DictMatchInfo pool was full. */
+    public static final int STAT_DMI_REJECTED = 9;
+    public static final int STAT_LPI_CACHE_HITS = 10;
+    public static final int STAT_LPI_CACHE_MISSES = 11;
+    /** User dictionary lookups answered by its caches, including known misses. */
+    public static final int STAT_USER_DICT_CACHE_HITS = 12;
+    public static final int STAT_USER_DICT_MISS_CACHE_HITS = 13;
+    public static final int STAT_USER_DICT_CACHE_MISSES = 14;
+    public static final int STAT_COUNT = 15;
+
+    private static final String TAG = "PinyinDecoder";
+    private static final boolean LIBRARY_LOADED;
+
     private final Context context;
+    private final File dictFile;
+    private final File usrDictFile;
     private boolean inited = false;
 
     static {
+        boolean loaded = false;
         try {
-            System.loadLibrary("jni_pinyinime");
+            String path = System.getProperty(LIBRARY_PATH_PROPERTY);
+            if (path != null && !path.isEmpty()) {
+                System.load(new File(path).getAbsolutePath());
+            } else {
+                System.loadLibrary("jni_pinyinime");
+            }
+            loaded = true;
         } catch (Throwable t) {
-            Log.e("PinyinDecoder", "Failed to load native library jni_pinyinime", t);
+            logError("Failed to load native library jni_pinyinime", t);
         }
+        LIBRARY_LOADED = loaded;
     }
 
     public static native boolean nativeImOpenDecoderFd(
@@ -47,71 +95,166 @@ public class PinyinDecoder implements IPinyinDecoder {
 
     public static native int nativeImChoose(int choiceId);
 
+    public static native void nativeImGetStats(long[] stats);
+
+    public static native void nativeImResetStats();
+
+    // Engine instances independent of the one above, for PinyinBatchConverter. An instance is
+    // used by one thread at a time and searches the system dictionary only.
+
+    static native long nativeInstanceOpenFd(FileDescriptor fd, long startOffset, long length);
+
+    static native String[] nativeInstanceCandidates(long handle, byte[] pyBuf, int pyLen, int max);
+
+    static native void nativeInstanceClose(long handle);
+
+    /** Opens the dictionary in {@code length} bytes of {@code fd} from {@code offset}. */
+    private interface DictOpener {
+        boolean open(FileDescriptor fd, long offset, long length);
+    }
+
     public PinyinDecoder(Context context) {
         this.context = context.getApplicationContext();
+        this.dictFile = null;
+        this.usrDictFile = null;
+    }
+
+    /**
+     * Decoder reading the system dictionary ({@code dict_pinyin.dat}) from a plain file, with
+     * no {@link Context}; {@code usrDictFile} is created if missing.
+     */
+    public PinyinDecoder(File dictFile, File usrDictFile) {
+        this.context = null;
+        this.dictFile = dictFile;
+        this.usrDictFile = usrDictFile;
+    }
+
+    /** Whether the native library loaded; decoders do nothing when it did not. */
+    public static boolean isLibraryLoaded() {
+        return LIBRARY_LOADED;
     }
 
     public void initIfNeeded() {
-        if (inited) return;
+        if (inited || !LIBRARY_LOADED) return;
 
-        File usr = new File(context.getFilesDir(), "usr_dict.dat");
-        if (!usr.exists()) {
-            try {
-                usr.createNewFile();
-            } catch (IOException ignored) {
+        final File usr = context != null ? new File(context.getFilesDir(), "usr_dict.dat") : usrDictFile;
+        createIfMissing(usr);
+        DictOpener opener = new DictOpener() {
+            @Override
+            public boolean open(FileDescriptor fd, long offset, long length) {
+                return nativeImOpenDecoderFd(fd, offset, length, pathBytes(usr));
             }
+        };
+        boolean ok = context != null ? openFromResources(context, opener) : openFromFile(dictFile, opener);
+        if (ok) {
+            nativeImSetMaxLens(64, 64);
+            inited = true;
+        } else {
+            logError("Failed to initialize pinyin decoder", null);
         }
+    }
 
+    /**
+     * Opens an engine instance of its own on the packaged dictionary, or on {@code dictFile}
+     * when {@code context} is null; returns its handle, or 0 if it could not be opened. The
+     * dictionary tables are shared and loaded once per process, so a dictionary other than the
+     * one already loaded by a decoder or instance fails to open.
+     */
+    static long openInstance(Context context, File dictFile) {
+        if (!LIBRARY_LOADED) return 0;
+        final long[] handle = new long[1];
+        DictOpener opener = new DictOpener() {
+            @Override
+            public boolean open(FileDescriptor fd, long offset, long length) {
+                handle[0] = nativeInstanceOpenFd(fd, offset, length);
+                return handle[0] != 0;
+            }
+        };
+        if (context != null) {
+            openFromResources(context.getApplicationContext(), opener);
+        } else {
+            openFromFile(dictFile, opener);
+        }
+        return handle[0];
+    }
+
+    private static boolean openFromFile(File dict, DictOpener opener) {
+        try (FileInputStream input = new FileInputStream(dict)) {
+            return opener.open(input.getFD(), 0L, dict.length());
+        } catch (IOException e) {
+            logError("Failed to open " + dict, e);
+            return false;
+        }
+    }
+
+    private static boolean openFromResources(Context context, DictOpener opener) {
         boolean ok = false;
         try {
             AssetFileDescriptor afd = context.getResources().openRawResourceFd(R.raw.dict_pinyin);
-            ok = nativeImOpenDecoderFd(
+            ok = opener.open(
                     afd.getFileDescriptor(),
                     afd.getStartOffset(),
-                    afd.getLength(),
-                    (usr.getAbsolutePath() + "\u0000").getBytes(StandardCharsets.UTF_8)
+                    afd.getLength()
             );
             afd.close();
         } catch (Throwable t) {
             Log.w("PinyinDecoder", "openRawResourceFd failed (likely compressed). Falling back to extracted file.", t);
 
-            File dictFile = new File(context.getFilesDir(), "dict_pinyin.dat");
-            if (!dictFile.exists() || dictFile.length() == 0) {
-                try {
-                    android.content.res.Resources res = context.getResources();
-                    java.io.InputStream input = res.openRawResource(R.raw.dict_pinyin);
-                    java.io.OutputStream output = new java.io.FileOutputStream(dictFile);
-                    byte[] buf = new byte[8192];
-                    int n;
-                    while ((n = input.read(buf)) >= 0) {
-                        output.write(buf, 0, n);
+            File extracted = new File(context.getFilesDir(), "dict_pinyin.dat");
+            // Decoders opening on several threads extract once.
+            synchronized (PinyinDecoder.class) {
+                if (!extracted.exists() || extracted.length() == 0) {
+                    try {
+                        android.content.res.Resources res = context.getResources();
+                        java.io.InputStream input = res.openRawResource(R.raw.dict_pinyin);
+                        java.io.OutputStream output = new java.io.FileOutputStream(extracted);
+                        byte[] buf = new byte[8192];
+                        int n;
+                        while ((n = input.read(buf)) >= 0) {
+                            output.write(buf, 0, n);
+                        }
+                        input.close();
+                        output.close();
+                    } catch (Throwable e) {
+                        Log.e("PinyinDecoder", "Failed to extract dict", e);
                     }
-                    input.close();
-                    output.close();
-                } catch (Throwable e) {
-                    Log.e("PinyinDecoder", "Failed to extract dict", e);
                 }
             }
 
             try {
-                ParcelFileDescriptor pfd = ParcelFileDescriptor.open(dictFile, ParcelFileDescriptor.MODE_READ_ONLY);
-                ok = nativeImOpenDecoderFd(
+                ParcelFileDescriptor pfd = ParcelFileDescriptor.open(extracted, ParcelFileDescriptor.MODE_READ_ONLY);
+                ok = opener.open(
                         pfd.getFileDescriptor(),
                         0L,
-                        dictFile.length(),
-                        (usr.getAbsolutePath() + "\u0000").getBytes(StandardCharsets.UTF_8)
+                        extracted.length()
                 );
                 pfd.close();
             } catch (Throwable e) {
                 Log.e("PinyinDecoder", "Failed to open extracted dict", e);
             }
         }
+        return ok;
+    }
 
-        if (ok) {
-            nativeImSetMaxLens(64, 64);
-            inited = true;
-        } else {
-            Log.e("PinyinDecoder", "Failed to initialize pinyin decoder");
+    private static void createIfMissing(File file) {
+        if (!file.exists()) {
+            try {
+                file.createNewFile();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static byte[] pathBytes(File file) {
+        return (file.getAbsolutePath() + "\u0000").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Logs to logcat, or to stderr on a JVM where {@link Log} is only a stub. */
+    private static void logError(String message, Throwable t) {
+        try {
+            Log.e(TAG, message, t);
+        } catch (RuntimeException | LinkageError stub) {
+            System.err.println(TAG + ": " + message + (t != null ? " (" + t + ")" : ""));
         }
     }
 
@@ -123,22 +266,50 @@ public class PinyinDecoder implements IPinyinDecoder {
 
     @Override
     public List<String> candidates(String pinyin, int max) {
-        initIfNeeded();
+        search(pinyin);
         if (!inited) return new ArrayList<>();
 
+        List<String> out = new ArrayList<>(max);
+        boolean traced = KeyboardTrace.begin(KeyboardTrace.CANDIDATE_FETCH);
+        try {
+            for (int i = 0; i < max; i++) {
+                String c = nativeImGetChoice(i);
+                if (c == null || c.trim().isEmpty()) break;
+                out.add(c);
+            }
+        } finally {
+            KeyboardTrace.end(traced);
+        }
+        return out;
+    }
+
+    @Override
+    public int search(String pinyin) {
+        initIfNeeded();
+        if (!inited) return 0;
+
         byte[] bytes = pinyin.getBytes(StandardCharsets.UTF_8);
         byte[] buf = new byte[bytes.length + 1];
         System.arraycopy(bytes, 0, buf, 0, bytes.length);
         buf[bytes.length] = 0;
-        nativeImSearch(buf, bytes.length);
+        boolean traced = KeyboardTrace.begin(KeyboardTrace.DECODER_SEARCH);
+        try {
+            return Math.max(0, nativeImSearch(buf, bytes.length));
+        } finally {
+            KeyboardTrace.end(traced);
+        }
+    }
 
-        List<String> out = new ArrayList<>(max);
-        for (int i = 0; i < max; i++) {
-            String c = nativeImGetChoice(i);
-            if (c == null || c.trim().isEmpty()) break;
-            out.add(c);
+    @Override
+    public String candidateAt(int index) {
+        if (!inited) return "";
+        boolean traced = KeyboardTrace.begin(KeyboardTrace.CANDIDATE_FETCH);
+        try {
+            String c = nativeImGetChoice(index);
+            return c != null ? c : "";
+        } finally {
+            KeyboardTrace.end(traced);
         }
-        return out;
     }
 
     @Override
@@ -151,6 +322,27 @@ public class PinyinDecoder implements IPinyinDecoder {
         return chosen;
     }
 
+    /**
+     * Snapshot of the engine counters, indexed by the {@code STAT_*} constants, from any thread.
+     * Counters are added up over every engine in the process, {@link PinyinBatchConverter}
+     * workers included; pool entries are the largest on any one thread, as each thread has pools
+     * of its own. All zero if the library did not load.
+     */
+    public static long[] getStats() {
+        return getStats(new long[STAT_COUNT]);
+    }
+
+    /** As {@link #getStats()}, into {@code into} (up to its length); returns {@code into}. */
+    public static long[] getStats(long[] into) {
+        if (LIBRARY_LOADED) nativeImGetStats(into);
+        return into;
+    }
+
+    /** Zero all engine counters and peaks, e.g. before a run to be measured. */
+    public static void resetStats() {
+        if (LIBRARY_LOADED) nativeImResetStats();
+    }
+
     public void close() {
         if (!inited) return;
         nativeImCloseDecoder();
@@ -0,0 +1,47 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import android.graphics.Paint;
+
+/**
+ * Fixed-size, direct-mapped cache of {@link Paint#measureText} results.
+ *
+ * CJK candidates repeat constantly while typing, so most lookups hit. A collision simply replaces the
+ * older entry; the cache never grows and never allocates after construction.
+ */
+final class TextWidthCache {
+
+    private final String[] keys;
+    private final float[] widths;
+    private final int mask;
+    private float textSize = -1f;
+
+    TextWidthCache(int capacityPow2) {
+        if (Integer.bitCount(capacityPow2) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two");
+        }
+        keys = new String[capacityPow2];
+        widths = new float[capacityPow2];
+        mask = capacityPow2 - 1;
+    }
+
+    float measure(Paint paint, String text) {
+        if (paint.getTextSize() != textSize) {
+            clear();
+            textSize = paint.getTextSize();
+        }
+        int h = text.hashCode();
+        int slot = (h ^ (h >>> 16)) & mask;
+        String cached = keys[slot];
+        if (cached != null && (cached == text || cached.equals(text))) {
+            return widths[slot];
+        }
+        float w = paint.measureText(text);
+        keys[slot] = text;
+        widths[slot] = w;
+        return w;
+    }
+
+    void clear() {
+        for (int i = 0; i < keys.length; i++) keys[i] = null;
+    }
+}
@@ -0,0 +1,134 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/** Runs the real native engine; skipped unless a host build of the library is available. */
+public class PinyinBatchConverterHostTest {
+
+    private static final List<String> WORDS = Arrays.asList(
+            "nihao", "zhongguo", "beijing", "shanghai", "women", "pengyou", "xiexie", "zaijian",
+            "jintian", "mingtian", "dianhua", "diannao", "shouji", "gongzuo", "xuexi", "kafei");
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void matches_the_keyboard_decoder_in_order_and_out_of_order() throws Exception {
+        assumeTrue(PinyinDecoder.isLibraryLoaded());
+        File dict = new File("src/main/res/raw/dict_pinyin.dat");
+        assumeTrue(dict.isFile());
+
+        List<String> input = new ArrayList<>();
+        for (int i = 0; i < 20; i++) input.addAll(WORDS);
+
+        List<List<String>> expected = new ArrayList<>();
+        PinyinDecoder decoder = new PinyinDecoder(dict, new File(tmp.getRoot(), "usr_dict.dat"));
+        try {
+            for (String pinyin : input) expected.add(decoder.candidates(pinyin, 5));
+        } finally {
+            decoder.close();
+        }
+        assertTrue(expected.get(0).contains("你好"));
+
+        PinyinBatchConverter ordered = new PinyinBatchConverter.Builder(dict)
+                .setThreads(4).setTopN(5).setChunkSize(7).setMaxInFlight(14).build();
+        try {
+            assertEquals(expected, ordered.convertAll(input));
+
+            final List<Long> indices = new ArrayList<>();
+            ordered.convert(input.iterator(), new PinyinBatchConverter.Sink() {
+                @Override
+                public void accept(long index, String pinyin, List<String> conversions) {
+                    indices.add(index);
+                }
+            });
+            for (int i = 0; i < indices.size(); i++) assertEquals(i, (long) indices.get(i));
+        } finally {
+            ordered.close();
+        }
+
+        PinyinBatchConverter unordered = new PinyinBatchConverter.Builder(dict)
+                .setThreads(4).setTopN(5).setChunkSize(3).setOrdered(false).build();
+        try {
+            final List<Long> indices = new ArrayList<>();
+            final List<List<String>> results = new ArrayList<>(
+                    Collections.<List<String>>nCopies(input.size(), null));
+            long count = unordered.convert(input.iterator(), new PinyinBatchConverter.Sink() {
+                @Override
+                public void accept(long index, String pinyin, List<String> conversions) {
+                    indices.add(index);
+                    results.set((int) index, conversions);
+                }
+            });
+            assertEquals(input.size(), count);
+            assertEquals(input.size(), indices.size());
+            assertEquals(expected, results);
+        } finally {
+            unordered.close();
+        }
+    }
+
+    @Test
+    public void rejects_a_dictionary_other_than_the_loaded_one() throws Exception {
+        assumeTrue(PinyinDecoder.isLibraryLoaded());
+        File dict = new File("src/main/res/raw/dict_pinyin.dat");
+        assumeTrue(dict.isFile());
+
+        PinyinBatchConverter loaded = new PinyinBatchConverter.Builder(dict).setThreads(1).build();
+        try {
+            // Same layout, one score amplifier bit apart: a different dictionary.
+            File other = new File(tmp.getRoot(), "other_dict.dat");
+            Files.copy(dict.toPath(), other.toPath());
+            try (RandomAccessFile f = new RandomAccessFile(other, "rw")) {
+                f.seek(8);
+                int b = f.read();
+                f.seek(8);
+                f.write(b ^ 1);
+            }
+            try {
+                new PinyinBatchConverter.Builder(other).setThreads(1).build().close();
+                fail("a second dictionary replaced the shared tables");
+            } catch (IllegalStateException expected) {
+            }
+            assertEquals("你好", loaded.convertAll(Collections.singletonList("nihao")).get(0).get(0));
+        } finally {
+            loaded.close();
+        }
+    }
+
+    @Test
+    public void stats_include_the_workers_searches() throws Exception {
+        assumeTrue(PinyinDecoder.isLibraryLoaded());
+        File dict = new File("src/main/res/raw/dict_pinyin.dat");
+        assumeTrue(dict.isFile());
+
+        PinyinDecoder.resetStats();
+        PinyinBatchConverter converter = new PinyinBatchConverter.Builder(dict)
+                .setThreads(2).setChunkSize(4).build();
+        try {
+            converter.convertAll(WORDS);
+            long[] running = PinyinDecoder.getStats();
+            assertEquals(WORDS.size(), running[PinyinDecoder.STAT_SEARCHES]);
+            assertTrue(running[PinyinDecoder.STAT_DMI_POOL_SIZE] > 0);
+        } finally {
+            converter.close();
+        }
+        // The workers have exited; their counts stay.
+        assertEquals(WORDS.size(), PinyinDecoder.getStats()[PinyinDecoder.STAT_SEARCHES]);
+    }
+}
@@ -0,0 +1,61 @@
+package com.carbit.inappkeyboard.keyboard;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/** Runs the real native decoder; skipped unless a host build of the library is available. */
+public class PinyinDecoderHostTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void decodes_from_a_plain_dictionary_file() {
+        assumeTrue(PinyinDecoder.isLibraryLoaded());
+        File dict = new File("src/main/res/raw/dict_pinyin.dat");
+        assumeTrue(dict.isFile());
+
+        PinyinDecoder decoder = new PinyinDecoder(dict, new File(tmp.getRoot(), "usr_dict.dat"));
+        try {
+            assertTrue(decoder.search("nihao") > 0);
+            List<String> candidates = decoder.candidates("nihao", 5);
+            assertTrue(candidates.toString(), candidates.contains("你好"));
+        } finally {
+            decoder.close();
+        }
+    }
+
+    @Test
+    public void stats_count_search_steps_and_pool_usage() {
+        assumeTrue(PinyinDecoder.isLibraryLoaded());
+        File dict = new File("src/main/res/raw/dict_pinyin.dat");
+        assumeTrue(dict.isFile());
+
+        PinyinDecoder decoder = new PinyinDecoder(dict, new File(tmp.getRoot(), "usr_dict.dat"));
+        try {
+            decoder.search("ni");
+            PinyinDecoder.resetStats();
+            decoder.search("nihao");
+
+            long[] stats = PinyinDecoder.getStats();
+            assertEquals(1, stats[PinyinDecoder.STAT_SEARCHES]);
+            // "ni" is reused; only "hao" is decoded.
+            assertEquals(3, stats[PinyinDecoder.STAT_SEARCH_STEPS]);
+            assertTrue(stats[PinyinDecoder.STAT_DMI_USED] > 0);
+            assertTrue(stats[PinyinDecoder.STAT_DMI_PEAK] >= stats[PinyinDecoder.STAT_DMI_USED]);
+            assertTrue(stats[PinyinDecoder.STAT_DMI_POOL_SIZE] > stats[PinyinDecoder.STAT_DMI_PEAK]);
+            assertTrue(stats[PinyinDecoder.STAT_MATRIX_NODES_USED] > 0);
+            assertTrue(stats[PinyinDecoder.STAT_LPI_CACHE_HITS] + stats[PinyinDecoder.STAT_LPI_CACHE_MISSES] > 0);
+        } finally {
+            decoder.close();
+        }
+    }
+}